@@ -17,6 +17,29 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
     // Global position counter for parameters
     public static int pos = 0;
 
+    // Labels for the method being compiled, shared with the temporary compilers
+    Labels labels = new Labels("main");
+
+    // Labels are numbered in order within a method and named after it, so
+    // compiling the same program always gives the same labels, and labels
+    // from different methods never collide
+    static class Labels
+    {
+        final String method;
+        int next = 0;
+
+        Labels(String method)
+        {
+            this.method = method;
+        }
+
+        // a number for the labels of one statement
+        String next()
+        {
+            return method + "-" + (next++);
+        }
+    }
+
     public static SSAProgram compile(Program prog)
     {
         SSAMethod main = compile(prog.getMain());
@@ -25,14 +48,19 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
         for (ClassDecl cl : prog.getClasses())
             classes.add(compile(cl));
 
-        return new SSAProgram(main, classes);
+        SSAProgram ret = new SSAProgram(main, classes);
+
+        // and the same indices, wherever it's compiled
+        ret.renumber();
+
+        return ret;
     }
 
     public static SSAClass compile(ClassDecl cl)
     {
         List<SSAMethod> methods = new ArrayList<SSAMethod>();
         for (MethodDecl md : cl.getMethods())
-            methods.add(compile(md));
+            methods.add(compile(cl, md));
         return new SSAClass(cl, methods);
     }
 
@@ -47,8 +75,14 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
     }
 
     public static SSAMethod compile(MethodDecl method)
+    {
+        return compile(null, method);
+    }
+
+    public static SSAMethod compile(ClassDecl cl, MethodDecl method)
     {
         SSACompiler compiler = new SSACompiler();
+        compiler.labels = new Labels((cl == null ? "" : cl.getName() + ".") + method.getName());
 
         // visit the parameters
 	ArrayList<SSAStatement> parameters = new ArrayList<SSAStatement>();
@@ -163,12 +197,13 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
     {
 	SSAStatement ret = null;
 
-	// Get current time to make sure to avoid label collisions
-	long currTime = System.nanoTime() / 1000;
+	// Number this statement's labels
+	String labelId = this.labels.next();
 
 	// Create temporary compiler to keep track of symbolTable
 	SSACompiler temp = new SSACompiler();
 	temp.symbolTable = new HashMap<String, SSAStatement>(this.symbolTable);
+	temp.labels = this.labels;
 
 	// Condition
 	SSAStatement condition = (SSAStatement)ifStatement.getCondition().accept(this);
@@ -185,7 +220,7 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
 	this.body.add(gotoStatement);
 
 	// Else Label
-	SSAStatement elseLabel = new SSAStatement(ifStatement, SSAStatement.Op.Label, ("IfElse-" + currTime));
+	SSAStatement elseLabel = new SSAStatement(ifStatement, SSAStatement.Op.Label, ("IfElse-" + labelId));
 	this.body.add(elseLabel);
 
 	// Else Part
@@ -199,7 +234,7 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
 	    this.body.add(ssa);
 
 	// Final Label
-	SSAStatement finalLabel = new SSAStatement(ifStatement, SSAStatement.Op.Label, "IfFinal-" + currTime);
+	SSAStatement finalLabel = new SSAStatement(ifStatement, SSAStatement.Op.Label, "IfFinal-" + labelId);
 	this.body.add(finalLabel);
 
 	// Set special fields of statements that were declared before these existed
@@ -230,12 +265,13 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
     {
 	SSACompiler temp = new SSACompiler();
 	temp.symbolTable = new HashMap<String, SSAStatement>(this.symbolTable);
+	temp.labels = this.labels;
 
-	// Get current time to make sure to avoid label collisions
-	long currTime = System.nanoTime() / 1000;
+	// Number this statement's labels
+	String labelId = this.labels.next();
 
 	// Condition Label
-	SSAStatement conditionLabel = new SSAStatement(whileStatement, SSAStatement.Op.Label, ("WhileCondition-" + currTime));
+	SSAStatement conditionLabel = new SSAStatement(whileStatement, SSAStatement.Op.Label, ("WhileCondition-" + labelId));
 	this.body.add(conditionLabel);
 
 	// Condition
@@ -257,7 +293,7 @@ public class SSACompiler extends ASTVisitor.SimpleASTVisitor
 	this.body.add(gotoStatement);
 
 	// Final Label
-	SSAStatement finalLabel = new SSAStatement(whileStatement, SSAStatement.Op.Label, ("WhileEnd-" + currTime));
+	SSAStatement finalLabel = new SSAStatement(whileStatement, SSAStatement.Op.Label, ("WhileEnd-" + labelId));
 	this.body.add(finalLabel);
 
 	notBranch.setSpecial(finalLabel.getSpecial());
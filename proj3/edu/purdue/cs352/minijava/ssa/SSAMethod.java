@@ -31,6 +31,14 @@ public class SSAMethod {
     public MethodDecl getMethod() { return method; }
     public List<SSAStatement> getBody() { return body; }
     public void setBody(List<SSAStatement> to) { body = to; }
+
+    // number the body's statements in order from index, returning the next index to use
+    public int renumber(int index) {
+        for (SSAStatement s : body)
+            s.index = index++;
+        return index;
+    }
+
     public void setRetType(StaticType retType) { this.retType = retType; }
     public StaticType getRetType() { return retType; }
     public void setParamTypes(List<StaticType> paramTypes) { this.paramTypes = paramTypes; }
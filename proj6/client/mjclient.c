@@ -0,0 +1,147 @@
+#include <errno.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <unistd.h>
+
+/* Thin client for mjserver (edu.purdue.cs352.minijava.CompileServer): sends
+ * its command line to the server and copies the server's output back to
+ * stdout and stderr, exiting with the status the server sends. Link or copy
+ * it under the name of the command to run (mjcompile-mips, mjinterp-ssa,
+ * ...), or give the command as the first argument. The socket is
+ * $MJSERVER_SOCKET, or /tmp/mjserver.sock. */
+
+#define DEFAULT_SOCKET "/tmp/mjserver.sock"
+
+#define CHANNEL_EXIT 0
+#define CHANNEL_OUT 1
+#define CHANNEL_ERR 2
+
+static int writeAll(int fd, const char *buf, size_t len)
+{
+    while (len > 0) {
+        ssize_t w = write(fd, buf, len);
+        if (w < 0) {
+            if (errno == EINTR) continue;
+            return -1;
+        }
+        buf += w;
+        len -= w;
+    }
+    return 0;
+}
+
+static int readAll(int fd, char *buf, size_t len)
+{
+    while (len > 0) {
+        ssize_t r = read(fd, buf, len);
+        if (r < 0) {
+            if (errno == EINTR) continue;
+            return -1;
+        }
+        if (r == 0) return -1;
+        buf += r;
+        len -= r;
+    }
+    return 0;
+}
+
+/* a NUL-terminated field of the request */
+static int sendField(int fd, const char *field)
+{
+    return writeAll(fd, field, strlen(field) + 1);
+}
+
+int main(int argc, char **argv)
+{
+    const char *socketPath, *command;
+    char cwd[4096], count[16];
+    struct sockaddr_un addr;
+    int fd, i, first;
+
+    /* the command is the name we were run as, unless that's mjclient itself */
+    command = strrchr(argv[0], '/');
+    command = command ? command + 1 : argv[0];
+    first = 1;
+    if (!strcmp(command, "mjclient")) {
+        if (argc < 2) {
+            fprintf(stderr, "Use: mjclient <command> [arguments...]\n");
+            return 2;
+        }
+        command = argv[1];
+        first = 2;
+    }
+
+    socketPath = getenv("MJSERVER_SOCKET");
+    if (!socketPath || !socketPath[0])
+        socketPath = DEFAULT_SOCKET;
+    if (strlen(socketPath) >= sizeof(addr.sun_path)) {
+        fprintf(stderr, "mjclient: socket path too long: %s\n", socketPath);
+        return 2;
+    }
+    if (!getcwd(cwd, sizeof(cwd))) {
+        perror("getcwd");
+        return 2;
+    }
+
+    fd = socket(AF_UNIX, SOCK_STREAM, 0);
+    if (fd < 0) {
+        perror("socket");
+        return 2;
+    }
+    memset(&addr, 0, sizeof(addr));
+    addr.sun_family = AF_UNIX;
+    strcpy(addr.sun_path, socketPath);
+    if (connect(fd, (struct sockaddr *) &addr, sizeof(addr)) < 0) {
+        fprintf(stderr, "mjclient: cannot connect to mjserver at %s: %s\n", socketPath, strerror(errno));
+        return 2;
+    }
+
+    /* the request */
+    snprintf(count, sizeof(count), "%d", argc - first + 1);
+    if (sendField(fd, "mj1") || sendField(fd, cwd) || sendField(fd, count) || sendField(fd, command)) {
+        perror("mjclient");
+        return 2;
+    }
+    for (i = first; i < argc; i++) {
+        if (sendField(fd, argv[i])) {
+            perror("mjclient");
+            return 2;
+        }
+    }
+
+    /* and the response, frame by frame */
+    while (1) {
+        unsigned char header[5];
+        unsigned int len;
+        char buf[8192];
+
+        if (readAll(fd, (char *) header, 5)) {
+            fprintf(stderr, "mjclient: server closed the connection\n");
+            return 2;
+        }
+        len = (header[1] << 24) | (header[2] << 16) | (header[3] << 8) | header[4];
+
+        if (header[0] == CHANNEL_EXIT) {
+            unsigned char status[4];
+            if (len != 4 || readAll(fd, (char *) status, 4)) {
+                fprintf(stderr, "mjclient: bad exit frame\n");
+                return 2;
+            }
+            close(fd);
+            return (status[0] << 24) | (status[1] << 16) | (status[2] << 8) | status[3];
+        }
+
+        while (len > 0) {
+            size_t chunk = (len < sizeof(buf)) ? len : sizeof(buf);
+            if (readAll(fd, buf, chunk)) {
+                fprintf(stderr, "mjclient: server closed the connection\n");
+                return 2;
+            }
+            writeAll((header[0] == CHANNEL_ERR) ? 2 : 1, buf, chunk);
+            len -= chunk;
+        }
+    }
+}
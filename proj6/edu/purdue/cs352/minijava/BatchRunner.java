@@ -0,0 +1,447 @@
+package edu.purdue.cs352.minijava;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import edu.purdue.cs352.minijava.backend.*;
+import edu.purdue.cs352.minijava.interpreter.*;
+import edu.purdue.cs352.minijava.opt.*;
+import edu.purdue.cs352.minijava.parser.*;
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Runs every .java file under a directory through every engine in one JVM,
+ * in parallel on a ForkJoinPool, and checks each output against the
+ * file's .output (or, if there isn't one, against the first engine's). Each
+ * file is parsed and compiled once, then its engines run as subtasks. The
+ * AST engines resolve variables on the AST itself, so each gets its own
+ * parse, and the engines that optimize first (fuse, as mjinterp-ssa -dce
+ * -fuse, and opt, through SSAPhiForm, ConstantPropagation,
+ * ValueNumbering and DeadCodeElimination) rewrite the SSA, so each gets
+ * its own compile. The sandbox engine runs the program as mjsandbox does,
+ * in an SSAScheduler.
+ *
+ * A file can have a .mjtest next to it, holding options for that file
+ * alone. -engines=<engine,...> runs it only on those engines (of the ones
+ * being run), for a program that only some engines can run.
+ * -fuel=<N>, -objects=<N> and -heap=<MB> are the sandbox's budgets, as
+ * mjsandbox takes them. A sandboxed run that goes over one ends its
+ * output with a line naming the limit, as in "== INSTRUCTION_LIMIT", so a
+ * file's .output can check that it's stopped, and where. */
+public class BatchRunner {
+    public enum Engine {
+        SSA("ssa"), CLOSURE("closure"), STACK("stack"), FUSE("fuse"), OPT("opt"),
+        SANDBOX("sandbox"), AST("ast"), NODES("nodes"), JIT("jit");
+
+        final String name;
+        Engine(String name) { this.name = name; }
+
+        static Engine byName(String name) {
+            for (Engine e : values())
+                if (e.name.equals(name)) return e;
+            return null;
+        }
+
+        // a comma-separated list of engines, or null if one isn't an engine
+        static List<Engine> list(String names) {
+            List<Engine> list = new ArrayList<Engine>();
+            for (String name : names.split(",")) {
+                Engine e = byName(name);
+                if (e == null)
+                    return null;
+                list.add(e);
+            }
+            return list;
+        }
+    }
+
+    // one engine's run of one file
+    private static class Run {
+        final Engine engine;
+        String output, error;
+        long nanos;
+        boolean passed;
+        String diff;
+
+        Run(Engine engine) { this.engine = engine; }
+    }
+
+    // one file, and all its runs
+    private static class FileResult {
+        final File file;
+        String expected, expectedFrom;
+        String compileError;
+        long parseNanos, compileNanos;
+        List<Engine> engines;
+        long fuel, objects, heap;
+        final List<Run> runs = new ArrayList<Run>();
+
+        FileResult(File file, List<Engine> engines) {
+            this.file = file;
+            this.engines = engines;
+        }
+
+        Run getRun(Engine engine) {
+            for (Run run : runs)
+                if (run.engine == engine) return run;
+            return null;
+        }
+    }
+
+    private final List<Engine> engines;
+
+    public BatchRunner(List<Engine> engines) {
+        this.engines = engines;
+    }
+
+    private static Program parse(File file) throws IOException, ParseException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return new ParserAST(in).Program();
+        } finally {
+            in.close();
+        }
+    }
+
+    private class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final FileResult result;
+
+        FileTask(FileResult result) { this.result = result; }
+
+        protected void compute() {
+            final SSAProgram sprog;
+            try {
+                long start = System.nanoTime();
+                Program prog = parse(result.file);
+                long parsed = System.nanoTime();
+                sprog = SSACompiler.compile(prog);
+                new TypeChecker(sprog).typeCheck();
+                result.parseNanos = parsed - start;
+                result.compileNanos = System.nanoTime() - parsed;
+            } catch (Exception | Error ex) {
+                result.compileError = ex.toString();
+                return;
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+            for (final Engine engine : result.engines) {
+                final Run run = new Run(engine);
+                result.runs.add(run);
+                tasks.add(new RecursiveAction() {
+                    protected void compute() {
+                        execute(result, sprog, run);
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    // run the program, catching whatever it does into the Run
+    private static void execute(FileResult result, SSAProgram sprog, Run run) {
+        File file = result.file;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputSink out = new BufferedOutputSink(bytes);
+        long start = System.nanoTime();
+        try {
+            switch (run.engine) {
+                case SSA:
+                case CLOSURE:
+                case STACK:
+                {
+                    SSAInterpreter interp = new SSAInterpreter(sprog);
+                    interp.setOutput(out);
+                    if (run.engine == Engine.CLOSURE)
+                        interp.setCompileThreshold(SSAInterpreter.CLOSURE_THRESHOLD);
+                    else if (run.engine == Engine.STACK)
+                        interp.setStackBudget(SSAInterpreter.DEFAULT_STACK_BUDGET);
+                    interp.execute();
+                    break;
+                }
+
+                case FUSE:
+                case OPT:
+                {
+                    SSAProgram own = SSACompiler.compile(parse(file));
+                    new TypeChecker(own).typeCheck();
+                    start = System.nanoTime();
+                    if (run.engine == Engine.FUSE) {
+                        DeadCodeElimination.eliminate(own);
+                        SSAFusion.fuse(own);
+                    } else {
+                        SSAPhiForm.build(own);
+                        ConstantPropagation.propagate(own);
+                        ValueNumbering.number(own);
+                        DeadCodeElimination.eliminate(own);
+                        SSAPhiForm.lower(own);
+                    }
+                    SSAInterpreter interp = new SSAInterpreter(own);
+                    interp.setOutput(out);
+                    interp.execute();
+                    break;
+                }
+
+                case SANDBOX:
+                {
+                    SSAScheduler sched = new SSAScheduler(1, SSAScheduler.DEFAULT_SLICE);
+                    SSAScheduler.Job job = sched.submit(file.getName(), sprog,
+                        result.fuel, result.objects, result.heap);
+                    sched.run();
+                    byte[] printed = job.getOutput().getBytes();
+                    bytes.write(printed, 0, printed.length);
+                    if (job.getStatus() == SSAScheduler.Job.Status.ERROR)
+                        run.error = job.getError();
+                    else if (job.getStatus() != SSAScheduler.Job.Status.OK)
+                        out.println("== " + job.getStatus());
+                    break;
+                }
+
+                case AST:
+                case NODES:
+                {
+                    Program prog = parse(file);
+                    start = System.nanoTime();
+                    ASTInterpreter interp = new ASTInterpreter(prog);
+                    interp.setOutput(out);
+                    interp.setSpecializing(run.engine == Engine.NODES);
+                    prog.accept(interp);
+                    break;
+                }
+
+                case JIT:
+                    JVMRuntime.setOutput(out);
+                    try {
+                        AsmJVM.run(sprog);
+                    } finally {
+                        JVMRuntime.setOutput(null);
+                    }
+                    break;
+            }
+        } catch (Exception | Error ex) {
+            run.error = ex.toString();
+        }
+        run.nanos = System.nanoTime() - start;
+
+        // whatever was printed before an error has been flushed by now
+        out.flush();
+        run.output = bytes.toString();
+    }
+
+    // the first line where the output differs, or null if it doesn't
+    private static String diff(String expected, String actual) {
+        if (expected.equals(actual))
+            return null;
+        String[] el = expected.split("\n", -1), al = actual.split("\n", -1);
+        for (int i = 0; ; i++) {
+            String e = (i < el.length) ? el[i] : "<end of output>";
+            String a = (i < al.length) ? al[i] : "<end of output>";
+            if (!e.equals(a))
+                return "line " + (i + 1) + ": expected " + e + ", got " + a;
+        }
+    }
+
+    private static void check(FileResult result) {
+        if (result.runs.isEmpty())
+            return;
+
+        if (result.expected == null) {
+            result.expected = result.runs.get(0).output;
+            result.expectedFrom = result.runs.get(0).engine.name;
+        }
+        for (Run run : result.runs) {
+            run.diff = diff(result.expected, run.output);
+            run.passed = (run.diff == null && run.error == null);
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            int rd;
+            while ((rd = in.read(buf)) > 0)
+                bytes.write(buf, 0, rd);
+        } finally {
+            in.close();
+        }
+        return bytes.toString();
+    }
+
+    private static void findSources(File dir, List<File> into) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory())
+                findSources(f, into);
+            else if (f.getName().endsWith(".java"))
+                into.add(f);
+        }
+    }
+
+    // the number after an option's '='
+    private static long number(File options, String opt, int from) throws IOException {
+        try {
+            return Long.parseLong(opt.substring(from));
+        } catch (NumberFormatException ex) {
+            throw new IOException(options + ": bad number in " + opt);
+        }
+    }
+
+    // apply a file's .mjtest options to its result
+    private void readOptions(File options, FileResult result) throws IOException {
+        for (String opt : readFile(options).trim().split("\\s+")) {
+            if (opt.startsWith("-engines=")) {
+                List<Engine> only = Engine.list(opt.substring(9));
+                if (only == null)
+                    throw new IOException(options + ": unknown engine in " + opt);
+                result.engines = new ArrayList<Engine>(engines);
+                result.engines.retainAll(only);
+            } else if (opt.startsWith("-fuel=")) {
+                result.fuel = number(options, opt, 6);
+            } else if (opt.startsWith("-objects=")) {
+                result.objects = number(options, opt, 9);
+            } else if (opt.startsWith("-heap=")) {
+                result.heap = number(options, opt, 6) << 20;
+            } else if (!opt.isEmpty()) {
+                throw new IOException(options + ": unknown option " + opt);
+            }
+        }
+    }
+
+    // run everything, print a report, and return the number of failures
+    public int run(File dir, int threads, PrintStream report) throws IOException {
+        List<File> sources = new ArrayList<File>();
+        findSources(dir, sources);
+
+        List<FileResult> results = new ArrayList<FileResult>();
+        List<FileTask> tasks = new ArrayList<FileTask>();
+        for (File src : sources) {
+            FileResult result = new FileResult(src, engines);
+            String path = src.getPath();
+            File expected = new File(path.substring(0, path.length() - 5) + ".output");
+            if (expected.exists()) {
+                result.expected = readFile(expected);
+                result.expectedFrom = expected.getName();
+            }
+            File options = new File(path.substring(0, path.length() - 5) + ".mjtest");
+            if (options.exists())
+                readOptions(options, result);
+            results.add(result);
+            tasks.add(new FileTask(result));
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (FileTask task : tasks)
+                pool.execute(task);
+            for (FileTask task : tasks)
+                task.join();
+        } finally {
+            pool.shutdown();
+        }
+        long wall = System.nanoTime() - start;
+
+        // the report
+        int failures = 0, runs = 0;
+        StringBuilder header = new StringBuilder(String.format("%-24s %8s %8s", "file", "parse", "compile"));
+        for (Engine e : engines)
+            header.append(String.format(" %10s", e.name));
+        report.println(header);
+
+        for (FileResult result : results) {
+            check(result);
+            StringBuilder line = new StringBuilder(String.format("%-24s", result.file.getName()));
+            if (result.compileError != null) {
+                report.println(line + " FAILED to compile: " + result.compileError);
+                failures++;
+                continue;
+            }
+            line.append(String.format(" %8.2f %8.2f", result.parseNanos / 1e6, result.compileNanos / 1e6));
+            for (Engine e : engines) {
+                Run run = result.getRun(e);
+                if (run == null) {
+                    // not run on this engine
+                    line.append(String.format(" %10s", "-"));
+                    continue;
+                }
+                runs++;
+                if (!run.passed) failures++;
+                line.append(String.format(" %10s", (run.passed ? "" : "FAIL ") +
+                    String.format("%.2f", run.nanos / 1e6)));
+            }
+            report.println(line);
+
+            for (Run run : result.runs) {
+                if (run.passed)
+                    continue;
+                if (run.error != null)
+                    report.println("    " + run.engine.name + ": " + run.error);
+                if (run.diff != null)
+                    report.println("    " + run.engine.name + ": " + run.diff + " (against " + result.expectedFrom + ")");
+            }
+        }
+
+        report.println();
+        report.println(sources.size() + " files, " + runs + " runs, " + failures + " failures, " +
+            String.format("%.1f", wall / 1e6) + " ms on " + threads + " threads (times in ms)");
+        return failures;
+    }
+
+
+    public static void usage() {
+        System.out.println("Use: mjtest [-threads=<N>] [-engines=<engine,...>] <directory>\n" +
+            "Engines: ssa closure stack fuse opt sandbox ast nodes jit (default: all)\n" +
+            "A file's .mjtest can give -engines=<engine,...> and the sandbox's\n" +
+            "-fuel=<N>, -objects=<N> and -heap=<MB> for that file alone");
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Engine> engines = new ArrayList<Engine>(Arrays.asList(Engine.values()));
+
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                if (arg.startsWith("-threads=")) {
+                    try {
+                        threads = Integer.parseInt(arg.substring(9));
+                    } catch (NumberFormatException ex) {
+                        usage();
+                        return;
+                    }
+                } else if (arg.startsWith("-engines=")) {
+                    engines = Engine.list(arg.substring(9));
+                    if (engines == null) {
+                        usage();
+                        return;
+                    }
+                } else {
+                    usage();
+                    return;
+                }
+
+            } else if (dir == null) {
+                dir = arg;
+
+            } else {
+                usage();
+                return;
+
+            }
+        }
+        if (dir == null || threads < 1 || engines.isEmpty()) {
+            usage();
+            return;
+        }
+
+        int failures = new BatchRunner(engines).run(new File(dir), threads, System.out);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,350 @@
+package edu.purdue.cs352.minijava;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import edu.purdue.cs352.minijava.interpreter.*;
+
+/* A long-lived server that runs the frontends in one warm JVM, so a compile
+ * or run doesn't pay for JVM startup and parser class loading every time.
+ * The thin client, mjclient (client/mjclient.c), sends a command line over
+ * a Unix domain socket and gets back the frontend's output.
+ *
+ * Requests are NUL-terminated strings: "mj1", the client's working
+ * directory, the argument count, then the command and its arguments.
+ * Relative file arguments, and the files and directories named by -cache=
+ * and -profile (see PATH_FLAGS), are resolved against the client's
+ * directory.
+ * Responses are frames of a channel byte (1 for stdout, 2 for stderr, 0 for
+ * the exit status), a 4-byte big-endian length, and the data; the exit
+ * frame holds the status as a 4-byte int and ends the response.
+ *
+ * Requests run concurrently on a thread pool. The frontends print to
+ * System.out and System.err, so those are replaced by streams that write to
+ * whatever the current thread's request has set. */
+public class CompileServer {
+    public static final String DEFAULT_SOCKET =
+        System.getProperty("java.io.tmpdir") + File.separator + "mjserver.sock";
+
+    private static final int CHANNEL_EXIT = 0, CHANNEL_OUT = 1, CHANNEL_ERR = 2;
+
+    // flags whose values are paths, and so are relative to the client too
+    private static final String[] PATH_FLAGS = { "-cache=", "-profile=" };
+
+    // a frontend that can be served
+    private interface Command {
+        void main(String[] args) throws Exception;
+    }
+
+    private static final Map<String, Command> commands = new HashMap<String, Command>();
+    static {
+        commands.put("mjcompile-ssa", new Command() {
+            public void main(String[] args) { SSACompilerFrontend.main(args); }
+        });
+        commands.put("mjcompile-mips", new Command() {
+            public void main(String[] args) { MIPSCompilerFrontend.main(args); }
+        });
+        commands.put("mjcompile-x8664", new Command() {
+            public void main(String[] args) { X8664CompilerFrontend.main(args); }
+        });
+        commands.put("mjinterp-ssa", new Command() {
+            public void main(String[] args) { SSAInterpreter.main(args); }
+        });
+        commands.put("mjinterp-ast", new Command() {
+            public void main(String[] args) { ASTInterpreter.main(args); }
+        });
+        commands.put("mjrun-jit", new Command() {
+            public void main(String[] args) { JITFrontend.main(args); }
+        });
+    }
+
+    /* Writes to the current thread's stream, or the original one if the
+     * thread isn't serving a request */
+    private static class Redirect extends OutputStream {
+        final OutputStream fallback;
+        final ThreadLocal<OutputStream> target = new ThreadLocal<OutputStream>();
+
+        Redirect(OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private OutputStream out() {
+            OutputStream out = target.get();
+            return (out == null) ? fallback : out;
+        }
+
+        public void write(int b) throws IOException { out().write(b); }
+        public void write(byte[] b, int off, int len) throws IOException { out().write(b, off, len); }
+        public void flush() throws IOException { out().flush(); }
+    }
+
+    // one channel of a response, framed
+    private static class FrameOutputStream extends OutputStream {
+        final SocketChannel sock;
+        final int channel;
+        final byte[] buf = new byte[8192];
+        int len;
+
+        FrameOutputStream(SocketChannel sock, int channel) {
+            this.sock = sock;
+            this.channel = channel;
+        }
+
+        public void write(int b) throws IOException {
+            if (len == buf.length) flush();
+            buf[len++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int n) throws IOException {
+            while (n > 0) {
+                if (len == buf.length) flush();
+                int chunk = Math.min(n, buf.length - len);
+                System.arraycopy(b, off, buf, len, chunk);
+                len += chunk;
+                off += chunk;
+                n -= chunk;
+            }
+        }
+
+        public void flush() throws IOException {
+            if (len > 0) {
+                writeFrame(sock, channel, buf, len);
+                len = 0;
+            }
+        }
+    }
+
+    private static void writeFrame(SocketChannel sock, int channel, byte[] data, int len) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(5 + len);
+        frame.put((byte) channel);
+        frame.putInt(len);
+        frame.put(data, 0, len);
+        frame.flip();
+        synchronized (sock) {
+            while (frame.hasRemaining())
+                sock.write(frame);
+        }
+    }
+
+    private final Path socketPath;
+    private final int threads;
+    private final Redirect stdout, stderr;
+
+    public CompileServer(Path socketPath, int threads) {
+        this.socketPath = socketPath;
+        this.threads = threads;
+        stdout = new Redirect(System.out);
+        stderr = new Redirect(System.err);
+        System.setOut(new PrintStream(stdout, true));
+        System.setErr(new PrintStream(stderr, true));
+    }
+
+    // read the request's NUL-terminated strings
+    private static List<String> readRequest(SocketChannel sock) throws IOException {
+        InputStream in = Channels.newInputStream(sock);
+        List<String> fields = new ArrayList<String>();
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        int argc = -1;
+        while (argc < 0 || fields.size() < 3 + argc) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Request ended early");
+            if (b != 0) {
+                field.write(b);
+                continue;
+            }
+            fields.add(field.toString("UTF-8"));
+            field.reset();
+            if (fields.size() == 1 && !fields.get(0).equals("mj1"))
+                throw new IOException("Unknown protocol " + fields.get(0));
+            if (fields.size() == 3) {
+                try {
+                    argc = Integer.parseInt(fields.get(2));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Bad argument count " + fields.get(2));
+                }
+                if (argc < 1)
+                    throw new IOException("No command");
+            }
+        }
+        return fields;
+    }
+
+    // an argument, with any path in it made relative to the client's directory
+    private static String resolve(File cwd, String arg) {
+        if (!arg.startsWith("-"))
+            return relativeTo(cwd, arg);
+
+        // -profile writes to a default file in the current directory
+        if (arg.equals("-profile"))
+            return "-profile=" + new File(cwd, SSAInterpreter.DEFAULT_PROFILE).getPath();
+
+        for (String flag : PATH_FLAGS) {
+            if (arg.startsWith(flag) && arg.length() > flag.length())
+                return flag + relativeTo(cwd, arg.substring(flag.length()));
+        }
+        return arg;
+    }
+
+    private static String relativeTo(File cwd, String path) {
+        return new File(path).isAbsolute() ? path : new File(cwd, path).getPath();
+    }
+
+    private void serve(SocketChannel sock) {
+        FrameOutputStream out = new FrameOutputStream(sock, CHANNEL_OUT);
+        FrameOutputStream err = new FrameOutputStream(sock, CHANNEL_ERR);
+        PrintStream errPrint = new PrintStream(err, true);
+        int status = 0;
+        try {
+            stdout.target.set(out);
+            stderr.target.set(err);
+            try {
+                List<String> req = readRequest(sock);
+                File cwd = new File(req.get(1));
+                Command cmd = commands.get(req.get(3));
+                if (cmd == null) {
+                    errPrint.println("Unknown command " + req.get(3) + "; this server runs " +
+                        new TreeSet<String>(commands.keySet()));
+                    status = 2;
+                } else {
+                    String[] args = new String[req.size() - 4];
+                    for (int i = 0; i < args.length; i++)
+                        args[i] = resolve(cwd, req.get(4 + i));
+                    cmd.main(args);
+                }
+            } catch (Throwable ex) {
+                ex.printStackTrace(errPrint);
+                status = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                stdout.target.remove();
+                stderr.target.remove();
+            }
+
+            out.flush();
+            err.flush();
+            byte[] code = ByteBuffer.allocate(4).putInt(status).array();
+            writeFrame(sock, CHANNEL_EXIT, code, 4);
+
+        } catch (IOException ex) {
+            // the client went away; nothing to tell it
+        } finally {
+            try {
+                sock.close();
+            } catch (IOException ex) {}
+        }
+    }
+
+    // run a sample through every pipeline, so the first real requests are already JIT-compiled
+    private void warmUp(final int iterations) {
+        final String sample = String.join("\n",
+            "class Warm { public static void main(String[] a) { System.out.println(new W().run(20)); } }",
+            "class W { int[] xs;",
+            "  public int run(int n) { int i; int s; xs = new int[n]; i = 0; s = 0;",
+            "    while (i < n) { xs[i] = i * 3; if (i < 10) s = s + xs[i]; else s = s - 1; i = i + 1; }",
+            "    return s + this.fib(10); }",
+            "  public int fib(int n) { int r; if (n < 2) r = n; else r = this.fib(n - 1) + this.fib(n - 2); return r; } }",
+            "");
+
+        Thread warm = new Thread("mjserver-warmup") {
+            public void run() {
+                OutputStream sink = OutputStream.nullOutputStream();
+                stdout.target.set(sink);
+                stderr.target.set(sink);
+                try {
+                    File f = File.createTempFile("mjwarm", ".java");
+                    f.deleteOnExit();
+                    Files.write(f.toPath(), sample.getBytes("UTF-8"));
+                    String[][] runs = {
+                        {"mjcompile-ssa", "-t", "-r"}, {"mjcompile-mips"}, {"mjinterp-ssa", "-t"},
+                        {"mjinterp-ast", "-nodes"}, {"mjrun-jit"}
+                    };
+                    for (int i = 0; i < iterations; i++) {
+                        for (String[] run : runs) {
+                            String[] args = Arrays.copyOfRange(run, 1, run.length + 1);
+                            args[args.length - 1] = f.getPath();
+                            commands.get(run[0]).main(args);
+                        }
+                    }
+                    f.delete();
+                } catch (Throwable ex) {
+                    // warming up is only an optimization
+                } finally {
+                    stdout.target.remove();
+                    stderr.target.remove();
+                }
+            }
+        };
+        warm.setDaemon(true);
+        warm.setPriority(Thread.MIN_PRIORITY);
+        warm.start();
+    }
+
+    public void run(int warmIterations) throws IOException {
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        socketPath.toFile().deleteOnExit();
+        if (warmIterations > 0)
+            warmUp(warmIterations);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        System.err.println("mjserver listening on " + socketPath);
+        try {
+            while (true) {
+                final SocketChannel sock = server.accept();
+                pool.execute(new Runnable() {
+                    public void run() {
+                        serve(sock);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            server.close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+
+    public static void usage() {
+        System.out.println("Use: mjserver [-socket=<path>] [-threads=<N>] [-warm=<iterations>]");
+    }
+
+    public static void main(String[] args) throws IOException {
+        String socket = DEFAULT_SOCKET;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int warm = 200;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("-socket=")) {
+                    socket = arg.substring(8);
+                } else if (arg.startsWith("-threads=")) {
+                    threads = Integer.parseInt(arg.substring(9));
+                } else if (arg.startsWith("-warm=")) {
+                    warm = Integer.parseInt(arg.substring(6));
+                } else {
+                    usage();
+                    return;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            usage();
+            return;
+        }
+        if (threads < 1) {
+            usage();
+            return;
+        }
+
+        new CompileServer(Paths.get(socket), threads).run(warm);
+    }
+}
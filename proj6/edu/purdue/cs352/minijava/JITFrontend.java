@@ -0,0 +1,80 @@
+package edu.purdue.cs352.minijava;
+
+import edu.purdue.cs352.minijava.backend.*;
+import edu.purdue.cs352.minijava.parser.*;
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.ssa.*;
+
+// A frontend that compiles to JVM bytecode and runs the result in-process
+public class JITFrontend {
+    public static void usage() {
+        System.out.println("Use: mjrun-jit [-cache=<dir>] <input filename>");
+    }
+
+    public static void main(String[] args) {
+        String fname = null;
+        ParserAST parser;
+        Program prog;
+        String cacheDir = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                if (arg.startsWith("-cache=")) {
+                    cacheDir = arg.substring(7);
+                } else {
+                    usage();
+                    return;
+                }
+
+            } else if (fname == null) {
+                fname = arg;
+
+            } else {
+                usage();
+                return;
+
+            }
+        }
+        if (fname == null) {
+            usage();
+            return;
+        }
+
+        SSAProgram sprog;
+        if (cacheDir != null) {
+            // an unchanged file comes straight out of the cache
+            try {
+                sprog = new SSACache(new java.io.File(cacheDir)).compile(new java.io.File(fname), true);
+            } catch (java.io.IOException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+        } else {
+            try {
+                parser = new ParserAST(new java.io.FileInputStream(fname));
+            } catch (java.io.FileNotFoundException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            }
+
+            try {
+                prog = parser.Program();
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+            sprog = SSACompiler.compile(prog);
+
+            // the backend needs static types
+            TypeChecker tc = new TypeChecker(sprog);
+            tc.typeCheck();
+        }
+
+        AsmJVM.run(sprog);
+    }
+}
@@ -1,6 +1,7 @@
 package edu.purdue.cs352.minijava;
 
 import edu.purdue.cs352.minijava.backend.*;
+import edu.purdue.cs352.minijava.opt.*;
 import edu.purdue.cs352.minijava.parser.*;
 import edu.purdue.cs352.minijava.ast.*;
 import edu.purdue.cs352.minijava.ssa.*;
@@ -8,7 +9,7 @@ import edu.purdue.cs352.minijava.ssa.*;
 // A simple frontend for the SSACompiler
 public class MIPSCompilerFrontend {
     public static void usage() {
-        System.out.println("Use: mjcompiler-mips <input filename>");
+        System.out.println("Use: mjcompiler-mips [-fuse] [-phi] [-sccp] [-gvn] [-dce] [-cache=<dir>] <input filename>");
     }
 
     public static void main(String[] args) {
@@ -16,11 +17,31 @@ public class MIPSCompilerFrontend {
         ParserAST parser;
         Program prog;
         MIPSCompilerFrontend fe;
+        boolean fuse = false;
+        boolean phi = false;
+        boolean sccp = false;
+        boolean gvn = false;
+        boolean dce = false;
+        String cacheDir = null;
 
         for (String arg : args) {
             if (arg.startsWith("-")) {
-                usage();
-                return;
+                if (arg.equals("-fuse")) {
+                    fuse = true;
+                } else if (arg.equals("-phi")) {
+                    phi = true;
+                } else if (arg.equals("-sccp")) {
+                    sccp = true;
+                } else if (arg.equals("-gvn")) {
+                    gvn = true;
+                } else if (arg.equals("-dce")) {
+                    dce = true;
+                } else if (arg.startsWith("-cache=")) {
+                    cacheDir = arg.substring(7);
+                } else {
+                    usage();
+                    return;
+                }
 
             } else if (fname == null) {
                 fname = arg;
@@ -36,24 +57,55 @@ public class MIPSCompilerFrontend {
             return;
         }
 
-        try {
-            parser = new ParserAST(new java.io.FileInputStream(fname));
-        } catch (java.io.FileNotFoundException ex) {
-            System.out.println("File " + fname + " not found.");
-            return;
-        }
+        SSAProgram sprog;
+        if (cacheDir != null) {
+            // an unchanged file comes straight out of the cache
+            try {
+                sprog = new SSACache(new java.io.File(cacheDir)).compile(new java.io.File(fname), true);
+            } catch (java.io.IOException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
 
-        try {
-            prog = parser.Program();
-        } catch (ParseException ex) {
-            System.out.println(ex.getMessage());
-            return;
+        } else {
+            try {
+                parser = new ParserAST(new java.io.FileInputStream(fname));
+            } catch (java.io.FileNotFoundException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            }
+
+            try {
+                prog = parser.Program();
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+            sprog = SSACompiler.compile(prog);
+
+            TypeChecker tc = new TypeChecker(sprog);
+            tc.typeCheck();
         }
 
-        SSAProgram sprog = SSACompiler.compile(prog);
+        if (phi || sccp || gvn || dce) {
+            // through Phi form and back, optimizing on the way
+            SSAPhiForm.Stats stats = SSAPhiForm.build(sprog);
+            if (sccp)
+                System.err.println(ConstantPropagation.propagate(sprog));
+            if (gvn)
+                System.err.println(ValueNumbering.number(sprog));
+            if (dce)
+                System.err.println(DeadCodeElimination.eliminate(sprog));
+            stats.add(SSAPhiForm.lower(sprog));
+            System.err.println(stats);
+        }
 
-        TypeChecker tc = new TypeChecker(sprog);
-        tc.typeCheck();
+        if (fuse)
+            System.err.println(SSAFusion.fuse(sprog));
 
         System.out.println(AsmMIPS.compile(sprog));
     }
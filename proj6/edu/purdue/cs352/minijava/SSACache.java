@@ -0,0 +1,105 @@
+package edu.purdue.cs352.minijava;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.purdue.cs352.minijava.parser.*;
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* An on-disk cache of compiled programs, keyed by a hash of the source, so
+ * that compiling an unchanged file skips lexing, parsing, SSA construction
+ * and type checking, and just reads the SSASerializer form back.
+ *
+ * The key covers the source bytes, whether the program is type checked,
+ * the serialization version and SSACompiler's revision, so an edited file,
+ * a new format or a compiler that makes different SSA is simply a miss. Entries are written to a temporary file and renamed into
+ * place, so concurrent compiles (e.g. under mjserver) never see half an
+ * entry, and an entry that can't be read is recompiled and replaced.
+ * Nothing is ever evicted; delete the directory to clear it.
+ *
+ * Every lookup returns a fresh SSAProgram, since the backends rewrite the
+ * program they're given. */
+public class SSACache {
+    private final File dir;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    public SSACache(File dir) {
+        this.dir = dir;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    private static String hash(byte[] source, boolean typeCheck) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every JVM has SHA-256
+            throw new Error(ex);
+        }
+        md.update(ByteBuffer.allocate(8).putInt(SSASerializer.VERSION).putInt(SSACompiler.REVISION).array());
+        md.update((byte) (typeCheck ? 1 : 0));
+        byte[] digest = md.digest(source);
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest)
+            sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+
+    // compile this source file, or load it if it's been compiled before
+    public SSAProgram compile(File source, boolean typeCheck) throws IOException, ParseException {
+        if (!source.isFile())
+            throw new FileNotFoundException(source.getPath());
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        File entry = new File(dir, hash(bytes, typeCheck) + ".ssa");
+
+        if (entry.isFile()) {
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(entry));
+                try {
+                    SSAProgram prog = SSASerializer.read(in);
+                    hits.incrementAndGet();
+                    return prog;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                // unreadable, so make it again
+            }
+        }
+
+        misses.incrementAndGet();
+        SSAProgram prog = SSACompiler.compile(new ParserAST(new ByteArrayInputStream(bytes)).Program());
+        if (typeCheck) {
+            TypeChecker tc = new TypeChecker(prog);
+            tc.typeCheck();
+        }
+
+        // failing to save it only costs the next compile
+        try {
+            dir.mkdirs();
+            File tmp = File.createTempFile("ssa", ".tmp", dir);
+            try {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+                try {
+                    SSASerializer.write(prog, out);
+                } finally {
+                    out.close();
+                }
+                Files.move(tmp.toPath(), entry.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException ex) {
+            System.err.println("Couldn't save " + source + " to the cache: " + ex.getMessage());
+        }
+        return prog;
+    }
+}
@@ -0,0 +1,374 @@
+package edu.purdue.cs352.minijava;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.ssa.*;
+
+public class SSACompiler extends ASTVisitor.SimpleASTVisitor {
+    /* Bump this whenever the SSA compiled for a program changes, so that
+     * SSACache doesn't hand out programs an older compiler made.
+     * 2: labels named after their method rather than an identity hash */
+    public static final int REVISION = 2;
+
+    // The method body currently being compiled
+    List<SSAStatement> body = new ArrayList<SSAStatement>();
+
+    // The current value of each local variable (symbol table)
+    HashMap<String, SSAStatement> vars = new HashMap<String, SSAStatement>();
+
+    /* Labels are named after the method, as in lwhile_Fac.ComputeFac_0_start,
+     * and numbered in the order their if or while is compiled, so the same
+     * program always gets the same labels. Java names can't contain '.', so
+     * labels from different methods never collide. */
+    final String method;
+    int labels = 0;
+
+    SSACompiler(String method) {
+        this.method = method;
+    }
+
+    public static SSAProgram compile(Program prog) {
+        SSAMethod main = compile(prog.getMain());
+        List<SSAClass> classes = new ArrayList<SSAClass>();
+
+        for (ClassDecl cl : prog.getClasses())
+            classes.add(compile(cl));
+
+        SSAProgram ret = new SSAProgram(main, classes);
+
+        // and the same indices, wherever it's compiled
+        ret.renumber();
+
+        return ret;
+    }
+
+    public static SSAClass compile(ClassDecl cl) {
+        List<SSAMethod> methods = new ArrayList<SSAMethod>();
+        for (MethodDecl md : cl.getMethods())
+            methods.add(compile(cl, md));
+        return new SSAClass(cl, methods);
+    }
+
+    public static SSAMethod compile(Main main) {
+        SSACompiler compiler = new SSACompiler("main");
+
+        // there's only a body
+        main.getBody().accept(compiler);
+
+        return new SSAMethod(main, compiler.getBody());
+    }
+
+    public static SSAMethod compile(ClassDecl cl, MethodDecl method) {
+        SSACompiler compiler = new SSACompiler(cl.getName() + "." + method.getName());
+
+        // visit the parameters
+        List<Parameter> params = method.getParameters();
+        SSAStatement[] paramStatements = new SSAStatement[params.size()];
+        int pi = 0;
+        for (Parameter param : params) {
+            SSAStatement s = paramStatements[pi] = new SSAStatement(param, SSAStatement.Op.Parameter, pi);
+            compiler.body.add(s);
+            pi++;
+        }
+
+        // then bind them to variables
+        pi = 0;
+        for (Parameter param : params) {
+            SSAStatement s = new SSAStatement(param, SSAStatement.Op.VarAssg, paramStatements[pi++], null, param.getName());
+            compiler.body.add(s);
+            compiler.vars.put(param.getName(), s);
+        }
+
+        // and the variable declarations
+        for (VarDecl vd : method.getVarDecls())
+            vd.accept(compiler);
+
+        // then compile the body
+        for (Statement statement : method.getBody())
+            statement.accept(compiler);
+
+        // and the return
+        compiler.compileReturn(method.getRetExp());
+
+        return new SSAMethod(method, compiler.getBody());
+    }
+
+    @Override public Object defaultVisit(ASTNode node) {
+        throw new Error("Unsupported visitor in SSACompiler: " + node.getClass().getSimpleName());
+    }
+
+    // the name of part of the label numbered number
+    private String label(String kind, int number, String part) {
+        return "l" + kind + "_" + method + "_" + number + "_" + part;
+    }
+
+    // unify each variable that has a different value in other
+    private void unify(ASTNode node, HashMap<String, SSAStatement> other) {
+        for (String name : vars.keySet()) {
+            SSAStatement ours = vars.get(name);
+            SSAStatement theirs = other.get(name);
+            if (ours != theirs) {
+                SSAStatement u = new SSAStatement(node, SSAStatement.Op.Unify, ours, theirs);
+                body.add(u);
+                vars.put(name, u);
+            }
+        }
+    }
+
+    @Override public Object visit(VarDecl vd) {
+        // variables start out null
+        SSAStatement ret = new SSAStatement(vd, SSAStatement.Op.Null, vd.getType());
+        body.add(ret);
+        vars.put(vd.getName(), ret);
+        return ret;
+    }
+
+    @Override public Object visit(BlockStatement stmt) {
+        Object ret = null;
+        for (Statement s : stmt.getBody())
+            ret = s.accept(this);
+        return ret;
+    }
+
+    @Override public Object visit(ExpStatement stmt) {
+        return stmt.getExp().accept(this);
+    }
+
+    @Override public Object visit(IfStatement stmt) {
+        SSAStatement cond = (SSAStatement) stmt.getCondition().accept(this);
+        int number = labels++;
+        String elseLabel = label("if", number, "else");
+        String doneLabel = label("if", number, "done");
+        HashMap<String, SSAStatement> before = vars;
+
+        body.add(new SSAStatement(stmt, SSAStatement.Op.NBranch, cond, null, elseLabel));
+
+        // the if part
+        vars = new HashMap<String, SSAStatement>(before);
+        stmt.getIfPart().accept(this);
+        HashMap<String, SSAStatement> ifVars = vars;
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Goto, doneLabel));
+
+        // the else part, if any
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Label, elseLabel));
+        vars = new HashMap<String, SSAStatement>(before);
+        Statement elsePart = stmt.getElsePart();
+        if (elsePart != null)
+            elsePart.accept(this);
+        HashMap<String, SSAStatement> elseVars = vars;
+
+        // then merge them
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Label, doneLabel));
+        vars = before;
+        for (String name : vars.keySet()) {
+            SSAStatement ifVal = ifVars.get(name);
+            SSAStatement elseVal = elseVars.get(name);
+            if (ifVal != elseVal) {
+                SSAStatement u = new SSAStatement(stmt, SSAStatement.Op.Unify, ifVal, elseVal);
+                body.add(u);
+                vars.put(name, u);
+            } else {
+                vars.put(name, ifVal);
+            }
+        }
+
+        return null;
+    }
+
+    @Override public Object visit(PrintStatement stmt) {
+        SSAStatement ret = new SSAStatement(stmt, SSAStatement.Op.Print,
+            (SSAStatement) stmt.getValue().accept(this), null);
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(WhileStatement stmt) {
+        int number = labels++;
+        String startLabel = label("while", number, "start");
+        String endLabel = label("while", number, "end");
+
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Label, startLabel));
+        HashMap<String, SSAStatement> before = vars;
+        vars = new HashMap<String, SSAStatement>(before);
+
+        SSAStatement cond = (SSAStatement) stmt.getCondition().accept(this);
+        body.add(new SSAStatement(stmt, SSAStatement.Op.NBranch, cond, null, endLabel));
+        stmt.getBody().accept(this);
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Goto, startLabel));
+        body.add(new SSAStatement(stmt, SSAStatement.Op.Label, endLabel));
+
+        // the loop's values are unified with those from before it
+        HashMap<String, SSAStatement> after = vars;
+        vars = before;
+        unify(stmt, after);
+
+        return null;
+    }
+
+    @Override public Object visit(AssignExp exp) {
+        // what sort of statement we make, if any, depends on the LHS
+        Exp target = exp.getTarget();
+        SSAStatement ret;
+
+        if (target instanceof VarExp) {
+            String name = ((VarExp) target).getName();
+
+            if (vars.containsKey(name)) {
+                // a local variable
+                ret = (SSAStatement) exp.getValue().accept(this);
+                SSAStatement assg = new SSAStatement(exp, SSAStatement.Op.VarAssg, ret, null, name);
+                body.add(assg);
+                vars.put(name, assg);
+
+            } else {
+                // a field of this
+                SSAStatement thisS = new SSAStatement(target, SSAStatement.Op.This);
+                body.add(thisS);
+                ret = (SSAStatement) exp.getValue().accept(this);
+                body.add(new SSAStatement(exp, SSAStatement.Op.MemberAssg, thisS, ret, name));
+
+            }
+
+        } else if (target instanceof MemberExp) {
+            MemberExp mtarget = (MemberExp) target;
+            SSAStatement sub = (SSAStatement) mtarget.getSub().accept(this);
+            ret = (SSAStatement) exp.getValue().accept(this);
+            body.add(new SSAStatement(exp, SSAStatement.Op.MemberAssg, sub, ret, mtarget.getMember()));
+
+        } else if (target instanceof IndexExp) {
+            IndexExp itarget = (IndexExp) target;
+            SSAStatement array = (SSAStatement) itarget.getTarget().accept(this);
+            SSAStatement index = (SSAStatement) itarget.getIndex().accept(this);
+            ret = (SSAStatement) exp.getValue().accept(this);
+            body.add(new SSAStatement(exp, SSAStatement.Op.IndexAssg, array, ret, index));
+
+        } else {
+            throw new Error("Invalid LHS: " + target.getClass().getSimpleName());
+
+        }
+
+        return ret;
+    }
+
+    @Override public Object visit(BinaryExp exp) {
+        SSAStatement left = (SSAStatement) exp.getLeft().accept(this);
+        SSAStatement right = (SSAStatement) exp.getRight().accept(this);
+        String opS = exp.getOp().toString();
+        SSAStatement.Op op;
+
+        if (opS.equals("<")) op = SSAStatement.Op.Lt;
+        else if (opS.equals("<=")) op = SSAStatement.Op.Le;
+        else if (opS.equals("==")) op = SSAStatement.Op.Eq;
+        else if (opS.equals("!=")) op = SSAStatement.Op.Ne;
+        else if (opS.equals(">")) op = SSAStatement.Op.Gt;
+        else if (opS.equals(">=")) op = SSAStatement.Op.Ge;
+        else if (opS.equals("&&")) op = SSAStatement.Op.And;
+        else if (opS.equals("||")) op = SSAStatement.Op.Or;
+        else if (opS.equals("+")) op = SSAStatement.Op.Plus;
+        else if (opS.equals("-")) op = SSAStatement.Op.Minus;
+        else if (opS.equals("*")) op = SSAStatement.Op.Mul;
+        else if (opS.equals("/")) op = SSAStatement.Op.Div;
+        else if (opS.equals("%")) op = SSAStatement.Op.Mod;
+        else throw new Error("Unsupported binary operation " + opS);
+
+        SSAStatement ret = new SSAStatement(exp, op, left, right);
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(BooleanLiteralExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Boolean, exp.getValue());
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(CallExp exp) {
+        SSAStatement target = (SSAStatement) exp.getTarget().accept(this);
+
+        // each argument gets an Arg, in order
+        List<SSAStatement> args = new ArrayList<SSAStatement>();
+        for (Exp arg : exp.getArguments()) {
+            SSAStatement value = (SSAStatement) arg.accept(this);
+            SSAStatement argS = new SSAStatement(value.getASTNode(), SSAStatement.Op.Arg, value, null, args.size());
+            body.add(argS);
+            args.add(argS);
+        }
+
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Call, target, null,
+            new SSACall(exp.getMethod(), args));
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(IndexExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Index,
+            (SSAStatement) exp.getTarget().accept(this),
+            (SSAStatement) exp.getIndex().accept(this));
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(IntLiteralExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Int, exp.getValue());
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(MemberExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Member,
+            (SSAStatement) exp.getSub().accept(this), null, exp.getMember());
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(NotExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Not,
+            (SSAStatement) exp.getSub().accept(this), null);
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(NewIntArrayExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.NewIntArray,
+            (SSAStatement) exp.getSize().accept(this), null);
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(NewObjectExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.NewObj, exp.getName());
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(ThisExp exp) {
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.This);
+        body.add(ret);
+        return ret;
+    }
+
+    @Override public Object visit(VarExp exp) {
+        String name = exp.getName();
+
+        // a local variable is just its current value
+        if (vars.containsKey(name))
+            return vars.get(name);
+
+        // otherwise it's a field of this
+        SSAStatement thisS = new SSAStatement(exp, SSAStatement.Op.This);
+        body.add(thisS);
+        SSAStatement ret = new SSAStatement(exp, SSAStatement.Op.Member, thisS, null, name);
+        body.add(ret);
+        return ret;
+    }
+
+    public Object compileReturn(Exp retExp) {
+        SSAStatement ret = new SSAStatement(retExp, SSAStatement.Op.Return,
+            (SSAStatement) retExp.accept(this), null);
+        body.add(ret);
+        return ret;
+    }
+
+    public List<SSAStatement> getBody() { return body; }
+}
@@ -1,6 +1,7 @@
 package edu.purdue.cs352.minijava;
 
 import edu.purdue.cs352.minijava.backend.*;
+import edu.purdue.cs352.minijava.opt.*;
 import edu.purdue.cs352.minijava.parser.*;
 import edu.purdue.cs352.minijava.ast.*;
 import edu.purdue.cs352.minijava.ssa.*;
@@ -8,7 +9,7 @@ import edu.purdue.cs352.minijava.ssa.*;
 // A simple frontend for the SSACompiler
 public class SSACompilerFrontend {
     public static void usage() {
-        System.out.println("Use: mjcompiler-ssa [-t] [-r] <input filename>");
+        System.out.println("Use: mjcompiler-ssa [-t] [-fuse] [-r] [-phi] [-sccp] [-gvn] [-dce] [-cache=<dir>] <input filename>");
     }
 
     public static void main(String[] args) {
@@ -18,13 +19,31 @@ public class SSACompilerFrontend {
         SSACompilerFrontend fe;
         boolean typeCheck = false;
         boolean regAlloc = false;
+        boolean fuse = false;
+        boolean phi = false;
+        boolean sccp = false;
+        boolean gvn = false;
+        boolean dce = false;
+        String cacheDir = null;
 
         for (String arg : args) {
             if (arg.startsWith("-")) {
                 if (arg.equals("-t")) {
                     typeCheck = true;
+                } else if (arg.equals("-fuse")) {
+                    fuse = true;
                 } else if (arg.equals("-r")) {
                     regAlloc = true;
+                } else if (arg.equals("-phi")) {
+                    phi = true;
+                } else if (arg.equals("-sccp")) {
+                    sccp = true;
+                } else if (arg.equals("-gvn")) {
+                    gvn = true;
+                } else if (arg.equals("-dce")) {
+                    dce = true;
+                } else if (arg.startsWith("-cache=")) {
+                    cacheDir = arg.substring(7);
                 } else {
                     usage();
                     return;
@@ -44,25 +63,64 @@ public class SSACompilerFrontend {
             return;
         }
 
-        try {
-            parser = new ParserAST(new java.io.FileInputStream(fname));
-        } catch (java.io.FileNotFoundException ex) {
-            System.out.println("File " + fname + " not found.");
+        // fusion and register allocation only understand the Unify form
+        if (phi && (fuse || regAlloc)) {
+            usage();
             return;
         }
 
-        try {
-            prog = parser.Program();
-        } catch (ParseException ex) {
-            System.out.println(ex.getMessage());
-            return;
+        SSAProgram sprog;
+        if (cacheDir != null) {
+            // an unchanged file comes straight out of the cache
+            try {
+                sprog = new SSACache(new java.io.File(cacheDir)).compile(new java.io.File(fname), typeCheck);
+            } catch (java.io.IOException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+        } else {
+            try {
+                parser = new ParserAST(new java.io.FileInputStream(fname));
+            } catch (java.io.FileNotFoundException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            }
+
+            try {
+                prog = parser.Program();
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+            sprog = SSACompiler.compile(prog);
+
+            if (typeCheck) {
+                TypeChecker tc = new TypeChecker(sprog);
+                tc.typeCheck();
+            }
         }
 
-        SSAProgram sprog = SSACompiler.compile(prog);
+        // optimizations work on the Phi form, which is printed as it is with -phi
+        if (phi || sccp || gvn || dce) {
+            SSAPhiForm.Stats phiStats = SSAPhiForm.build(sprog);
+            if (sccp)
+                System.err.println(ConstantPropagation.propagate(sprog));
+            if (gvn)
+                System.err.println(ValueNumbering.number(sprog));
+            if (dce)
+                System.err.println(DeadCodeElimination.eliminate(sprog));
+            if (!phi)
+                phiStats.add(SSAPhiForm.lower(sprog));
+            System.err.println(phiStats);
+        }
 
-        if (typeCheck) {
-            TypeChecker tc = new TypeChecker(sprog);
-            tc.typeCheck();
+        if (fuse) {
+            System.err.println(SSAFusion.fuse(sprog));
         }
 
         if (regAlloc) {
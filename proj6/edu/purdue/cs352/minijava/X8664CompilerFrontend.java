@@ -8,19 +8,24 @@ import edu.purdue.cs352.minijava.ssa.*;
 // A simple frontend for the SSACompiler
 public class X8664CompilerFrontend {
     public static void usage() {
-        System.out.println("Use: mjcompiler-x8664 <input filename>");
+        System.out.println("Use: mjcompiler-x8664 [-cache=<dir>] <input filename>");
     }
 
     public static void main(String[] args) {
         String fname = null;
         ParserAST parser;
         Program prog;
+        String cacheDir = null;
         X8664CompilerFrontend fe;
 
         for (String arg : args) {
             if (arg.startsWith("-")) {
-                usage();
-                return;
+                if (arg.startsWith("-cache=")) {
+                    cacheDir = arg.substring(7);
+                } else {
+                    usage();
+                    return;
+                }
 
             } else if (fname == null) {
                 fname = arg;
@@ -36,24 +41,39 @@ public class X8664CompilerFrontend {
             return;
         }
 
-        try {
-            parser = new ParserAST(new java.io.FileInputStream(fname));
-        } catch (java.io.FileNotFoundException ex) {
-            System.out.println("File " + fname + " not found.");
-            return;
-        }
+        SSAProgram sprog;
+        if (cacheDir != null) {
+            // an unchanged file comes straight out of the cache
+            try {
+                sprog = new SSACache(new java.io.File(cacheDir)).compile(new java.io.File(fname), true);
+            } catch (java.io.IOException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
 
-        try {
-            prog = parser.Program();
-        } catch (ParseException ex) {
-            System.out.println(ex.getMessage());
-            return;
-        }
+        } else {
+            try {
+                parser = new ParserAST(new java.io.FileInputStream(fname));
+            } catch (java.io.FileNotFoundException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            }
 
-        SSAProgram sprog = SSACompiler.compile(prog);
+            try {
+                prog = parser.Program();
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+            sprog = SSACompiler.compile(prog);
 
-        TypeChecker tc = new TypeChecker(sprog);
-        tc.typeCheck();
+            TypeChecker tc = new TypeChecker(sprog);
+            tc.typeCheck();
+        }
 
         System.out.println(AsmX8664.compile(sprog));
     }
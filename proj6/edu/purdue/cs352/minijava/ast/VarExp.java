@@ -5,6 +5,11 @@ import edu.purdue.cs352.minijava.parser.Token;
 public class VarExp extends Exp {
     String name;
 
+    /* where the variable lives, filled in by a resolution pass: a local slot
+     * (>= 0), a field (~offset), or UNRESOLVED */
+    public static final int UNRESOLVED = Integer.MIN_VALUE;
+    int slot = UNRESOLVED;
+
     public VarExp(Token tok, String name) {
         super(tok);
         this.name = name;
@@ -12,5 +17,8 @@ public class VarExp extends Exp {
 
     public String getName() { return name; }
 
+    public int getSlot() { return slot; }
+    public void setSlot(int slot) { this.slot = slot; }
+
     public Object accept(ASTVisitor visitor) { return visitor.visit(this); }
 }
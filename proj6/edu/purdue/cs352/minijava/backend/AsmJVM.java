@@ -0,0 +1,531 @@
+package edu.purdue.cs352.minijava.backend;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.ssa.*;
+import edu.purdue.cs352.minijava.types.*;
+
+import static edu.purdue.cs352.minijava.backend.JVMClassFile.Code.*;
+
+/* Compiles a type-checked SSAProgram to JVM classes, so that it can be run
+ * in-process and optimized by the JVM's own JIT. Every SSAClass becomes a
+ * class mj.<Name> with real fields, and main becomes mj.$main.main().
+ *
+ * ints and booleans are JVM ints; everything else is stored as Object and
+ * cast at each use, so descriptors only depend on which values are
+ * primitive. */
+public class AsmJVM {
+    public static final String PACKAGE = "mj";
+    public static final String MAIN = PACKAGE + "/$main";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String RUNTIME = "edu/purdue/cs352/minijava/backend/JVMRuntime";
+
+    final SSAProgram prog;
+
+    private AsmJVM(SSAProgram prog) {
+        this.prog = prog;
+    }
+
+    // compile the program, returning the class files by binary name
+    public static Map<String, byte[]> compile(SSAProgram prog) {
+        AsmJVM asm = new AsmJVM(prog);
+        Map<String, byte[]> ret = new LinkedHashMap<String, byte[]>();
+
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            JVMClassFile cf = asm.compileClass(cl);
+            ret.put(cf.getName().replace('/', '.'), cf.toByteArray());
+        }
+
+        JVMClassFile mcf = new JVMClassFile(MAIN, OBJECT);
+        asm.compileMethod(mcf, null, prog.getMain());
+        ret.put(MAIN.replace('/', '.'), mcf.toByteArray());
+
+        return ret;
+    }
+
+    // compile and load the program, returning its main method
+    public static Method load(SSAProgram prog) {
+        Loader loader = new Loader(compile(prog));
+        try {
+            return loader.loadClass(MAIN.replace('/', '.')).getMethod("main");
+        } catch (ReflectiveOperationException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    // compile, load and run the program
+    public static void run(SSAProgram prog) {
+        Method main = load(prog);
+        try {
+            main.invoke(null);
+            JVMRuntime.flush();
+        } catch (InvocationTargetException ex) {
+            JVMRuntime.flush();
+
+            // rethrow whatever the program itself threw
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new Error(cause);
+        } catch (IllegalAccessException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /* Compiled classes reference each other by name, so they all have to be
+     * in the same loader. (Hidden classes can't be named by other classes,
+     * so a hidden-class Lookup can't define a class hierarchy like this.) */
+    private static class Loader extends ClassLoader {
+        final Map<String, byte[]> classes;
+
+        Loader(Map<String, byte[]> classes) {
+            super(AsmJVM.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] b = classes.get(name);
+            if (b == null) throw new ClassNotFoundException(name);
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    // Names and descriptors:
+    static String className(String name) {
+        return PACKAGE + "/" + name;
+    }
+
+    static String descriptor(StaticType type) {
+        return (type != null && type.isPrimitive()) ? "I" : "L" + OBJECT + ";";
+    }
+
+    static String methodDescriptor(SSAMethod m) {
+        StringBuilder sb = new StringBuilder("(");
+        List<StaticType> params = m.getParamTypes();
+        if (params != null) {
+            for (StaticType pt : params)
+                sb.append(descriptor(pt));
+        }
+        sb.append(")");
+        sb.append(descriptor(m.getRetType()));
+        return sb.toString();
+    }
+
+    // the class that owns a field, by its offset in ClassLayout
+    String fieldOwner(SSAClass cl, String field) {
+        int offset = ClassLayout.fieldOffset(prog, cl, field);
+
+        List<SSAClass> classList = new ArrayList<SSAClass>();
+        for (SSAClass c = cl; c != null; c = c.superclass(prog))
+            classList.add(c);
+        Collections.reverse(classList);
+
+        int before = 1;
+        for (SSAClass c : classList) {
+            int count = c.getFieldsOrdered().size();
+            if (offset < before + count) return c.getASTNode().getName();
+            before += count;
+        }
+        throw new Error("Unknown field " + field);
+    }
+
+    SSAClass staticClass(SSAStatement s) {
+        StaticType type = s.getType();
+        if (!(type instanceof ObjectType))
+            throw new Error("Expected an object for " + s);
+        SSAClass cl = prog.getClass(((ObjectType) type).getName());
+        if (cl == null)
+            throw new Error("Unknown class " + type);
+        return cl;
+    }
+
+    // Classes:
+    JVMClassFile compileClass(SSAClass cl) {
+        SSAClass sup = cl.superclass(prog);
+        JVMClassFile cf = new JVMClassFile(className(cl.getASTNode().getName()),
+            sup == null ? OBJECT : className(sup.getASTNode().getName()));
+
+        for (SSAField f : cl.getFieldsOrdered())
+            cf.addField(JVMClassFile.ACC_PUBLIC, "f_" + f.getName(), descriptor(f.getType()));
+
+        // a default constructor
+        JVMClassFile.Code init = new JVMClassFile.Code();
+        init.op(ALOAD_0);
+        init.op2(INVOKESPECIAL, cf.methodRef(sup == null ? OBJECT : className(sup.getASTNode().getName()),
+            "<init>", "()V"));
+        init.op(RETURN);
+        init.maxStack = 1;
+        init.maxLocals = 1;
+        cf.addMethod(JVMClassFile.ACC_PUBLIC, "<init>", "()V", init);
+
+        for (SSAMethod m : cl.getMethodsOrdered())
+            compileMethod(cf, cl, m);
+
+        return cf;
+    }
+
+    // Methods:
+    void compileMethod(JVMClassFile cf, SSAClass cl, SSAMethod m) {
+        SSAStatement[] body = m.getBody().toArray(new SSAStatement[0]);
+        boolean isMain = (cl == null);
+        int params = isMain ? 0 : m.getParamTypes().size();
+        int firstLocal = isMain ? 0 : 1 + params;
+
+        // one local per unified group, primitive if any member is
+        int[] groups = SSAUnification.groups(body);
+        int groupCount = SSAUnification.count(groups);
+        boolean[] prim = new boolean[groupCount];
+        for (int bi = 0; bi < body.length; bi++) {
+            StaticType type = body[bi].getType();
+            if (type != null && type.isPrimitive()) prim[groups[bi]] = true;
+        }
+
+        Map<SSAStatement, Integer> index = new HashMap<SSAStatement, Integer>();
+        for (int bi = 0; bi < body.length; bi++)
+            index.put(body[bi], Integer.valueOf(bi));
+
+        MethodCompiler mc = new MethodCompiler(cf, body, groups, prim, index, firstLocal);
+        JVMClassFile.Code code = mc.code;
+
+        // initialize every local, so every path has them assigned
+        for (int gi = 0; gi < groupCount; gi++) {
+            if (prim[gi]) {
+                code.op(ICONST_0);
+                code.local(ISTORE, firstLocal + gi);
+            } else {
+                code.op(ACONST_NULL);
+                code.local(ASTORE, firstLocal + gi);
+            }
+        }
+
+        for (int bi = 0; bi < body.length; bi++)
+            mc.compile(bi);
+
+        // falling off the end
+        if (isMain) {
+            code.op(RETURN);
+        } else if (m.getRetType() != null && m.getRetType().isPrimitive()) {
+            code.op(ICONST_0);
+            code.op(IRETURN);
+        } else {
+            code.op(ACONST_NULL);
+            code.op(ARETURN);
+        }
+
+        code.maxStack = Math.max(4, mc.maxArgs + 1);
+        code.maxLocals = firstLocal + groupCount;
+
+        if (isMain) {
+            cf.addMethod(JVMClassFile.ACC_PUBLIC | JVMClassFile.ACC_STATIC, "main", "()V", code);
+        } else {
+            cf.addMethod(JVMClassFile.ACC_PUBLIC, "m_" + m.getMethod().getName(),
+                methodDescriptor(m), code);
+        }
+    }
+
+    // the code generator for one method
+    class MethodCompiler {
+        final JVMClassFile cf;
+        final JVMClassFile.Code code = new JVMClassFile.Code();
+        final SSAStatement[] body;
+        final int[] groups;
+        final boolean[] prim;
+        final Map<SSAStatement, Integer> index;
+        final int firstLocal;
+        int maxArgs = 0, nextLabel = 0;
+
+        MethodCompiler(JVMClassFile cf, SSAStatement[] body, int[] groups, boolean[] prim,
+                       Map<SSAStatement, Integer> index, int firstLocal) {
+            this.cf = cf;
+            this.body = body;
+            this.groups = groups;
+            this.prim = prim;
+            this.index = index;
+            this.firstLocal = firstLocal;
+        }
+
+        int group(SSAStatement s) {
+            return groups[index.get(s).intValue()];
+        }
+
+        boolean isPrim(SSAStatement s) {
+            return prim[group(s)];
+        }
+
+        // push the value of a statement
+        void load(SSAStatement s) {
+            int g = group(s);
+            code.local(prim[g] ? ILOAD : ALOAD, firstLocal + g);
+        }
+
+        // push a statement's value, cast to the given class
+        void loadAs(SSAStatement s, String cname) {
+            load(s);
+            code.op2(CHECKCAST, cf.classRef(cname));
+        }
+
+        // pop into the local for body[bi]
+        void store(int bi) {
+            int g = groups[bi];
+            code.local(prim[g] ? ISTORE : ASTORE, firstLocal + g);
+        }
+
+        void move(int bi, SSAStatement from) {
+            load(from);
+            store(bi);
+        }
+
+        // SSA labels share the method with our own
+        String label(Object name) {
+            return "L" + name;
+        }
+
+        // push 0 or 1 depending on a comparison branch
+        void condition(int branchOp) {
+            String t = "$t" + nextLabel, e = "$e" + nextLabel;
+            nextLabel++;
+            code.branch(branchOp, t);
+            code.op(ICONST_0);
+            code.branch(GOTO, e);
+            code.label(t);
+            code.op(ICONST_1);
+            code.label(e);
+        }
+
+        void compile(int bi) {
+            SSAStatement s = body[bi];
+            SSAStatement left = s.getLeft(), right = s.getRight();
+            Object special = s.getSpecial();
+
+            switch (s.getOp()) {
+                // Meta:
+                case Unify:
+                case Alias:
+                    // the whole group is already one local
+                    break;
+
+                // Data:
+                case This:
+                    code.op(ALOAD_0);
+                    store(bi);
+                    break;
+
+                case Parameter:
+                {
+                    int pi = ((Integer) special).intValue();
+                    code.local(isPrim(s) ? ILOAD : ALOAD, 1 + pi);
+                    store(bi);
+                    break;
+                }
+
+                case Arg:
+                    move(bi, left);
+                    break;
+
+                case Null:
+                {
+                    Type ntype = (Type) special;
+                    if (ntype instanceof TypeInt || ntype instanceof TypeBoolean)
+                        code.op(ICONST_0);
+                    else
+                        code.op(ACONST_NULL);
+                    store(bi);
+                    break;
+                }
+
+                case Int:
+                    code.intConst(cf, ((Integer) special).intValue());
+                    store(bi);
+                    break;
+
+                case Boolean:
+                    code.op(((Boolean) special).booleanValue() ? ICONST_1 : ICONST_0);
+                    store(bi);
+                    break;
+
+                case NewObj:
+                {
+                    String cname = (String) special;
+                    if (prog.getClass(cname) == null)
+                        throw new Error("Unknown class " + cname);
+                    int cref = cf.classRef(className(cname));
+                    code.op2(NEW, cref);
+                    code.op(DUP);
+                    code.op2(INVOKESPECIAL, cf.methodRef(className(cname), "<init>", "()V"));
+                    store(bi);
+                    break;
+                }
+
+                case NewIntArray:
+                    load(left);
+                    code.op1(NEWARRAY, T_INT);
+                    store(bi);
+                    break;
+
+                // Control flow:
+                case Label:
+                    code.label(label(special));
+                    break;
+
+                case Goto:
+                    code.branch(GOTO, label(special));
+                    break;
+
+                case Branch:
+                    load(left);
+                    code.branch(IFNE, label(special));
+                    break;
+
+                case NBranch:
+                    load(left);
+                    code.branch(IFEQ, label(special));
+                    break;
+
+                // Calls:
+                case Call:
+                {
+                    SSACall call = (SSACall) special;
+                    SSAClass cl = staticClass(left);
+                    SSAMethod target = cl.getMethod(prog, call.getMethod());
+                    if (target == null)
+                        throw new Error("Unknown method " + call.getMethod());
+                    List<SSAStatement> args = call.getArgs();
+                    if (args.size() != target.getParamTypes().size())
+                        throw new Error("Call with wrong number of arguments");
+
+                    String owner = className(cl.getASTNode().getName());
+                    loadAs(left, owner);
+                    for (SSAStatement arg : args)
+                        load(arg);
+                    code.op2(INVOKEVIRTUAL, cf.methodRef(owner, "m_" + call.getMethod(),
+                        methodDescriptor(target)));
+                    if (args.size() > maxArgs) maxArgs = args.size();
+                    store(bi);
+                    break;
+                }
+
+                case Print:
+                {
+                    StaticType type = left.getType();
+                    String desc;
+                    if (type instanceof PrimitiveType.IntType) desc = "(I)V";
+                    else if (type instanceof PrimitiveType.BooleanType) desc = "(Z)V";
+                    else desc = "(L" + OBJECT + ";)V";
+                    load(left);
+                    code.op2(INVOKESTATIC, cf.methodRef(RUNTIME, "print", desc));
+                    break;
+                }
+
+                case Return:
+                    load(left);
+                    code.op(isPrim(left) ? IRETURN : ARETURN);
+                    break;
+
+                // Member access:
+                case Member:
+                {
+                    String field = (String) special;
+                    StaticType type = left.getType();
+                    if (type instanceof ObjectType && ((ObjectType) type).getName().equals("int[]")) {
+                        if (!field.equals("length"))
+                            throw new Error("Unknown field " + field);
+                        loadAs(left, "[I");
+                        code.op(ARRAYLENGTH);
+                    } else {
+                        String owner = className(fieldOwner(staticClass(left), field));
+                        loadAs(left, owner);
+                        code.op2(GETFIELD, cf.fieldRef(owner, "f_" + field, isPrim(s) ? "I" : "L" + OBJECT + ";"));
+                    }
+                    store(bi);
+                    break;
+                }
+
+                case Index:
+                    loadAs(left, "[I");
+                    load(right);
+                    code.op(IALOAD);
+                    store(bi);
+                    break;
+
+                // Assignment:
+                case VarAssg:
+                    move(bi, left);
+                    break;
+
+                case MemberAssg:
+                {
+                    String field = (String) special;
+                    String owner = className(fieldOwner(staticClass(left), field));
+                    loadAs(left, owner);
+                    load(right);
+                    code.op2(PUTFIELD, cf.fieldRef(owner, "f_" + field, isPrim(right) ? "I" : "L" + OBJECT + ";"));
+                    move(bi, right);
+                    break;
+                }
+
+                case IndexAssg:
+                    loadAs(left, "[I");
+                    load((SSAStatement) special);
+                    load(right);
+                    code.op(IASTORE);
+                    move(bi, right);
+                    break;
+
+                // Unary operator:
+                case Not:
+                    load(left);
+                    code.op(ICONST_1);
+                    code.op(IXOR);
+                    store(bi);
+                    break;
+
+                // comparisons
+                case Lt: binary(left, right); condition(IF_ICMPLT); store(bi); break;
+                case Le: binary(left, right); condition(IF_ICMPLE); store(bi); break;
+                case Gt: binary(left, right); condition(IF_ICMPGT); store(bi); break;
+                case Ge: binary(left, right); condition(IF_ICMPGE); store(bi); break;
+
+                // arithmetic and logic
+                case Plus: binary(left, right); code.op(IADD); store(bi); break;
+                case Minus: binary(left, right); code.op(ISUB); store(bi); break;
+                case Mul: binary(left, right); code.op(IMUL); store(bi); break;
+                case Div: binary(left, right); code.op(IDIV); store(bi); break;
+                case Mod: binary(left, right); code.op(IREM); store(bi); break;
+                case And: binary(left, right); code.op(IAND); store(bi); break;
+                case Or: binary(left, right); code.op(IOR); store(bi); break;
+
+                // equality operators
+                case Eq:
+                case Ne:
+                {
+                    boolean eq = (s.getOp() == SSAStatement.Op.Eq);
+                    boolean lp = isPrim(left), rp = isPrim(right);
+                    if (lp && rp) {
+                        binary(left, right);
+                        condition(eq ? IF_ICMPEQ : IF_ICMPNE);
+                    } else if (!lp && !rp) {
+                        binary(left, right);
+                        condition(eq ? IF_ACMPEQ : IF_ACMPNE);
+                    } else {
+                        // a primitive is never equal to an object
+                        code.op(eq ? ICONST_0 : ICONST_1);
+                    }
+                    store(bi);
+                    break;
+                }
+
+                default:
+                    throw new Error("Implement JVM backend for " + s.getOp());
+            }
+        }
+
+        void binary(SSAStatement left, SSAStatement right) {
+            load(left);
+            load(right);
+        }
+    }
+}
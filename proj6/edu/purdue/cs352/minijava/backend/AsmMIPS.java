@@ -334,15 +334,11 @@ public class AsmMIPS {
 
 	        case Branch:
 	        case NBranch:
-				ssaGen("beq", s, true, false);
-				sb.append(", .");
+				// jump if the condition is true (Branch) or false (NBranch)
+				sb.append(s.getOp() == SSAStatement.Op.Branch ? "bne " : "beq ");
+				printReg(s.getLeft());
+				sb.append(", $zero, .");
 				sb.append(s.getSpecial());
-        		//break;
-				
-	        
-				/*ssaGen("bne", s, true, false);
-				sb.append(", .");
-				sb.append(s.getSpecial());*/
 	        	break;
 
 	          // Function call
@@ -374,10 +370,28 @@ public class AsmMIPS {
 
 	          // Member and index access
 	        case Member:
-	          break;
+				// an array's length is its first word
+				ssaGen("lw", s, false, false);
+				if (isIntArray(s.getLeft()))
+					sb.append("0");
+				else
+					sb.append(ClassLayout.fieldOffset(prog, targetClass(prog, cl, s.getLeft()), (String) s.getSpecial()) * wordSize);
+				sb.append("(");
+				printReg(s.getLeft());
+				sb.append(")");
+				break;
 
 	        case Index:
-	          break;
+				// the elements start past the length word
+				sb.append("sll $v1, ");
+				printReg(s.getRight());
+				sb.append(", 2\n add $v1, $v1, ");
+				printReg(s.getLeft());
+				sb.append("\n ");
+				ssaGen("lw", s, false, false);
+				sb.append(wordSize);
+				sb.append("($v1)");
+				break;
 
 	          // Assignment
 	        case VarAssg:
@@ -476,6 +490,54 @@ public class AsmMIPS {
                 sb.append("\n mfhi ");
                 printReg(s);                                
                 break;      
+
+			// Fused operations (from SSAFusion)
+			case BranchLt:
+			case BranchLe:
+			case BranchGt:
+			case BranchGe:
+				sb.append(s.getOp() == SSAStatement.Op.BranchLt ? "blt " :
+					s.getOp() == SSAStatement.Op.BranchLe ? "ble " :
+					s.getOp() == SSAStatement.Op.BranchGt ? "bgt " : "bge ");
+				printReg(s.getLeft());
+				sb.append(", ");
+				printReg(s.getRight());
+				sb.append(", .");
+				sb.append(s.getSpecial());
+				break;
+
+			case PlusImm:
+				ssaGen("add", s, true, false);
+				sb.append(", ");
+				sb.append(s.getSpecial());
+				break;
+			case MinusImm:
+				ssaGen("sub", s, true, false);
+				sb.append(", ");
+				sb.append(s.getSpecial());
+				break;
+
+			case MemberIndex:
+			{
+				// load the array into $v1, then index it past its length word
+				sb.append("lw $v1, ");
+				sb.append(ClassLayout.fieldOffset(prog, targetClass(prog, cl, s.getLeft()), (String) s.getSpecial()) * wordSize);
+				sb.append("(");
+				printReg(s.getLeft());
+				sb.append(")\n ");
+				ssaGen("sll", s, false, false);
+				printReg(s.getRight());
+				sb.append(", 2\n ");
+				ssaGen("add", s, false, false);
+				printReg(s);
+				sb.append(", $v1\n ");
+				ssaGen("lw", s, false, false);
+				sb.append(wordSize);
+				sb.append("(");
+				printReg(s);
+				sb.append(")");
+				break;
+			}
 			
             default:
                 throw new Error("Implement MIPS compiler for " + s.getOp() + "!");
@@ -487,6 +549,21 @@ public class AsmMIPS {
 		}
     }
 
+	// Helper functions for member access: the class a target's fields are laid out by
+	private SSAClass targetClass(SSAProgram prog, SSAClass cl, SSAStatement target)
+	{
+		StaticType targetType = target.getType();
+		if (targetType instanceof ObjectType && !isIntArray(target))
+			return prog.getClass(((ObjectType) targetType).getName());
+		return cl;
+	}
+
+	private boolean isIntArray(SSAStatement s)
+	{
+		StaticType type = s.getType();
+		return type instanceof ObjectType && ((ObjectType) type).getName().equals("int[]");
+	}
+
 	// Helper functions for saving registers
 	private void setUsedRegisters(SSAStatement s)
 	{
@@ -0,0 +1,242 @@
+package edu.purdue.cs352.minijava.backend;
+
+import java.io.*;
+import java.util.*;
+
+/* A minimal writer for JVM class files, just enough for AsmJVM. Classes are
+ * written as version 49 (Java 5), which the JVM verifies by type inference,
+ * so no StackMapTable frames have to be computed. */
+public class JVMClassFile {
+    // access flags
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_SUPER = 0x0020;
+
+    // constant pool tags
+    private static final int CONSTANT_Utf8 = 1;
+    private static final int CONSTANT_Integer = 3;
+    private static final int CONSTANT_Class = 7;
+    private static final int CONSTANT_Fieldref = 9;
+    private static final int CONSTANT_Methodref = 10;
+    private static final int CONSTANT_NameAndType = 12;
+
+    // the constant pool, as written, and its index by content
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final String name, superName;
+    private final List<byte[]> fields = new ArrayList<byte[]>();
+    private final List<byte[]> methods = new ArrayList<byte[]>();
+
+    public JVMClassFile(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    public String getName() { return name; }
+
+    // Constant pool:
+    private int constant(String key, int tag, int a, int b, String utf) {
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx.intValue();
+
+        try {
+            pool.writeByte(tag);
+            switch (tag) {
+                case CONSTANT_Utf8: pool.writeUTF(utf); break;
+                case CONSTANT_Integer: pool.writeInt(a); break;
+                case CONSTANT_Class: pool.writeShort(a); break;
+                default: pool.writeShort(a); pool.writeShort(b); break;
+            }
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+
+        int ret = poolCount++;
+        poolIndex.put(key, Integer.valueOf(ret));
+        return ret;
+    }
+
+    public int utf8(String s) {
+        return constant("U" + s, CONSTANT_Utf8, 0, 0, s);
+    }
+
+    public int integer(int v) {
+        return constant("I" + v, CONSTANT_Integer, v, 0, null);
+    }
+
+    public int classRef(String cname) {
+        return constant("C" + cname, CONSTANT_Class, utf8(cname), 0, null);
+    }
+
+    private int nameAndType(String mname, String desc) {
+        return constant("N" + mname + ":" + desc, CONSTANT_NameAndType, utf8(mname), utf8(desc), null);
+    }
+
+    public int fieldRef(String owner, String fname, String desc) {
+        return constant("F" + owner + "." + fname + ":" + desc, CONSTANT_Fieldref,
+            classRef(owner), nameAndType(fname, desc), null);
+    }
+
+    public int methodRef(String owner, String mname, String desc) {
+        return constant("M" + owner + "." + mname + ":" + desc, CONSTANT_Methodref,
+            classRef(owner), nameAndType(mname, desc), null);
+    }
+
+    // Members:
+    public void addField(int access, String fname, String desc) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(fname));
+            out.writeShort(utf8(desc));
+            out.writeShort(0); // attributes
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    public void addMethod(int access, String mname, String desc, Code code) {
+        byte[] bytecode = code.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(mname));
+            out.writeShort(utf8(desc));
+            out.writeShort(1); // attributes
+
+            // the Code attribute
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    // get the whole class file
+    public byte[] toByteArray() {
+        int thisIdx = classRef(name);
+        int superIdx = classRef(superName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(49); // major version
+            out.writeShort(poolCount);
+            pool.flush();
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisIdx);
+            out.writeShort(superIdx);
+            out.writeShort(0); // interfaces
+            out.writeShort(fields.size());
+            for (byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for (byte[] m : methods) out.write(m);
+            out.writeShort(0); // attributes
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /* The body of one method. Branches are emitted against named labels and
+     * patched when the method is finished. */
+    public static class Code {
+        // opcodes used by AsmJVM
+        public static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, ILOAD = 0x15, ALOAD = 0x19, ALOAD_0 = 0x2a, ISTORE = 0x36, ASTORE = 0x3a,
+            IALOAD = 0x2e, IASTORE = 0x4f, POP = 0x57, DUP = 0x59,
+            IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, IREM = 0x70,
+            IAND = 0x7e, IOR = 0x80, IXOR = 0x82,
+            IFEQ = 0x99, IFNE = 0x9a,
+            IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2,
+            IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, IF_ACMPEQ = 0xa5, IF_ACMPNE = 0xa6,
+            GOTO = 0xa7, IRETURN = 0xac, ARETURN = 0xb0, RETURN = 0xb1,
+            GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7,
+            INVOKESTATIC = 0xb8, NEW = 0xbb, NEWARRAY = 0xbc, ARRAYLENGTH = 0xbe, CHECKCAST = 0xc0;
+
+        public static final int T_INT = 10;
+
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        final Map<String, Integer> labels = new HashMap<String, Integer>();
+        final List<int[]> fixups = new ArrayList<int[]>(); // {branch pc, offset pc}
+        final List<String> fixupLabels = new ArrayList<String>();
+        public int maxStack, maxLocals;
+
+        public int pc() { return code.size(); }
+
+        public void op(int opcode) {
+            code.write(opcode);
+        }
+
+        public void op1(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        public void op2(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+        }
+
+        // a local variable access, wide if needed
+        public void local(int opcode, int idx) {
+            if (idx > 255) {
+                code.write(0xc4); // wide
+                op2(opcode, idx);
+            } else {
+                op1(opcode, idx);
+            }
+        }
+
+        // push an int constant the shortest way
+        public void intConst(JVMClassFile cf, int v) {
+            if (v >= -1 && v <= 5) op(ICONST_0 + v);
+            else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) op1(BIPUSH, v);
+            else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) op2(SIPUSH, v);
+            else op2(LDC_W, cf.integer(v));
+        }
+
+        public void label(String name) {
+            labels.put(name, Integer.valueOf(pc()));
+        }
+
+        public void branch(int opcode, String label) {
+            fixups.add(new int[]{pc(), pc() + 1});
+            fixupLabels.add(label);
+            op2(opcode, 0);
+        }
+
+        public byte[] toByteArray() {
+            byte[] ret = code.toByteArray();
+            for (int i = 0; i < fixups.size(); i++) {
+                Integer target = labels.get(fixupLabels.get(i));
+                if (target == null)
+                    throw new Error("Undefined label " + fixupLabels.get(i));
+                int off = target.intValue() - fixups.get(i)[0];
+                if (off < Short.MIN_VALUE || off > Short.MAX_VALUE)
+                    throw new Error("Method too large for the JVM backend");
+                int at = fixups.get(i)[1];
+                ret[at] = (byte) (off >> 8);
+                ret[at + 1] = (byte) off;
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.purdue.cs352.minijava.backend;
+
+import edu.purdue.cs352.minijava.interpreter.BufferedOutputSink;
+import edu.purdue.cs352.minijava.interpreter.OutputSink;
+
+/* Runtime support for code compiled by AsmJVM. Output matches
+ * SSAInterpreter's, and goes through the same kind of sink. Compiled
+ * programs run on the thread that calls AsmJVM.run, so each thread has its
+ * own sink, and programs on different threads don't mix their output. */
+public class JVMRuntime {
+    private static final ThreadLocal<OutputSink> out = new ThreadLocal<OutputSink>();
+
+    private JVMRuntime() {}
+
+    // send this thread's output here (null for a buffered System.out)
+    public static void setOutput(OutputSink to) {
+        out.set(to);
+    }
+
+    private static OutputSink out() {
+        OutputSink sink = out.get();
+        if (sink == null) {
+            sink = new BufferedOutputSink(System.out);
+            out.set(sink);
+        }
+        return sink;
+    }
+
+    public static void flush() {
+        OutputSink sink = out.get();
+        if (sink != null) sink.flush();
+    }
+
+    public static void print(int v) {
+        out().println(v);
+    }
+
+    public static void print(boolean v) {
+        out().println(v);
+    }
+
+    public static void print(Object v) {
+        out().println(v);
+    }
+}
@@ -0,0 +1,505 @@
+package edu.purdue.cs352.minijava.backend;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Every set here is a LinkedHashSet, so it iterates in the order things were
+ * added, which follows the order of the block. Which temporaries are
+ * simplified, spilled and colored first then depends only on the program,
+ * not on identity hashes, so the same program always gets the same
+ * registers. */
+public class RegisterAllocator {
+    /* a "variable" is just a set of SSA statements. We alias it (sort of) to
+     * make this explicit. A Variable is thus equivalently a definition of
+     * def(v). */
+    static class Variable {
+        public final SSAStatement master; // just for debugging
+        public final Set<SSAStatement> v;
+        public Variable(SSAStatement s) {
+            master = s;
+            v = new LinkedHashSet<SSAStatement>();
+            v.add(s);
+        }
+    }
+
+    // a node in the control flow graph
+    class CFNode {
+        public SSAStatement stmt;
+        public Variable def;
+        public Set<Variable> use = new LinkedHashSet<Variable>();
+        public Set<Variable> inN = new LinkedHashSet<Variable>();
+        public Set<Variable> outN = new LinkedHashSet<Variable>();
+        public Set<CFNode> pred = new LinkedHashSet<CFNode>();
+        public Set<CFNode> succ = new LinkedHashSet<CFNode>();
+
+        public CFNode(SSAStatement stmt) {
+            this.stmt = stmt;
+            def = variableBinding.get(stmt);
+        }
+    }
+
+    // a node in the interference graph (a temporary)
+    class TempNode {
+        public final Variable var;
+        public final Set<TempNode> interf = new LinkedHashSet<TempNode>();
+        public int reg = -1;
+        public boolean pinned, inGraph, possibleSpill;
+
+        public TempNode(Variable var) {
+            this.var = var;
+
+            // a variable with a pinned statement must be in that register
+            for (SSAStatement s : var.v) {
+                if (s.registerPinned()) {
+                    reg = s.getRegister();
+                    pinned = true;
+                    break;
+                }
+            }
+        }
+
+        // the number of neighbors still in the graph
+        public int arity() {
+            int ret = 0;
+            for (TempNode n : interf) {
+                if (n.inGraph) ret++;
+            }
+            return ret;
+        }
+    }
+
+    // the block we're performing allocation over
+    List<SSAStatement> block;
+
+    // the number of spills performed, for the special field of Store and Load
+    int spill = 0;
+
+    // variables, and the variable each statement belongs to (def(v))
+    Set<Variable> variables;
+    Map<SSAStatement, Variable> variableBinding;
+
+    // CFG nodes, the node for each statement, and the node for each label
+    List<CFNode> cfNodes;
+    Map<SSAStatement, CFNode> cfNodeBinding;
+    Map<String, CFNode> cfNodeLabels;
+
+    // use(v)
+    Map<Variable, Set<CFNode>> variableUses;
+
+    // interference graph nodes, and the node for each variable
+    Set<TempNode> tempNodes;
+    Map<Variable, TempNode> tempNodeBinding;
+
+    private RegisterAllocator() {}
+
+    // perform all register allocations for this program
+    public static void alloc(SSAProgram prog, int freeRegisters) {
+        // first main
+        SSAMethod main = prog.getMain();
+        main.setBody(alloc(main.getBody(), freeRegisters));
+
+        // then each class
+        for (SSAClass cl : prog.getClassesOrdered())
+            alloc(cl, freeRegisters);
+
+        // and number the spill code with the rest
+        prog.renumber();
+    }
+
+    // perform all register allocations for this class
+    public static void alloc(SSAClass cl, int freeRegisters) {
+        for (SSAMethod m : cl.getMethodsOrdered())
+            alloc(m, freeRegisters);
+    }
+
+    // perform register allocation for this method
+    public static void alloc(SSAMethod m, int freeRegisters) {
+        List<SSAStatement> body = m.getBody();
+        int first = body.isEmpty() ? 0 : body.get(0).getIndex();
+        m.setBody(alloc(body, freeRegisters));
+
+        /* the Loads and Stores of spills come from the global counter, so
+         * number them with the rest of the method. If it spilled, its last
+         * indices are then also the next method's first ones. */
+        m.renumber(first);
+    }
+
+    // the register allocator itself
+    public static List<SSAStatement> alloc(List<SSAStatement> block, int freeRegisters) {
+        Set<TempNode> actualSpills;
+
+        RegisterAllocator ra = new RegisterAllocator();
+        ra.block = block;
+
+        while (true) {
+            // prefill the variables with single statements
+            ra.initVariables();
+
+            // unify
+            ra.unifyVariables();
+
+            // now build the CF nodes
+            ra.initCFNodes();
+
+            // build the use[n] relationship from them
+            ra.addUses();
+
+            // build their successor/predecessor relationships
+            ra.cfPredSucc();
+
+            // liveness analysis
+            ra.liveness();
+
+            // build the temporaries
+            ra.initTempNodes();
+
+            // and figure out their interference
+            ra.buildInterference();
+
+            ra.simplify(freeRegisters);
+
+            // do we need to spill?
+            actualSpills = ra.select(freeRegisters);
+            if (actualSpills.size() == 0) break;
+
+            // OK, rewrite to perform the spills
+            ra.performSpills(actualSpills);
+        }
+
+        // now, using the information from the interference graph, assign the register for each SSA statement
+        for (TempNode t : ra.tempNodes) {
+            if (t.reg < 0) continue;
+            for (SSAStatement s : t.var.v)
+                s.setRegister(t.reg);
+        }
+
+        return ra.block;
+    }
+
+    private void initVariables() {
+        variables = new LinkedHashSet<Variable>();
+        variableBinding = new HashMap<SSAStatement, Variable>();
+        variableUses = new HashMap<Variable, Set<CFNode>>();
+
+        for (SSAStatement s : block) {
+            Variable v = new Variable(s);
+            variables.add(v);
+            variableBinding.put(s, v);
+            variableUses.put(v, new LinkedHashSet<CFNode>());
+        }
+    }
+
+    private void unifyVariables() {
+        for (SSAStatement s : block) {
+            switch (s.getOp()) {
+                case Unify:
+                case Alias:
+                    unify(s);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    // merge the variables of a Unify or Alias's operands into its own
+    private void unify(SSAStatement s) {
+        SSAStatement left = s.getLeft();
+        SSAStatement right = s.getRight();
+        Variable v = variableBinding.get(s);
+        unifyPrime(v, left);
+        if (right != null)
+            unifyPrime(v, right);
+    }
+
+    private void unifyPrime(Variable v, SSAStatement s) {
+        Variable other = variableBinding.get(s);
+        if (other == v) return;
+
+        for (SSAStatement os : other.v) {
+            v.v.add(os);
+            variableBinding.put(os, v);
+        }
+        variables.remove(other);
+    }
+
+    private void initCFNodes() {
+        cfNodes = new ArrayList<CFNode>();
+        cfNodeBinding = new HashMap<SSAStatement, CFNode>();
+        cfNodeLabels = new HashMap<String, CFNode>();
+
+        for (SSAStatement s : block) {
+            CFNode n = new CFNode(s);
+            cfNodes.add(n);
+            cfNodeBinding.put(s, n);
+            if (s.getOp() == SSAStatement.Op.Label)
+                cfNodeLabels.put((String) s.getSpecial(), n);
+        }
+    }
+
+    private void addUses() {
+        for (CFNode n : cfNodes) {
+            SSAStatement s = n.stmt;
+            SSAStatement left = s.getLeft();
+            SSAStatement right = s.getRight();
+
+            if (left != null)
+                addUsesPrime(n, left);
+            if (right != null)
+                addUsesPrime(n, right);
+
+            // calls also use their arguments
+            if (s.getOp() == SSAStatement.Op.Call) {
+                for (SSAStatement arg : ((SSACall) s.getSpecial()).getArgs())
+                    addUsesPrime(n, arg);
+            }
+
+            // and IndexAssg its index
+            if (s.getOp() == SSAStatement.Op.IndexAssg)
+                addUsesPrime(n, (SSAStatement) s.getSpecial());
+        }
+    }
+
+    private void addUsesPrime(CFNode n, SSAStatement s) {
+        Variable v = variableBinding.get(s);
+        n.use.add(v);
+        variableUses.get(v).add(n);
+    }
+
+    private void cfPredSucc() {
+        CFNode prev = null;
+
+        for (SSAStatement s : block) {
+            CFNode n = cfNodeBinding.get(s);
+
+            if (prev != null) {
+                switch (prev.stmt.getOp()) {
+                    case Goto:
+                        jumpEdge(prev);
+                        break;
+
+                    case Branch:
+                    case NBranch:
+                        jumpEdge(prev);
+                        edge(prev, n);
+                        break;
+
+                    case Return:
+                        break;
+
+                    default:
+                        edge(prev, n);
+                        break;
+                }
+            }
+
+            prev = n;
+        }
+
+        // the last statement can only go where it jumps
+        switch (prev.stmt.getOp()) {
+            case Goto:
+            case Branch:
+            case NBranch:
+                jumpEdge(prev);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void edge(CFNode from, CFNode to) {
+        from.succ.add(to);
+        to.pred.add(from);
+    }
+
+    // the edge from a jump to its label, if the label is in this block
+    private void jumpEdge(CFNode from) {
+        CFNode target = cfNodeLabels.get((String) from.stmt.getSpecial());
+        if (target != null)
+            edge(from, target);
+    }
+
+    private void liveness() {
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (CFNode n : cfNodes) {
+                // in[n] = use[n] U (out[n] - def[n])
+                Set<Variable> in = new LinkedHashSet<Variable>();
+                for (Variable v : n.outN)
+                    in.add(v);
+                in.remove(n.def);
+                for (Variable v : n.use)
+                    in.add(v);
+
+                // out[n] = U in[s] for s in succ[n], with def[n] so that it interferes
+                Set<Variable> out = new LinkedHashSet<Variable>();
+                out.add(n.def);
+                for (CFNode succ : n.succ) {
+                    for (Variable v : succ.inN)
+                        out.add(v);
+                }
+
+                if (!changed && (!in.equals(n.inN) || !out.equals(n.outN)))
+                    changed = true;
+
+                n.inN = in;
+                n.outN = out;
+            }
+        }
+    }
+
+    private void initTempNodes() {
+        tempNodes = new LinkedHashSet<TempNode>();
+        tempNodeBinding = new HashMap<Variable, TempNode>();
+
+        for (Variable v : variables) {
+            TempNode t = new TempNode(v);
+            tempNodes.add(t);
+            tempNodeBinding.put(v, t);
+        }
+    }
+
+    private void buildInterference() {
+        for (CFNode n : cfNodes) {
+            buildInterferencePrime(n.inN);
+            buildInterferencePrime(n.outN);
+        }
+    }
+
+    // everything live at once interferes
+    private void buildInterferencePrime(Set<Variable> live) {
+        for (Variable v : live) {
+            TempNode t = tempNodeBinding.get(v);
+            for (Variable o : live) {
+                if (v == o) continue;
+                t.interf.add(tempNodeBinding.get(o));
+            }
+        }
+    }
+
+    private void simplify(int freeRegisters) {
+        Set<TempNode> graph = new LinkedHashSet<TempNode>();
+        for (TempNode t : tempNodes) {
+            graph.add(t);
+            t.inGraph = true;
+        }
+
+        removal: while (graph.size() > 0) {
+            // pinned temporaries, and those with few enough neighbors, come out first
+            for (TempNode t : graph) {
+                if (t.pinned) {
+                    graph.remove(t);
+                    t.inGraph = false;
+                    continue removal;
+                }
+
+                int arity = t.arity();
+                if (arity < freeRegisters - 1) {
+                    graph.remove(t);
+                    t.inGraph = false;
+                    continue removal;
+                }
+            }
+
+            // otherwise one might have to be spilled
+            for (TempNode t : graph) {
+                t.possibleSpill = true;
+                graph.remove(t);
+                t.inGraph = false;
+                continue removal;
+            }
+        }
+    }
+
+    private Set<TempNode> select(int freeRegisters) {
+        boolean[] used = new boolean[freeRegisters + 1];
+
+        // color those that can't spill
+        for (TempNode t : tempNodes) {
+            if (t.pinned || t.possibleSpill) continue;
+
+            Arrays.fill(used, false);
+            for (TempNode n : t.interf) {
+                if (n.reg >= 0) used[n.reg] = true;
+            }
+            t.reg = 0;
+            while (used[t.reg]) t.reg++;
+
+            if (t.reg >= freeRegisters)
+                throw new Error("Spilled a non-spill register???\n" + t.var.master);
+        }
+
+        // then those that can, spilling those that don't fit
+        Set<TempNode> actualSpills = new LinkedHashSet<TempNode>();
+        for (TempNode t : tempNodes) {
+            if (!t.possibleSpill) continue;
+
+            Arrays.fill(used, false);
+            for (TempNode n : t.interf) {
+                if (n.reg >= 0) used[n.reg] = true;
+            }
+            t.reg = 0;
+            while (used[t.reg]) t.reg++;
+
+            if (t.reg >= freeRegisters) {
+                t.reg = -1;
+                actualSpills.add(t);
+            }
+        }
+
+        return actualSpills;
+    }
+
+    private void performSpills(Set<TempNode> actualSpills) {
+        for (TempNode t : actualSpills) {
+            Variable v = t.var;
+            List<SSAStatement> newBlock = new ArrayList<SSAStatement>();
+
+            for (SSAStatement s : block) {
+                // load it before each use
+                if (statementUses(s, v)) {
+                    SSAStatement load = new SSAStatement(null, SSAStatement.Op.Load, spill);
+                    // it has the variable's type, which a call on it is compiled by
+                    load.setType(v.master.getType());
+                    newBlock.add(load);
+                    statementReplace(s, v, load);
+                }
+
+                newBlock.add(s);
+
+                // and store it after each definition
+                if (v.v.contains(s) && s.getOp() != SSAStatement.Op.Unify && s.getOp() != SSAStatement.Op.Alias) {
+                    SSAStatement store = new SSAStatement(null, SSAStatement.Op.Store, s, null, spill);
+                    newBlock.add(store);
+                }
+            }
+
+            block = newBlock;
+            spill++;
+        }
+    }
+
+    private boolean statementUses(SSAStatement s, Variable v) {
+        SSAStatement left = s.getLeft();
+        SSAStatement right = s.getRight();
+        if (left != null && v.v.contains(left)) return true;
+        if (right != null && v.v.contains(right)) return true;
+        return false;
+    }
+
+    private void statementReplace(SSAStatement s, Variable v, SSAStatement with) {
+        SSAStatement left = s.getLeft();
+        SSAStatement right = s.getRight();
+        if (left != null && v.v.contains(left))
+            s.setLeft(with);
+        if (right != null && v.v.contains(right))
+            s.setRight(with);
+    }
+}
@@ -7,45 +7,90 @@ import edu.purdue.cs352.minijava.parser.*;
 
 public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
     Program prog;
-    Stack<StackFrame> stack;
+    Deque<StackFrame> stack;
 
+    // class descriptors, by name
+    Map<String, ClassInfo> classes;
+
+    // where PrintStatement goes
+    OutputSink out;
+
+    // run on self-specializing Nodes instead of visiting the AST
+    boolean specializing;
+
+    // every allocation is charged here, and limited by it
+    HeapAccount heap;
+
+    /* Variables are resolved to slots before the program runs (see
+     * resolve), so a frame is just an array. */
     private static class StackFrame {
-        public IntObject thiz;
-        public Map<String, Object> vars;
+        public final IntObject thiz;
+        public final Object[] locals;
 
-        public StackFrame(IntObject thiz) {
+        public StackFrame(IntObject thiz, Object[] locals) {
             this.thiz = thiz;
-            this.vars = new HashMap<String, Object>();
+            this.locals = locals;
         }
     }
 
-    private static class IntObject {
-        public Map<String, Object> fields;
-        final public Map<String, MethodDecl> methods;
-
-        public IntObject(Program prog, ClassDecl cl) {
-            fields = new HashMap<String, Object>();
-            methods = new HashMap<String, MethodDecl>();
-            addMembers(prog, cl);
-        }
-
-        private void addMembers(Program prog, ClassDecl cl) {
-            String eggstends = cl.getExtends();
-            if (eggstends != null) {
-                // get the super-members first
-                for (ClassDecl scl : prog.getClasses()) {
-                    if (scl.getName().equals(eggstends)) {
-                        addMembers(prog, scl);
-                        break;
-                    }
-                }
+    /* A method, and a template for its frame: parameters first, then the
+     * locals with their initial values */
+    private static class MethodInfo {
+        public final MethodDecl decl;
+        public Object[] frame;
+
+        // the method's tree, in the self-specializing engine
+        Node root;
+
+        public MethodInfo(MethodDecl decl) {
+            this.decl = decl;
+        }
+    }
+
+    /* Everything the interpreter needs to know about a class, built once and
+     * shared by all of its instances. Superclass fields come first, so a
+     * field has the same index in a class and in all of its subclasses. */
+    private static class ClassInfo {
+        public final ClassDecl cl;
+        public final int fieldCount;
+        public final Map<String, Integer> fieldIndex;
+        public final Map<String, MethodInfo> methods;
+
+        public ClassInfo(ClassInfo sup, ClassDecl cl) {
+            this.cl = cl;
+            if (sup != null) {
+                fieldIndex = new HashMap<String, Integer>(sup.fieldIndex);
+                methods = new HashMap<String, MethodInfo>(sup.methods);
+            } else {
+                fieldIndex = new HashMap<String, Integer>();
+                methods = new HashMap<String, MethodInfo>();
             }
 
             // now add the local members
-            for (VarDecl f : cl.getFields())
-                fields.put(f.getName(), null);
+            int count = (sup != null) ? sup.fieldCount : 0;
+            for (VarDecl f : cl.getFields()) {
+                if (!fieldIndex.containsKey(f.getName()))
+                    fieldIndex.put(f.getName(), Integer.valueOf(count++));
+            }
+            fieldCount = count;
             for (MethodDecl m : cl.getMethods())
-                methods.put(m.getName(), m);
+                methods.put(m.getName(), new MethodInfo(m));
+        }
+
+        public int fieldIndex(String name) {
+            Integer idx = fieldIndex.get(name);
+            if (idx == null) throw new Error("Unknown field " + name);
+            return idx.intValue();
+        }
+    }
+
+    private static class IntObject {
+        final public ClassInfo cls;
+        final public Object[] fields;
+
+        public IntObject(ClassInfo cls) {
+            this.cls = cls;
+            fields = new Object[cls.fieldCount];
         }
     }
 
@@ -55,15 +100,32 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
         Program prog;
         ASTInterpreter interp;
 
-        if (args.length != 1) {
-            System.out.println("Use: mjinterp-ast <input file>");
+        boolean nodes = false;
+        boolean allocStats = false;
+        String file = null;
+
+        for (String arg : args) {
+            if (arg.equals("-nodes")) {
+                nodes = true;
+            } else if (arg.equals("-alloc")) {
+                allocStats = true;
+            } else if (file == null && !arg.startsWith("-")) {
+                file = arg;
+            } else {
+                file = null;
+                break;
+            }
+        }
+
+        if (file == null) {
+            System.out.println("Use: mjinterp-ast [-nodes] [-alloc] <input file>");
             return;
         }
 
         try {
-            parser = new ParserAST(new java.io.FileInputStream(args[0]));
+            parser = new ParserAST(new java.io.FileInputStream(file));
         } catch (java.io.FileNotFoundException ex) {
-            System.out.println("File " + args[0] + " not found.");
+            System.out.println("File " + file + " not found.");
             return;
         }
 
@@ -75,13 +137,54 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
         }
 
         interp = new ASTInterpreter(prog);
-        prog.accept(interp);
+        interp.setSpecializing(nodes);
+        if (allocStats)
+            interp.setHeapAccount(new HeapAccount(0, 0, true));
+        try {
+            prog.accept(interp);
+        } finally {
+            if (allocStats)
+                System.err.println(interp.getHeapAccount());
+        }
     }
 
 
     public ASTInterpreter(Program prog) {
         this.prog = prog;
-        stack = new Stack<StackFrame>();
+        stack = new ArrayDeque<StackFrame>();
+        classes = new HashMap<String, ClassInfo>();
+        out = new BufferedOutputSink(System.out);
+        heap = new HeapAccount();
+    }
+
+    // send the program's output here (flushed when the program ends or fails)
+    public void setOutput(OutputSink out) {
+        this.out = out;
+    }
+
+    public void setSpecializing(boolean specializing) {
+        this.specializing = specializing;
+    }
+
+    // charge allocations to this account, with whatever limits it has
+    public void setHeapAccount(HeapAccount heap) {
+        this.heap = heap;
+    }
+
+    public HeapAccount getHeapAccount() {
+        return heap;
+    }
+
+    private IntObject newObject(ClassInfo cls) {
+        long size = HeapAccount.objectBytes(cls.fieldCount);
+        heap.charge(size);
+        return heap.track(new IntObject(cls), size);
+    }
+
+    private int[] newIntArray(int length) {
+        long size = HeapAccount.arrayBytes(length);
+        if (length >= 0) heap.charge(size);
+        return heap.track(new int[length], size);
     }
 
     // helper function to get classes
@@ -91,35 +194,109 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
         throw new Error("Unknown class " + name);
     }
 
+    // get the descriptor for this class, building it (and its superclasses') if needed
+    private ClassInfo classInfo(String name) {
+        ClassInfo ci = classes.get(name);
+        if (ci == null) {
+            ClassDecl cl = classByName(name);
+            ClassInfo sup = null;
+            if (cl.getExtends() != null) {
+                // a placeholder, to fail instead of looping on cyclic inheritance
+                classes.put(name, null);
+                if (classes.containsKey(cl.getExtends()) && classes.get(cl.getExtends()) == null)
+                    throw new Error("Cyclic inheritance involving " + name);
+                sup = classInfo(cl.getExtends());
+            }
+            ci = new ClassInfo(sup, cl);
+            classes.put(name, ci);
+        }
+        return ci;
+    }
+
+    /* Bind every variable reference to a local slot or a field offset, so
+     * nothing is looked up by name while the program runs. Methods are
+     * resolved against the class that declares them; subclasses keep their
+     * superclass's field offsets, so that holds for inherited methods too. */
+    private void resolve(Program prog) {
+        resolve(prog.getMain(), new HashMap<String, Integer>(), null);
+        for (ClassDecl cl : prog.getClasses()) {
+            ClassInfo ci = classInfo(cl.getName());
+            for (MethodDecl m : cl.getMethods()) {
+                Map<String, Integer> locals = new HashMap<String, Integer>();
+                int slots = 0;
+                for (Parameter p : m.getParameters())
+                    locals.put(p.getName(), Integer.valueOf(slots++));
+
+                // a local with a parameter's name gets a slot of its own, hiding it
+                List<Object> initial = new ArrayList<Object>(Collections.nCopies(slots, null));
+                for (VarDecl v : m.getVarDecls()) {
+                    locals.put(v.getName(), Integer.valueOf(slots++));
+                    Type t = v.getType();
+                    Object val = null;
+                    if (t instanceof TypeInt) {
+                        val = Integer.valueOf(0);
+                    } else if (t instanceof TypeBoolean) {
+                        val = Boolean.FALSE;
+                    }
+                    initial.add(val);
+                }
+
+                ci.methods.get(m.getName()).frame = initial.toArray();
+                for (Statement s : m.getBody())
+                    resolve(s, locals, ci);
+                resolve(m.getRetExp(), locals, ci);
+            }
+        }
+    }
+
+    private void resolve(ASTNode node, Map<String, Integer> locals, ClassInfo ci) {
+        if (node instanceof VarExp) {
+            VarExp v = (VarExp) node;
+            Integer slot = locals.get(v.getName());
+            if (slot != null) {
+                v.setSlot(slot.intValue());
+            } else if (ci != null && ci.fieldIndex.containsKey(v.getName())) {
+                v.setSlot(~ci.fieldIndex(v.getName()));
+            }
+            return;
+        }
+
+        for (ASTNode child : node.children())
+            resolve(child, locals, ci);
+    }
+
     @Override public Object defaultVisit(ASTNode node) {
         throw new Error("Implement AST interpreter for " + node.getClass().getSimpleName());
     }
 
     // the program itself just runs main
     @Override public Object visit(Program prog) {
-        stack.push(new StackFrame(null));
-        Object ret = prog.getMain().accept(this);
-        stack.pop();
-        return ret;
+        resolve(prog);
+        if (specializing) {
+            try {
+                Node main = new MethodNode(new Node[]{build(prog.getMain().getBody()), new ConstNode(null)});
+                return main.exec(new StackFrame(null, new Object[0]));
+            } finally {
+                out.flush();
+            }
+        }
+
+        stack.push(new StackFrame(null, new Object[0]));
+        try {
+            Object ret = prog.getMain().accept(this);
+            stack.pop();
+            return ret;
+        } finally {
+            out.flush();
+        }
     }
 
     @Override public Object visit(Main main) {
         return main.getBody().accept(this);
     }
 
+    // the frame (with locals initialized) is set up by the caller
     @Override public Object visit(MethodDecl method) {
-        StackFrame frame = stack.peek();
-        for (VarDecl v : method.getVarDecls()) {
-            Type t = v.getType();
-            Object val = null;
-            if (t instanceof TypeInt) {
-                val = Integer.valueOf(0);
-            } else if (t instanceof TypeBoolean) {
-                val = Boolean.FALSE;
-            }
-            frame.vars.put(v.getName(), val);
-        }
-
         for (Statement s : method.getBody()) s.accept(this);
 
         return method.getRetExp().accept(this);
@@ -150,7 +327,7 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
 
     @Override public Object visit(PrintStatement stmt) {
         Object ret = stmt.getValue().accept(this);
-        System.out.println(ret);
+        out.println(ret);
         return ret;
     }
 
@@ -173,13 +350,16 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
 
         if (lhs instanceof VarExp) {
             // easiest case
-            String name = ((VarExp) lhs).getName();
+            VarExp v = (VarExp) lhs;
             StackFrame frame = stack.peek();
             ret = rhs.accept(this);
-            if (frame.vars.containsKey(name)) {
-                frame.vars.put(name, ret);
+            int slot = v.getSlot();
+            if (slot >= 0) {
+                frame.locals[slot] = ret;
+            } else if (slot != VarExp.UNRESOLVED) {
+                frame.thiz.fields[~slot] = ret;
             } else {
-                frame.thiz.fields.put(name, ret);
+                throw new Error("Unknown variable " + v.getName());
             }
 
         } else if (lhs instanceof IndexExp) {
@@ -252,24 +432,18 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
             argvs.add(arg.accept(this));
         }
 
-        MethodDecl method = obj.methods.get(mname);
+        MethodInfo method = obj.cls.methods.get(mname);
 
         // map all the arguments
-        List<Parameter> parms = method.getParameters();
-        if (argvs.size() != parms.size())
+        if (argvs.size() != method.decl.getParameters().size())
             throw new Error("Number of arguments does not match number of parameters!");
-        StackFrame frame = new StackFrame(obj);
-        Iterator<Object> argI = argvs.iterator();
-        Iterator<Parameter> parmI = parms.iterator();
-        while (argI.hasNext()) {
-            Object arg = argI.next();
-            Parameter parm = parmI.next();
-            frame.vars.put(parm.getName(), arg);
-        }
+        StackFrame frame = new StackFrame(obj, method.frame.clone());
+        for (int i = 0; i < argvs.size(); i++)
+            frame.locals[i] = argvs.get(i);
 
         // run the function
         stack.push(frame);
-        Object ret = method.accept(this);
+        Object ret = method.decl.accept(this);
         stack.pop();
 
         return ret;
@@ -289,7 +463,8 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
         Object obj = exp.getSub().accept(this);
         String mem = exp.getMember();
         if (obj instanceof IntObject) {
-            return ((IntObject) obj).fields.get(mem);
+            IntObject iobj = (IntObject) obj;
+            return iobj.fields[iobj.cls.fieldIndex(mem)];
         } else if (mem.equals("length")) {
             return ((int[]) obj).length;
         } else {
@@ -298,13 +473,12 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
     }
 
     @Override public Object visit(NewObjectExp exp) {
-        ClassDecl cl = classByName(exp.getName());
-        return new IntObject(prog, cl);
+        return newObject(classInfo(exp.getName()));
     }
 
     @Override public Object visit(NewIntArrayExp exp) {
         int sz = ((Integer) exp.getSize().accept(this)).intValue();
-        return new int[sz];
+        return newIntArray(sz);
     }
 
     @Override public Object visit(NotExp exp) {
@@ -321,11 +495,569 @@ public class ASTInterpreter extends ASTVisitor.SimpleASTVisitor {
 
     @Override public Object visit(VarExp exp) {
         StackFrame frame = stack.peek();
-        String name = exp.getName();
-        if (frame.vars.containsKey(name)) {
-            return frame.vars.get(name);
+        int slot = exp.getSlot();
+        if (slot >= 0) {
+            return frame.locals[slot];
+        } else if (slot != VarExp.UNRESOLVED) {
+            return frame.thiz.fields[~slot];
         } else {
-            return frame.thiz.fields.get(name);
+            throw new Error("Unknown variable " + exp.getName());
+        }
+    }
+
+
+    /* The self-specializing engine (-nodes). Each method is translated, on
+     * its first call, into a tree of Nodes. Nodes that depend on something
+     * only known at run time (operand types, the receiver's class, which
+     * class "new" names) start out uninitialized, and on their first
+     * execution replace themselves in the tree with a node specialized for
+     * what they saw, e.g. IntAddNode or a NewObjectNode holding its
+     * ClassInfo. A specialized node checks its assumption, and rewrites
+     * itself to a generic node if it ever fails, so the tree stays correct
+     * but settles into doing no name lookups or string comparisons. */
+    private abstract static class Node {
+        Node parent;
+        final Node[] kids;
+
+        Node(Node... kids) {
+            this.kids = kids;
+            for (Node k : kids) k.parent = this;
+        }
+
+        abstract Object exec(StackFrame f);
+
+        /* put n in this node's place in the tree. A recursive call may have
+         * already replaced this node while it was running; then n is just
+         * used this once. (Replacements share their kids array, so the kids
+         * can still find their place.) */
+        <T extends Node> T replace(T n) {
+            Node[] sibs = parent.kids;
+            n.parent = parent;
+            for (int i = 0; i < sibs.length; i++) {
+                if (sibs[i] == this) {
+                    sibs[i] = n;
+                    break;
+                }
+            }
+            return n;
+        }
+    }
+
+    // the root of a method's tree: its statements, then its return expression
+    private static class MethodNode extends Node {
+        MethodNode(Node[] kids) { super(kids); }
+        Object exec(StackFrame f) {
+            Node[] k = kids;
+            int last = k.length - 1;
+            for (int i = 0; i < last; i++) k[i].exec(f);
+            return k[last].exec(f);
+        }
+    }
+
+    // something the engine can't run; fails only if it's reached, like the visitor
+    private static class FailNode extends Node {
+        final String message;
+        FailNode(String message) { this.message = message; }
+        Object exec(StackFrame f) { throw new Error(message); }
+    }
+
+    // Statements:
+    private static class BlockNode extends Node {
+        BlockNode(Node[] kids) { super(kids); }
+        Object exec(StackFrame f) {
+            for (Node k : kids) k.exec(f);
+            return null;
+        }
+    }
+
+    private static class IfNode extends Node {
+        IfNode(Node cond, Node ifPart) { super(cond, ifPart); }
+        IfNode(Node cond, Node ifPart, Node elsePart) { super(cond, ifPart, elsePart); }
+        Object exec(StackFrame f) {
+            if (kids[0].exec(f) == Boolean.TRUE) {
+                kids[1].exec(f);
+            } else if (kids.length > 2) {
+                kids[2].exec(f);
+            }
+            return null;
+        }
+    }
+
+    private static class WhileNode extends Node {
+        WhileNode(Node cond, Node body) { super(cond, body); }
+        Object exec(StackFrame f) {
+            while (kids[0].exec(f) == Boolean.TRUE)
+                kids[1].exec(f);
+            return null;
+        }
+    }
+
+    private class PrintNode extends Node {
+        PrintNode(Node value) { super(value); }
+        Object exec(StackFrame f) {
+            Object v = kids[0].exec(f);
+            if (v instanceof Integer)
+                out.println(((Integer) v).intValue());
+            else
+                out.println(v);
+            return null;
+        }
+    }
+
+    // Variables (already resolved to slots):
+    private static class LocalNode extends Node {
+        final int slot;
+        LocalNode(int slot) { this.slot = slot; }
+        Object exec(StackFrame f) { return f.locals[slot]; }
+    }
+
+    private static class FieldNode extends Node {
+        final int offset;
+        FieldNode(int offset) { this.offset = offset; }
+        Object exec(StackFrame f) { return f.thiz.fields[offset]; }
+    }
+
+    private static class LocalAssignNode extends Node {
+        final int slot;
+        LocalAssignNode(int slot, Node value) { super(value); this.slot = slot; }
+        Object exec(StackFrame f) { return f.locals[slot] = kids[0].exec(f); }
+    }
+
+    private static class FieldAssignNode extends Node {
+        final int offset;
+        FieldAssignNode(int offset, Node value) { super(value); this.offset = offset; }
+        Object exec(StackFrame f) { return f.thiz.fields[offset] = kids[0].exec(f); }
+    }
+
+    private static class IndexAssignNode extends Node {
+        IndexAssignNode(Node target, Node index, Node value) { super(target, index, value); }
+        Object exec(StackFrame f) {
+            int[] target = (int[]) kids[0].exec(f);
+            int idx = ((Integer) kids[1].exec(f)).intValue();
+            Object ret = kids[2].exec(f);
+            target[idx] = ((Integer) ret).intValue();
+            return ret;
         }
     }
+
+    // Simple expressions:
+    private static class ConstNode extends Node {
+        final Object value;
+        ConstNode(Object value) { this.value = value; }
+        Object exec(StackFrame f) { return value; }
+    }
+
+    private static class ThisNode extends Node {
+        Object exec(StackFrame f) { return f.thiz; }
+    }
+
+    private static class NotNode extends Node {
+        NotNode(Node sub) { super(sub); }
+        Object exec(StackFrame f) {
+            return (kids[0].exec(f) == Boolean.FALSE) ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    private static class IndexNode extends Node {
+        IndexNode(Node target, Node index) { super(target, index); }
+        Object exec(StackFrame f) {
+            int[] arr = (int[]) kids[0].exec(f);
+            int idx = ((Integer) kids[1].exec(f)).intValue();
+            return Integer.valueOf(arr[idx]);
+        }
+    }
+
+    private class NewIntArrayNode extends Node {
+        NewIntArrayNode(Node size) { super(size); }
+        Object exec(StackFrame f) {
+            return newIntArray(((Integer) kids[0].exec(f)).intValue());
+        }
+    }
+
+    // Binary operators:
+    private abstract static class BinaryNode extends Node {
+        final String op;
+        BinaryNode(String op, Node[] kids) { super(kids); this.op = op; }
+
+        Object exec(StackFrame f) {
+            Object lo = kids[0].exec(f);
+            Object ro = kids[1].exec(f);
+            return compute(lo, ro);
+        }
+
+        abstract Object compute(Object lo, Object ro);
+    }
+
+    // specializes on the first operands it sees
+    private static class UninitializedBinaryNode extends BinaryNode {
+        UninitializedBinaryNode(String op, Node left, Node right) { super(op, new Node[]{left, right}); }
+        Object compute(Object lo, Object ro) {
+            BinaryNode n = null;
+            if (lo instanceof Integer && ro instanceof Integer) {
+                if (op.equals("<")) n = new IntLtNode(kids);
+                else if (op.equals("<=")) n = new IntLeNode(kids);
+                else if (op.equals("==")) n = new IntEqNode(kids);
+                else if (op.equals("!=")) n = new IntNeNode(kids);
+                else if (op.equals(">")) n = new IntGtNode(kids);
+                else if (op.equals(">=")) n = new IntGeNode(kids);
+                else if (op.equals("+")) n = new IntAddNode(kids);
+                else if (op.equals("-")) n = new IntSubNode(kids);
+                else if (op.equals("*")) n = new IntMulNode(kids);
+                else if (op.equals("/")) n = new IntDivNode(kids);
+                else if (op.equals("%")) n = new IntModNode(kids);
+            }
+            if (n == null) n = new GenericBinaryNode(op, kids);
+            return replace(n).compute(lo, ro);
+        }
+    }
+
+    // anything else, computed the way the visitor does it
+    private static class GenericBinaryNode extends BinaryNode {
+        GenericBinaryNode(String op, Node[] kids) { super(op, kids); }
+        Object compute(Object lo, Object ro) {
+            if (!(lo instanceof Integer && ro instanceof Integer))
+                return null;
+            int l = ((Integer) lo).intValue(), r = ((Integer) ro).intValue();
+            if (op.equals("<")) return (l < r);
+            if (op.equals("<=")) return (l <= r);
+            if (op.equals("==")) return (l == r);
+            if (op.equals("!=")) return (l != r);
+            if (op.equals(">")) return (l > r);
+            if (op.equals(">=")) return (l >= r);
+            if (op.equals("+")) return (l + r);
+            if (op.equals("-")) return (l - r);
+            if (op.equals("*")) return (l * r);
+            if (op.equals("/")) return (l / r);
+            if (op.equals("%")) return (l % r);
+            throw new Error("Implement BinaryExp for " + op);
+        }
+    }
+
+    // an operator on two ints, falling back to generic if they ever aren't
+    private abstract static class IntBinaryNode extends BinaryNode {
+        IntBinaryNode(String op, Node[] kids) { super(op, kids); }
+        Object compute(Object lo, Object ro) {
+            if (lo instanceof Integer && ro instanceof Integer)
+                return compute(((Integer) lo).intValue(), ((Integer) ro).intValue());
+            return replace(new GenericBinaryNode(op, kids)).compute(lo, ro);
+        }
+        abstract Object compute(int l, int r);
+    }
+
+    private static class IntLtNode extends IntBinaryNode {
+        IntLtNode(Node[] kids) { super("<", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l < r); }
+    }
+
+    private static class IntLeNode extends IntBinaryNode {
+        IntLeNode(Node[] kids) { super("<=", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l <= r); }
+    }
+
+    private static class IntEqNode extends IntBinaryNode {
+        IntEqNode(Node[] kids) { super("==", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l == r); }
+    }
+
+    private static class IntNeNode extends IntBinaryNode {
+        IntNeNode(Node[] kids) { super("!=", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l != r); }
+    }
+
+    private static class IntGtNode extends IntBinaryNode {
+        IntGtNode(Node[] kids) { super(">", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l > r); }
+    }
+
+    private static class IntGeNode extends IntBinaryNode {
+        IntGeNode(Node[] kids) { super(">=", kids); }
+        Object compute(int l, int r) { return Boolean.valueOf(l >= r); }
+    }
+
+    private static class IntAddNode extends IntBinaryNode {
+        IntAddNode(Node[] kids) { super("+", kids); }
+        Object compute(int l, int r) { return Integer.valueOf(l + r); }
+    }
+
+    private static class IntSubNode extends IntBinaryNode {
+        IntSubNode(Node[] kids) { super("-", kids); }
+        Object compute(int l, int r) { return Integer.valueOf(l - r); }
+    }
+
+    private static class IntMulNode extends IntBinaryNode {
+        IntMulNode(Node[] kids) { super("*", kids); }
+        Object compute(int l, int r) { return Integer.valueOf(l * r); }
+    }
+
+    private static class IntDivNode extends IntBinaryNode {
+        IntDivNode(Node[] kids) { super("/", kids); }
+        Object compute(int l, int r) { return Integer.valueOf(l / r); }
+    }
+
+    private static class IntModNode extends IntBinaryNode {
+        IntModNode(Node[] kids) { super("%", kids); }
+        Object compute(int l, int r) { return Integer.valueOf(l % r); }
+    }
+
+    // Objects:
+    private class UninitializedNewObjectNode extends Node {
+        final String name;
+        UninitializedNewObjectNode(String name) { this.name = name; }
+        Object exec(StackFrame f) {
+            return replace(new NewObjectNode(classInfo(name))).exec(f);
+        }
+    }
+
+    private class NewObjectNode extends Node {
+        final ClassInfo cls;
+        NewObjectNode(ClassInfo cls) { this.cls = cls; }
+        Object exec(StackFrame f) { return newObject(cls); }
+    }
+
+    // a.b, specialized on whether a was an object (and of which class) or an array
+    private abstract static class MemberNode extends Node {
+        final String member;
+        MemberNode(String member, Node[] kids) { super(kids); this.member = member; }
+
+        Object exec(StackFrame f) {
+            return get(kids[0].exec(f));
+        }
+
+        abstract Object get(Object obj);
+
+        Object generic(Object obj) {
+            if (obj instanceof IntObject) {
+                IntObject iobj = (IntObject) obj;
+                return iobj.fields[iobj.cls.fieldIndex(member)];
+            } else if (member.equals("length")) {
+                return ((int[]) obj).length;
+            } else {
+                throw new Error("Invalid member access");
+            }
+        }
+    }
+
+    private static class UninitializedMemberNode extends MemberNode {
+        UninitializedMemberNode(String member, Node sub) { super(member, new Node[]{sub}); }
+        Object get(Object obj) {
+            MemberNode n;
+            if (obj instanceof IntObject) {
+                ClassInfo cls = ((IntObject) obj).cls;
+                n = new CachedFieldNode(member, kids, cls, cls.fieldIndex(member));
+            } else if (obj instanceof int[] && member.equals("length")) {
+                n = new ArrayLengthNode(member, kids);
+            } else {
+                n = new GenericMemberNode(member, kids);
+            }
+            return replace(n).get(obj);
+        }
+    }
+
+    private static class CachedFieldNode extends MemberNode {
+        final ClassInfo cls;
+        final int offset;
+        CachedFieldNode(String member, Node[] kids, ClassInfo cls, int offset) {
+            super(member, kids);
+            this.cls = cls;
+            this.offset = offset;
+        }
+        Object get(Object obj) {
+            if (obj instanceof IntObject && ((IntObject) obj).cls == cls)
+                return ((IntObject) obj).fields[offset];
+            return replace(new GenericMemberNode(member, kids)).get(obj);
+        }
+    }
+
+    private static class ArrayLengthNode extends MemberNode {
+        ArrayLengthNode(String member, Node[] kids) { super(member, kids); }
+        Object get(Object obj) {
+            if (obj instanceof int[])
+                return Integer.valueOf(((int[]) obj).length);
+            return replace(new GenericMemberNode(member, kids)).get(obj);
+        }
+    }
+
+    private static class GenericMemberNode extends MemberNode {
+        GenericMemberNode(String member, Node[] kids) { super(member, kids); }
+        Object get(Object obj) { return generic(obj); }
+    }
+
+    /* A call, specialized on the receiver's class: a monomorphic site keeps
+     * the method it found, and only looks it up again if the class changes */
+    private abstract class CallNode extends Node {
+        final String name;
+        CallNode(String name, Node[] kids) { super(kids); this.name = name; }
+
+        Object exec(StackFrame f) {
+            IntObject obj = (IntObject) kids[0].exec(f);
+            Object[] argv = new Object[kids.length - 1];
+            for (int i = 0; i < argv.length; i++)
+                argv[i] = kids[i + 1].exec(f);
+
+            MethodInfo method = lookup(obj);
+            StackFrame frame = new StackFrame(obj, method.frame.clone());
+            System.arraycopy(argv, 0, frame.locals, 0, argv.length);
+            return root(method).exec(frame);
+        }
+
+        abstract MethodInfo lookup(IntObject obj);
+
+        MethodInfo generic(IntObject obj) {
+            MethodInfo method = obj.cls.methods.get(name);
+            if (kids.length - 1 != method.decl.getParameters().size())
+                throw new Error("Number of arguments does not match number of parameters!");
+            return method;
+        }
+    }
+
+    private class UninitializedCallNode extends CallNode {
+        UninitializedCallNode(String name, Node[] kids) { super(name, kids); }
+        MethodInfo lookup(IntObject obj) {
+            MethodInfo method = generic(obj);
+            replace(new CachedCallNode(name, kids, obj.cls, method));
+            return method;
+        }
+    }
+
+    private class CachedCallNode extends CallNode {
+        final ClassInfo cls;
+        final MethodInfo method;
+        CachedCallNode(String name, Node[] kids, ClassInfo cls, MethodInfo method) {
+            super(name, kids);
+            this.cls = cls;
+            this.method = method;
+        }
+        MethodInfo lookup(IntObject obj) {
+            if (obj.cls == cls) return method;
+            return replace(new GenericCallNode(name, kids)).lookup(obj);
+        }
+    }
+
+    private class GenericCallNode extends CallNode {
+        GenericCallNode(String name, Node[] kids) { super(name, kids); }
+        MethodInfo lookup(IntObject obj) { return generic(obj); }
+    }
+
+    // the tree for a method, built on its first call
+    private Node root(MethodInfo method) {
+        if (method.root == null) {
+            MethodDecl m = method.decl;
+            List<Node> kids = new ArrayList<Node>();
+            for (Statement s : m.getBody())
+                kids.add(build(s));
+            kids.add(build(m.getRetExp()));
+            method.root = new MethodNode(kids.toArray(new Node[0]));
+        }
+        return method.root;
+    }
+
+    private Node build(ASTNode node) {
+        return (Node) node.accept(builder);
+    }
+
+    private Node[] build(List<? extends ASTNode> nodes) {
+        Node[] ret = new Node[nodes.size()];
+        for (int i = 0; i < ret.length; i++)
+            ret[i] = build(nodes.get(i));
+        return ret;
+    }
+
+    // translates the AST into uninitialized Nodes
+    private final ASTVisitor builder = new ASTVisitor.SimpleASTVisitor() {
+        @Override public Object defaultVisit(ASTNode node) {
+            return new FailNode("Implement AST interpreter for " + node.getClass().getSimpleName());
+        }
+
+        @Override public Object visit(BlockStatement stmt) {
+            return new BlockNode(build(stmt.getBody()));
+        }
+
+        @Override public Object visit(ExpStatement stmt) {
+            return build(stmt.getExp());
+        }
+
+        @Override public Object visit(IfStatement ifs) {
+            if (ifs.getElsePart() == null)
+                return new IfNode(build(ifs.getCondition()), build(ifs.getIfPart()));
+            return new IfNode(build(ifs.getCondition()), build(ifs.getIfPart()), build(ifs.getElsePart()));
+        }
+
+        @Override public Object visit(PrintStatement stmt) {
+            return new PrintNode(build(stmt.getValue()));
+        }
+
+        @Override public Object visit(WhileStatement ws) {
+            return new WhileNode(build(ws.getCondition()), build(ws.getBody()));
+        }
+
+        @Override public Object visit(AssignExp exp) {
+            Exp lhs = exp.getTarget();
+            if (lhs instanceof VarExp) {
+                VarExp v = (VarExp) lhs;
+                int slot = v.getSlot();
+                if (slot >= 0) return new LocalAssignNode(slot, build(exp.getValue()));
+                if (slot != VarExp.UNRESOLVED) return new FieldAssignNode(~slot, build(exp.getValue()));
+                return new FailNode("Unknown variable " + v.getName());
+
+            } else if (lhs instanceof IndexExp) {
+                IndexExp il = (IndexExp) lhs;
+                return new IndexAssignNode(build(il.getTarget()), build(il.getIndex()), build(exp.getValue()));
+
+            } else {
+                return new FailNode("Implement = for " + lhs.getClass().getSimpleName());
+            }
+        }
+
+        @Override public Object visit(BinaryExp exp) {
+            return new UninitializedBinaryNode(exp.getOp().toString(), build(exp.getLeft()), build(exp.getRight()));
+        }
+
+        @Override public Object visit(BooleanLiteralExp exp) {
+            return new ConstNode(Boolean.valueOf(exp.getValue()));
+        }
+
+        @Override public Object visit(CallExp exp) {
+            List<Exp> args = exp.getArguments();
+            Node[] kids = new Node[args.size() + 1];
+            kids[0] = build(exp.getTarget());
+            for (int i = 0; i < args.size(); i++)
+                kids[i + 1] = build(args.get(i));
+            return new UninitializedCallNode(exp.getMethod(), kids);
+        }
+
+        @Override public Object visit(IndexExp exp) {
+            return new IndexNode(build(exp.getTarget()), build(exp.getIndex()));
+        }
+
+        @Override public Object visit(IntLiteralExp exp) {
+            return new ConstNode(Integer.valueOf(exp.getValue()));
+        }
+
+        @Override public Object visit(MemberExp exp) {
+            return new UninitializedMemberNode(exp.getMember(), build(exp.getSub()));
+        }
+
+        @Override public Object visit(NewObjectExp exp) {
+            return new UninitializedNewObjectNode(exp.getName());
+        }
+
+        @Override public Object visit(NewIntArrayExp exp) {
+            return new NewIntArrayNode(build(exp.getSize()));
+        }
+
+        @Override public Object visit(NotExp exp) {
+            return new NotNode(build(exp.getSub()));
+        }
+
+        @Override public Object visit(ThisExp exp) {
+            return new ThisNode();
+        }
+
+        @Override public Object visit(VarExp exp) {
+            int slot = exp.getSlot();
+            if (slot >= 0) return new LocalNode(slot);
+            if (slot != VarExp.UNRESOLVED) return new FieldNode(~slot);
+            return new FailNode("Unknown variable " + exp.getName());
+        }
+    };
 }
@@ -0,0 +1,108 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+import java.io.*;
+
+/* An OutputSink that collects output in a large byte buffer and writes it
+ * in blocks. ints are formatted straight into the buffer, without making
+ * a String. */
+public class BufferedOutputSink implements OutputSink {
+    public static final int DEFAULT_SIZE = 64 * 1024;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    // enough for "-2147483648" and a newline
+    private static final int MAX_INT_LINE = 11 + NEWLINE.length;
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+
+    public BufferedOutputSink(OutputStream out) {
+        this(out, DEFAULT_SIZE);
+    }
+
+    public BufferedOutputSink(OutputStream out, int size) {
+        this.out = out;
+        this.buf = new byte[Math.max(size, MAX_INT_LINE)];
+    }
+
+    public void println(int value) {
+        if (pos + MAX_INT_LINE > buf.length)
+            flushBuffer();
+
+        // write the digits backwards from the end of the number
+        long v = value;
+        boolean negative = (v < 0);
+        if (negative) v = -v;
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10)
+            digits++;
+
+        if (negative) buf[pos++] = '-';
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        pos = end;
+        newline();
+    }
+
+    public void println(boolean value) {
+        write(value ? TRUE : FALSE);
+        newline();
+    }
+
+    public void println(Object value) {
+        if (value instanceof Integer) {
+            println(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            println(((Boolean) value).booleanValue());
+        } else {
+            write(String.valueOf(value).getBytes());
+            newline();
+        }
+    }
+
+    public void flush() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    private void newline() {
+        write(NEWLINE);
+    }
+
+    private void write(byte[] bytes) {
+        if (pos + bytes.length > buf.length) {
+            flushBuffer();
+            if (bytes.length > buf.length) {
+                writeOut(bytes, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void flushBuffer() {
+        if (pos > 0) {
+            writeOut(buf, pos);
+            pos = 0;
+        }
+    }
+
+    private void writeOut(byte[] bytes, int len) {
+        try {
+            out.write(bytes, 0, len);
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+}
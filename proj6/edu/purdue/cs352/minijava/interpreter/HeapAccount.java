@@ -0,0 +1,111 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+import java.lang.ref.*;
+
+/* Allocation accounting for one execution of an interpreted program. The
+ * interpreter charges every object and array to the account before
+ * allocating it, so a limit stops the program before the host has to find
+ * the memory. Limits are on the totals allocated, which don't depend on
+ * when the host collects garbage, so a program is stopped at the same
+ * point every run.
+ *
+ * Sizes are estimates of what the interpreters' representations take on a
+ * 64-bit JVM with compressed pointers.
+ *
+ * The live estimate is optional, since it costs a weak reference per
+ * allocation: each one is tracked until the host collects it, and the peak
+ * is the most bytes tracked at once. Garbage counts as live until it is
+ * collected, so this overestimates, but it is never below the true peak. */
+public class HeapAccount {
+    private final long objectLimit, byteLimit;
+
+    // totals allocated
+    private long objects, bytes;
+
+    // tracked allocations not yet collected, when estimating live bytes
+    private final boolean trackLive;
+    private long live, peakLive;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private final Tracked tracked = new Tracked(null, null, 0);
+
+    /* Allocations are tracked in a doubly-linked list headed by tracked, to
+     * keep the references themselves reachable until they're enqueued. */
+    private static class Tracked extends WeakReference<Object> {
+        final long bytes;
+        Tracked prev, next;
+
+        Tracked(Object referent, ReferenceQueue<Object> queue, long bytes) {
+            super(referent, queue);
+            this.bytes = bytes;
+            prev = next = this;
+        }
+    }
+
+    // limits of 0 mean no limit
+    public HeapAccount(long objectLimit, long byteLimit, boolean trackLive) {
+        this.objectLimit = objectLimit;
+        this.byteLimit = byteLimit;
+        this.trackLive = trackLive;
+    }
+
+    // no limits, just counting
+    public HeapAccount() {
+        this(0, 0, false);
+    }
+
+    public static long objectBytes(int fieldCount) {
+        return 40 + 4L * fieldCount;
+    }
+
+    public static long arrayBytes(int length) {
+        return 16 + 4L * length;
+    }
+
+    // charge for an allocation of this many bytes, before making it (a refused one isn't counted)
+    public void charge(long size) {
+        if (objectLimit > 0 && objects + 1 > objectLimit)
+            throw new LimitExceededError(LimitExceededError.Resource.OBJECTS, objectLimit);
+        if (byteLimit > 0 && bytes + size > byteLimit)
+            throw new LimitExceededError(LimitExceededError.Resource.HEAP, byteLimit);
+        objects++;
+        bytes += size;
+    }
+
+    // and once it's made, follow it if estimating live bytes
+    public <T> T track(T obj, long size) {
+        if (!trackLive)
+            return obj;
+
+        // first forget whatever has been collected since last time
+        Reference<? extends Object> ref;
+        while ((ref = collected.poll()) != null) {
+            Tracked t = (Tracked) ref;
+            t.prev.next = t.next;
+            t.next.prev = t.prev;
+            live -= t.bytes;
+        }
+
+        Tracked t = new Tracked(obj, collected, size);
+        t.next = tracked.next;
+        t.prev = tracked;
+        tracked.next.prev = t;
+        tracked.next = t;
+        live += size;
+        if (live > peakLive) peakLive = live;
+        return obj;
+    }
+
+    public long getObjects() { return objects; }
+    public long getBytes() { return bytes; }
+    public boolean tracksLive() { return trackLive; }
+
+    // the most bytes live at once, or -1 if not tracked
+    public long getPeakLiveBytes() {
+        return trackLive ? peakLive : -1;
+    }
+
+    @Override public String toString() {
+        return objects + " objects, " + bytes + " bytes allocated" +
+            (trackLive ? ", peak live estimate " + peakLive + " bytes" : "");
+    }
+}
@@ -0,0 +1,31 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+/* Thrown when a metered execution uses up one of its budgets. The program
+ * is abandoned where it stood; unlike the program's own errors, this is
+ * never the program's fault in a way the host has to worry about. */
+public class LimitExceededError extends Error {
+    private static final long serialVersionUID = 1L;
+
+    public enum Resource { INSTRUCTIONS, OBJECTS, HEAP }
+
+    private final Resource resource;
+    private final long limit;
+
+    public LimitExceededError(Resource resource, long limit) {
+        super(describe(resource) + " limit of " + limit + " exceeded");
+        this.resource = resource;
+        this.limit = limit;
+    }
+
+    public Resource getResource() { return resource; }
+    public long getLimit() { return limit; }
+
+    private static String describe(Resource resource) {
+        switch (resource) {
+            case INSTRUCTIONS: return "Instruction";
+            case OBJECTS: return "Object";
+            case HEAP: return "Heap byte";
+            default: return resource.toString();
+        }
+    }
+}
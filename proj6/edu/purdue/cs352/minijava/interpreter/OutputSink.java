@@ -0,0 +1,12 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+/* Where a running MiniJava program's printed values go. Each value is
+ * printed on its own line, like System.out.println. Output may be held
+ * back until flush, which whoever runs the program calls when it ends,
+ * normally or not. */
+public interface OutputSink {
+    public void println(int value);
+    public void println(boolean value);
+    public void println(Object value);
+    public void flush();
+}
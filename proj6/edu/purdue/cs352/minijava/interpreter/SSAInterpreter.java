@@ -5,383 +5,1631 @@ import java.util.*;
 import edu.purdue.cs352.minijava.ast.*;
 import edu.purdue.cs352.minijava.parser.*;
 import edu.purdue.cs352.minijava.ssa.*;
+import edu.purdue.cs352.minijava.types.*;
+import edu.purdue.cs352.minijava.backend.ClassLayout;
+import edu.purdue.cs352.minijava.opt.DeadCodeElimination;
+import edu.purdue.cs352.minijava.SSACache;
 import edu.purdue.cs352.minijava.SSACompiler;
+import edu.purdue.cs352.minijava.TypeChecker;
 
 public class SSAInterpreter {
     SSAProgram prog;
 
+    // decoded method bodies, so that repeated calls don't decode again
+    Map<SSAMethod, PreparedMethod> prepared;
+
+    // class descriptors, by name
+    Map<String, ClassInfo> classes;
+
+    /* Tiered execution: a method is interpreted until its invocations plus
+     * loop back edges reach compileThreshold, and from then on new calls to
+     * it run its closure-compiled form. 0 means never compile, and 1
+     * compiles every method before its first call (closure mode). */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+    public static final int CLOSURE_THRESHOLD = 1;
+    int compileThreshold;
+
+    // the threshold this run compiles at: compileThreshold, or 0 if it's metered
+    int runThreshold;
+
+    /* With a stack budget, calls push frames on an explicit FrameStack
+     * instead of recursing on the Java stack. 0 means recurse. */
+    public static final long DEFAULT_STACK_BUDGET = 64L << 20;
+    long stackBudget;
+    FrameStack frames;
+
+    // where -profile writes the profile, if not given a file
+    public static final String DEFAULT_PROFILE = "profile.json";
+
+    // the profile being collected, or null when not profiling
+    SSAProfile profile;
+
+    // where Print goes
+    OutputSink out;
+
+    /* Metered execution: a budget for statements run (0 for no limit), and
+     * how many have been. fuel counts down the statements left before the
+     * interpreter has to stop, either for good or, when stepping, until the
+     * next step; given is what it started at. */
+    long instructionBudget;
+    long instructions;
+    long fuel = Long.MAX_VALUE, given;
+    boolean stepping, started, finished;
+
+    // every allocation is charged here, and limited by it
+    HeapAccount heap;
+
+    // execute's result when it stopped at the end of a step
+    private static final int SUSPENDED = -2;
+
+    // how a register holds its value
+    private static final byte REF = 0, INT = 1, BOOLEAN = 2;
+
+    /* The registers of one method activation. Registers known (from the
+     * type checker) to hold an int or boolean keep it unboxed in prims;
+     * everything else is in refs. */
     private static class StackFrame {
-        public final IntObject thiz;
-        public final Object[] params;
+        public IntObject thiz;
+        public PreparedMethod pm;
+        public byte[] kind;
+        public Object[] refs;
+        public long[] prims;
+
+        // on the explicit stack, where a calling frame resumes and the register for the result
+        public int pc, dst;
 
-        public StackFrame(IntObject thiz, int pcount) {
+        public StackFrame(IntObject thiz, PreparedMethod pm) {
             this.thiz = thiz;
-            this.params = new Object[pcount];
+            this.pm = pm;
+            this.kind = pm.kind;
+            this.refs = new Object[pm.regCount];
+            this.prims = new long[pm.regCount];
+        }
+
+        // an empty frame, for a FrameStack to reset
+        public StackFrame() {
+            refs = new Object[0];
+            prims = new long[0];
+        }
+
+        // reuse this frame for a call to pm; refs were cleared by release()
+        public void reset(IntObject thiz, PreparedMethod pm) {
+            this.thiz = thiz;
+            this.pm = pm;
+            this.kind = pm.kind;
+            if (refs.length < pm.regCount) {
+                refs = new Object[pm.regCount];
+                prims = new long[pm.regCount];
+            } else {
+                Arrays.fill(prims, 0, pm.regCount, 0);
+            }
+        }
+
+        // drop this frame's references once it's popped
+        public void release() {
+            Arrays.fill(refs, 0, pm.regCount, null);
+            thiz = null;
+        }
+
+        public int getInt(int r) {
+            if (kind[r] == REF) return ((Integer) refs[r]).intValue();
+            return (int) prims[r];
+        }
+
+        public boolean getBoolean(int r) {
+            if (kind[r] == REF) return ((Boolean) refs[r]).booleanValue();
+            return prims[r] != 0;
+        }
+
+        public Object get(int r) {
+            switch (kind[r]) {
+                case INT: return Integer.valueOf((int) prims[r]);
+                case BOOLEAN: return Boolean.valueOf(prims[r] != 0);
+                default: return refs[r];
+            }
+        }
+
+        public void putInt(int r, int v) {
+            if (kind[r] == REF) refs[r] = Integer.valueOf(v);
+            else prims[r] = v;
+        }
+
+        public void putBoolean(int r, boolean v) {
+            if (kind[r] == REF) refs[r] = Boolean.valueOf(v);
+            else prims[r] = v ? 1 : 0;
+        }
+
+        public void put(int r, Object v) {
+            switch (kind[r]) {
+                case INT:
+                    prims[r] = (v == null) ? 0 : ((Integer) v).intValue();
+                    break;
+
+                case BOOLEAN:
+                    prims[r] = (v != null && ((Boolean) v).booleanValue()) ? 1 : 0;
+                    break;
+
+                default:
+                    refs[r] = v;
+            }
+        }
+
+        // copy register r of another frame (or this one) into register d
+        public void move(int d, StackFrame from, int r) {
+            byte k = kind[d];
+            if (k == from.kind[r]) {
+                if (k == REF) refs[d] = from.refs[r];
+                else prims[d] = from.prims[r];
+            } else {
+                put(d, from.get(r));
+            }
         }
     }
 
-    private static class IntObject {
-        public Map<String, Object> fields;
-        final public Map<String, SSAMethod> methods;
+    /* The explicit call stack: frames in one growable array, kept for reuse
+     * once popped. Each live frame is charged for its registers, and a call
+     * that would take the total past the budget is a stack overflow. */
+    private static final int FRAME_BYTES = 64;
 
-        public IntObject(SSAProgram prog, SSAClass cl) {
-            fields = new HashMap<String, Object>();
-            methods = new HashMap<String, SSAMethod>();
-            addMembers(prog, cl);
+    private static class FrameStack {
+        public StackFrame[] frames = new StackFrame[16];
+        public int depth;
+        public long bytes;
+        public final long budget;
+
+        public FrameStack(long budget) {
+            this.budget = budget;
         }
 
-        private void addMembers(SSAProgram prog, SSAClass cl) {
-            String eggstends = cl.getASTNode().getExtends();
-            if (eggstends != null) {
-                // get the super-members first
-                SSAClass scl = prog.getClass(eggstends);
-                if (scl != null)
-                    addMembers(prog, scl);
+        private static long frameBytes(PreparedMethod pm) {
+            // a reference and a long per register
+            return FRAME_BYTES + 12L * pm.regCount;
+        }
+
+        public StackFrame push(IntObject thiz, PreparedMethod pm) {
+            long size = frameBytes(pm);
+            if (bytes + size > budget)
+                throw new StackOverflowError("Call stack exceeds " + budget + " bytes");
+            if (depth == frames.length)
+                frames = Arrays.copyOf(frames, depth * 2);
+            StackFrame frame = frames[depth];
+            if (frame == null)
+                frame = frames[depth] = new StackFrame();
+            frame.reset(thiz, pm);
+            depth++;
+            bytes += size;
+            return frame;
+        }
+
+        public StackFrame pop() {
+            StackFrame frame = frames[--depth];
+            bytes -= frameBytes(frame.pm);
+            return frame;
+        }
+
+        public StackFrame top() {
+            return frames[depth - 1];
+        }
+    }
+
+    /* Everything the interpreter needs to know about a class, built once and
+     * shared by all of its instances. Fields are laid out as in ClassLayout
+     * (without the vtable word), so a field has the same index in a class
+     * and in all of its subclasses. */
+    private static class ClassInfo {
+        public final SSAClass cl;
+        public final int fieldCount;
+        public final Map<String, Integer> fieldIndex;
+        public final Map<String, SSAMethod> methods;
+
+        public ClassInfo(SSAProgram prog, SSAClass cl) {
+            this.cl = cl;
+
+            fieldIndex = new HashMap<String, Integer>();
+            int count = 0;
+            for (SSAClass c = cl; c != null; c = c.superclass(prog)) {
+                for (SSAField f : c.getFieldsOrdered()) {
+                    String name = f.getName();
+                    int idx = ClassLayout.fieldOffset(prog, cl, name) - 1;
+                    fieldIndex.put(name, Integer.valueOf(idx));
+                    if (idx >= count) count = idx + 1;
+                }
+            }
+            fieldCount = count;
+
+            methods = new HashMap<String, SSAMethod>();
+            for (String name : ClassLayout.getVtable(prog, cl).methods) {
+                if (!methods.containsKey(name))
+                    methods.put(name, ClassLayout.getImplementor(prog, cl, name).getMethod(name));
             }
+        }
 
-            // now add the local members
-            for (SSAField f : cl.getFieldsOrdered())
-                fields.put(f.getName(), null);
-            for (SSAMethod m : cl.getMethodsOrdered())
-                methods.put(m.getMethod().getName(), m);
+        public int fieldIndex(String name) {
+            Integer idx = fieldIndex.get(name);
+            if (idx == null) throw new Error("Unknown field " + name);
+            return idx.intValue();
         }
     }
 
+    private static class IntObject {
+        final public ClassInfo cls;
+        final public Object[] fields;
+
+        public IntObject(ClassInfo cls) {
+            this.cls = cls;
+            fields = new Object[cls.fieldCount];
+        }
+    }
+
+    /* An inline cache for one Call statement: the receiver classes seen
+     * there and the method each of them dispatches to. Once more than
+     * POLYMORPHIC_LIMIT classes have been seen the site is megamorphic, and
+     * new classes are looked up on every call. */
+    private static final int POLYMORPHIC_LIMIT = 4;
+
+    private static class CallSite {
+        public final SSAStatement call;
+        public final String method;
+        public final ClassInfo[] classes;
+        public final SSAMethod[] methods;
+        public final PreparedMethod[] targets;
+        public int size;
+        public boolean megamorphic;
+        public long hits, misses;
+
+        public CallSite(SSAStatement call) {
+            this.call = call;
+            method = ((SSACall) call.getSpecial()).getMethod();
+            classes = new ClassInfo[POLYMORPHIC_LIMIT];
+            methods = new SSAMethod[POLYMORPHIC_LIMIT];
+            targets = new PreparedMethod[POLYMORPHIC_LIMIT];
+        }
+    }
+
+    public static void usage() {
+        System.out.println("Use: mjinterp-ssa [-t] [-fuse] [-dce] [-ic] [-tiered | -closure | -stack[=<MB>]]\n" +
+            "                    [-profile[=<json file>]] [-alloc] [-cache=<dir>] <input file>");
+    }
+
     public static void main(String[] args) {
+        String fname = null;
         ParserAST parser;
         Program progAST;
         SSAProgram prog;
         SSAInterpreter interp;
+        boolean typeCheck = false;
+        boolean icStats = false;
+        boolean allocStats = false;
+        boolean fuse = false;
+        boolean dce = false;
+        boolean tiered = false;
+        boolean closures = false;
+        long stackBudget = 0;
+        String profileFile = null;
+        String cacheDir = null;
 
-        if (args.length != 1) {
-            System.out.println("Use: mjinterp-ast <input file>");
-            return;
-        }
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                if (arg.equals("-t")) {
+                    typeCheck = true;
+                } else if (arg.equals("-fuse")) {
+                    fuse = true;
+                } else if (arg.equals("-dce")) {
+                    dce = true;
+                } else if (arg.equals("-ic")) {
+                    icStats = true;
+                } else if (arg.equals("-alloc")) {
+                    allocStats = true;
+                } else if (arg.equals("-tiered")) {
+                    tiered = true;
+                } else if (arg.equals("-closure")) {
+                    closures = true;
+                } else if (arg.equals("-profile")) {
+                    profileFile = DEFAULT_PROFILE;
+                } else if (arg.startsWith("-profile=")) {
+                    profileFile = arg.substring(9);
+                } else if (arg.startsWith("-cache=")) {
+                    cacheDir = arg.substring(7);
+                } else if (arg.equals("-stack")) {
+                    stackBudget = DEFAULT_STACK_BUDGET;
+                } else if (arg.startsWith("-stack=")) {
+                    try {
+                        stackBudget = Long.parseLong(arg.substring(7)) << 20;
+                    } catch (NumberFormatException ex) {
+                        usage();
+                        return;
+                    }
+                } else {
+                    usage();
+                    return;
+                }
 
-        try {
-            parser = new ParserAST(new java.io.FileInputStream(args[0]));
-        } catch (java.io.FileNotFoundException ex) {
-            System.out.println("File " + args[0] + " not found.");
+            } else if (fname == null) {
+                fname = arg;
+
+            } else {
+                usage();
+                return;
+
+            }
+        }
+        if (fname == null) {
+            usage();
             return;
         }
 
-        try {
-            progAST = parser.Program();
-        } catch (ParseException ex) {
-            System.out.println(ex.getMessage());
-            return;
+        if (cacheDir != null) {
+            // an unchanged file comes straight out of the cache
+            try {
+                prog = new SSACache(new java.io.File(cacheDir)).compile(new java.io.File(fname), typeCheck);
+            } catch (java.io.IOException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+        } else {
+            try {
+                parser = new ParserAST(new java.io.FileInputStream(fname));
+            } catch (java.io.FileNotFoundException ex) {
+                System.out.println("File " + fname + " not found.");
+                return;
+            }
+
+            try {
+                progAST = parser.Program();
+            } catch (ParseException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+
+            prog = SSACompiler.compile(progAST);
+
+            // with types, ints and booleans are kept unboxed
+            if (typeCheck) {
+                TypeChecker tc = new TypeChecker(prog);
+                tc.typeCheck();
+            }
         }
 
-        prog = SSACompiler.compile(progAST);
+        // dead statements are still dispatched, so drop them first
+        if (dce)
+            System.err.println(DeadCodeElimination.eliminate(prog));
+
+        if (fuse)
+            System.err.println(SSAFusion.fuse(prog));
+
         interp = new SSAInterpreter(prog);
-        interp.execute();
+        interp.setStackBudget(stackBudget);
+        if (allocStats)
+            interp.setHeapAccount(new HeapAccount(0, 0, true));
+        if (profileFile != null) {
+            // ops are only counted by the switch interpreter, so nothing is compiled
+            interp.setProfile(new SSAProfile(prog));
+        } else if (closures) {
+            interp.setCompileThreshold(CLOSURE_THRESHOLD);
+        } else if (tiered) {
+            interp.setCompileThreshold(DEFAULT_COMPILE_THRESHOLD);
+        }
+
+        try {
+            interp.execute();
+        } finally {
+            if (icStats)
+                interp.printCallSiteStats(System.err);
+
+            if (allocStats)
+                System.err.println(interp.getHeapAccount());
+
+            if (profileFile != null) {
+                SSAProfile profile = interp.getProfile();
+                profile.unwind();
+                profile.printReport(System.err);
+                try {
+                    java.io.Writer out = new java.io.FileWriter(profileFile);
+                    profile.writeJSON(out);
+                    out.close();
+                } catch (java.io.IOException ex) {
+                    System.err.println("Could not write " + profileFile + ": " + ex.getMessage());
+                }
+            }
+        }
     }
 
 
     public SSAInterpreter(SSAProgram prog) {
         this.prog = prog;
+        prepared = new IdentityHashMap<SSAMethod, PreparedMethod>();
+        classes = new HashMap<String, ClassInfo>();
+        out = new BufferedOutputSink(System.out);
+        heap = new HeapAccount();
+    }
+
+
+    // compile methods once they're this hot (0 to only interpret)
+    public void setCompileThreshold(int threshold) {
+        compileThreshold = threshold;
+    }
+
+    /* run calls on an explicit stack of at most this many bytes of frames
+     * (0 to recurse). Compiled code always recurses, so this mode only
+     * interprets. */
+    public void setStackBudget(long bytes) {
+        stackBudget = bytes;
+    }
+
+    /* collect a profile while running (null to stop). Ops are counted by
+     * the switch interpreter only, so compiled methods aren't in the op
+     * counts. */
+    public void setProfile(SSAProfile profile) {
+        this.profile = profile;
+    }
+
+    public SSAProfile getProfile() {
+        return profile;
+    }
+
+    // send the program's output here (flushed when execute returns or fails)
+    public void setOutput(OutputSink out) {
+        this.out = out;
     }
 
+    /* at most this many statements (0 for no limit). Compiled code doesn't
+     * count statements, so a metered run only interprets, as step does. */
+    public void setInstructionBudget(long instructions) {
+        instructionBudget = instructions;
+    }
+
+    // charge allocations to this account, with whatever limits it has
+    public void setHeapAccount(HeapAccount heap) {
+        this.heap = heap;
+    }
+
+    public HeapAccount getHeapAccount() {
+        return heap;
+    }
+
+    public long getInstructionCount() {
+        return instructions;
+    }
 
     // run the program
     public void execute() {
-        execute(prog.getMain(), new StackFrame(null, 0));
+        PreparedMethod pm = prepare(prog.getMain());
+        if (profile != null) profile.enter(pm.method);
+
+        given = fuel = (instructionBudget > 0) ? instructionBudget : Long.MAX_VALUE;
+        runThreshold = (instructionBudget > 0) ? 0 : compileThreshold;
+        try {
+            if (stackBudget > 0) {
+                frames = new FrameStack(stackBudget);
+                execute(pm, frames.push(null, pm));
+
+            } else {
+                StackFrame frame = new StackFrame(null, pm);
+                if (pm.compiled == null && runThreshold > 0 && ++pm.invocations >= runThreshold)
+                    compile(pm);
+                if (pm.compiled != null && runThreshold > 0)
+                    run(pm.compiled, frame);
+                else
+                    execute(pm, frame);
+            }
+        } finally {
+            instructions += given - fuel;
+            frames = null;
+            out.flush();
+        }
+
+        if (profile != null) profile.exit();
     }
 
-    private Object execute(SSAMethod m, StackFrame frame) {
-        Map<SSAStatement, Object> results = new HashMap<SSAStatement, Object>();
-        Map<SSAStatement, List<SSAStatement>> unifications = new HashMap<SSAStatement, List<SSAStatement>>();
-        SSAStatement[] body = m.getBody().toArray(new SSAStatement[0]);
-        Map<String, Integer> labels = new HashMap<String, Integer>();
+    /* Run the program a slice at a time, so that many programs can share
+     * threads: each call runs at most slice more statements, and returns
+     * true once the program has finished, or false if it stopped at the
+     * end of the slice (call again to carry on). Budgets are enforced as in
+     * execute, by LimitExceededError. Stepping always interprets on the
+     * explicit stack, since compiled code can't stop in the middle of a
+     * method, so a program runs the same number of statements every time. */
+    public boolean step(long slice) {
+        if (finished)
+            throw new Error("Program already finished");
+        if (!started) {
+            started = stepping = true;
+            runThreshold = 0;
+            frames = new FrameStack((stackBudget > 0) ? stackBudget : DEFAULT_STACK_BUDGET);
+            frames.push(null, prepare(prog.getMain())).pc = -1;
+        }
 
-        // map all the labels and unifications
-        for (int bi = 0; bi < body.length; bi++) {
-            SSAStatement s = body[bi];
-            switch (s.getOp()) {
-                case Label:
+        given = slice;
+        if (instructionBudget > 0)
+            given = Math.min(given, instructionBudget - instructions);
+        fuel = given;
+
+        boolean done = true;
+        try {
+            StackFrame top = frames.top();
+            done = (execute(top.pm, top, top.pc + 1, 1) != SUSPENDED);
+        } finally {
+            instructions += given - fuel;
+            if (done) {
+                finished = true;
+                frames = null;
+                out.flush();
+            }
+        }
+        return done;
+    }
+
+    // allocate, charging the heap account
+    private IntObject newObject(ClassInfo cls) {
+        long size = HeapAccount.objectBytes(cls.fieldCount);
+        heap.charge(size);
+        return heap.track(new IntObject(cls), size);
+    }
+
+    private int[] newIntArray(int length) {
+        long size = HeapAccount.arrayBytes(length);
+        if (length >= 0) heap.charge(size);
+        return heap.track(new int[length], size);
+    }
+
+    // out of fuel: fail, unless this is just the end of a step
+    private void outOfFuel() {
+        if (!stepping || (instructionBudget > 0 && instructions + given >= instructionBudget))
+            throw new LimitExceededError(LimitExceededError.Resource.INSTRUCTIONS, instructionBudget);
+    }
+
+    private static int slotOf(Map<SSAStatement, Integer> slots, SSAStatement s) {
+        if (s == null) return -1;
+        return slots.get(s).intValue();
+    }
+
+    /* Give every statement in the body a register. Unified statements
+     * always hold the same value, so they share one. */
+    private static Map<SSAStatement, Integer> assignSlots(SSAStatement[] body) {
+        int[] groups = SSAUnification.groups(body);
+        Map<SSAStatement, Integer> slots = new HashMap<SSAStatement, Integer>();
+        for (int bi = 0; bi < body.length; bi++)
+            slots.put(body[bi], Integer.valueOf(groups[bi]));
+        return slots;
+    }
+
+    /* A method body decoded for execution: operands resolved to registers,
+     * branches resolved to body indices and call arguments to register
+     * arrays. It remembers the body list it was decoded from, so replacing
+     * the body with SSAMethod.setBody makes it stale. */
+    private static class PreparedMethod {
+        public final SSAMethod method;
+        public final List<SSAStatement> source;
+        public final SSAStatement[] body;
+        public final int[] slot, leftSlot, rightSlot, indexSlot, target;
+        public final int[][] argSlots;
+        public final CallSite[] callSites;
+        public final int[] paramSlot;
+        public final byte[] kind;
+        public final int regCount;
+
+        // filled in by the interpreter as it runs: classes for NewObj, and
+        // the last class and field index seen by each Member/MemberAssg
+        public final ClassInfo[] newClass, fieldClass;
+        public final int[] fieldIdx;
+
+        // tiering counters, and the compiled form once the method is hot
+        public int invocations, backEdges;
+        public Node[] compiled;
+
+        public PreparedMethod(SSAMethod m) {
+            method = m;
+            source = m.getBody();
+            body = source.toArray(new SSAStatement[0]);
+
+            // map all the labels
+            Map<String, Integer> labels = new HashMap<String, Integer>();
+            for (int bi = 0; bi < body.length; bi++) {
+                SSAStatement s = body[bi];
+                if (s.getOp() == SSAStatement.Op.Label)
                     labels.put((String) s.getSpecial(), Integer.valueOf(bi));
-                    break;
+            }
+
+            // give every statement a register, and resolve the operands to them
+            Map<SSAStatement, Integer> slots = assignSlots(body);
+            slot = new int[body.length];
+            leftSlot = new int[body.length];
+            rightSlot = new int[body.length];
+            indexSlot = new int[body.length];
+            target = new int[body.length];
+            argSlots = new int[body.length][];
+            callSites = new CallSite[body.length];
+            int regs = 0, params = 0;
+            for (int bi = 0; bi < body.length; bi++) {
+                SSAStatement s = body[bi];
+                slot[bi] = slotOf(slots, s);
+                leftSlot[bi] = slotOf(slots, s.getLeft());
+                rightSlot[bi] = slotOf(slots, s.getRight());
+                switch (s.getOp()) {
+                    case IndexAssg:
+                        indexSlot[bi] = slotOf(slots, (SSAStatement) s.getSpecial());
+                        break;
 
-                case Unify:
-                case Alias:
-                {
-                    // get the full list
-                    SSAStatement left = s.getLeft();
-                    SSAStatement right = s.getRight();
-                    List<SSAStatement> ulist, rlist;
-
-                    if (unifications.containsKey(left)) {
-                        ulist = new ArrayList<SSAStatement>(unifications.get(left));
-                    } else {
-                        ulist = new ArrayList<SSAStatement>();
-                        ulist.add(left);
+                    case Goto:
+                    case Branch:
+                    case NBranch:
+                    case BranchLt:
+                    case BranchLe:
+                    case BranchGt:
+                    case BranchGe:
+                        target[bi] = labels.get((String) s.getSpecial()).intValue();
+                        break;
+
+                    case Call:
+                    {
+                        List<SSAStatement> args = ((SSACall) s.getSpecial()).getArgs();
+                        argSlots[bi] = new int[args.size()];
+                        for (int ai = 0; ai < argSlots[bi].length; ai++)
+                            argSlots[bi][ai] = slotOf(slots, args.get(ai));
+                        callSites[bi] = new CallSite(s);
+                        break;
                     }
 
-                    if (right != null) {
-                        if (unifications.containsKey(right)) {
-                            rlist = unifications.get(right);
-                        } else {
-                            rlist = new ArrayList<SSAStatement>();
-                            rlist.add(right);
-                        }
-                        ulist.addAll(rlist);
+                    case Parameter:
+                    {
+                        int pi = ((Integer) s.getSpecial()).intValue();
+                        if (pi >= params) params = pi + 1;
+                        break;
                     }
+                }
+                if (slot[bi] >= regs) regs = slot[bi] + 1;
+            }
+            regCount = regs;
+            newClass = new ClassInfo[body.length];
+            fieldClass = new ClassInfo[body.length];
+            fieldIdx = new int[body.length];
 
-                    ulist.add(s);
+            // where the caller should put each argument
+            paramSlot = new int[params];
+            Arrays.fill(paramSlot, -1);
+            for (int bi = 0; bi < body.length; bi++) {
+                if (body[bi].getOp() == SSAStatement.Op.Parameter)
+                    paramSlot[((Integer) body[bi].getSpecial()).intValue()] = slot[bi];
+            }
 
-                    for (SSAStatement s2 : ulist) {
-                        unifications.put(s2, ulist);
-                    }
-                    break;
+            /* choose each register's representation from the static types of
+             * the statements sharing it; anything untyped or mixed is boxed */
+            kind = new byte[regs];
+            boolean[] seen = new boolean[regs];
+            for (int bi = 0; bi < body.length; bi++) {
+                byte k = kindOf(body[bi].getType());
+                int r = slot[bi];
+                if (!seen[r]) {
+                    kind[r] = k;
+                    seen[r] = true;
+                } else if (kind[r] != k) {
+                    kind[r] = REF;
                 }
             }
         }
 
-        // and run it
-        for (int bi = 0; bi < body.length; bi++) {
-            SSAStatement s = body[bi];
-            Object result = null;
-
-            SSAStatement.Op op = s.getOp();
-            SSAStatement left = s.getLeft();
-            SSAStatement right = s.getRight();
-            Object special = s.getSpecial();
-
-            switch (op) {
-                // Meta:
-                case Unify:
-                case Alias:
-                    result = results.get(left);
-                    break;
+        private static byte kindOf(StaticType type) {
+            if (type instanceof PrimitiveType.IntType) return INT;
+            if (type instanceof PrimitiveType.BooleanType) return BOOLEAN;
+            return REF;
+        }
+    }
 
-                // Data:
-                case This:
-                    result = frame.thiz;
-                    break;
+    // get the decoded form of this method, decoding it if needed
+    private PreparedMethod prepare(SSAMethod m) {
+        PreparedMethod pm = prepared.get(m);
+        if (pm == null || pm.source != m.getBody()) {
+            pm = new PreparedMethod(m);
+            prepared.put(m, pm);
+        }
+        return pm;
+    }
 
-                case Parameter:
-                    result = frame.params[(Integer) special];
-                    break;
+    // get the descriptor for this class
+    private ClassInfo classInfo(String name) {
+        ClassInfo ci = classes.get(name);
+        if (ci == null) {
+            SSAClass cl = prog.getClass(name);
+            if (cl == null) throw new Error("Unknown class " + name);
+            ci = new ClassInfo(prog, cl);
+            classes.put(name, ci);
+        }
+        return ci;
+    }
 
-                case Arg:
-                    result = results.get(left);
-                    break;
+    // find the method a call site invokes on thiz, through its inline cache
+    private PreparedMethod dispatch(CallSite site, IntObject thiz, int argCount) {
+        ClassInfo cls = thiz.cls;
+        for (int i = 0; i < site.size; i++) {
+            if (site.classes[i] == cls) {
+                site.hits++;
+                PreparedMethod cpm = site.targets[i];
+                if (cpm.source != site.methods[i].getBody())
+                    cpm = site.targets[i] = prepare(site.methods[i]);
+                return cpm;
+            }
+        }
 
-                case Null:
-                {
-                    Type ntype = (Type) special;
-                    if (ntype instanceof TypeInt) {
-                        result = Integer.valueOf(0);
-                    } else if (ntype instanceof TypeBoolean) {
-                        result = Boolean.FALSE;
-                    } else {
-                        result = null;
-                    }
-                    break;
-                }
+        // a miss, so look it up
+        site.misses++;
+        SSAMethod cm = cls.methods.get(site.method);
+        if (cm == null)
+            throw new Error("Unknown method " + site.method);
 
-                case Int:
-                case Boolean:
-                    result = special;
-                    break;
+        // match up our arguments to their parameters
+        if (argCount != cm.getMethod().getParameters().size())
+            throw new Error("Call with wrong number of arguments");
 
-                case NewObj:
-                    result = new IntObject(prog, prog.getClass((String) special));
-                    break;
+        PreparedMethod cpm = prepare(cm);
+        if (site.size < POLYMORPHIC_LIMIT) {
+            site.classes[site.size] = cls;
+            site.methods[site.size] = cm;
+            site.targets[site.size] = cpm;
+            site.size++;
+        } else {
+            site.megamorphic = true;
+        }
+        return cpm;
+    }
 
-                case NewIntArray:
-                    result = new int[((Integer) results.get(left)).intValue()];
-                    break;
+    // print the inline cache counters of every call site that has run
+    public void printCallSiteStats(java.io.PrintStream out) {
+        List<CallSite> sites = new ArrayList<CallSite>();
+        for (PreparedMethod pm : prepared.values()) {
+            for (CallSite site : pm.callSites) {
+                if (site != null && site.hits + site.misses > 0)
+                    sites.add(site);
+            }
+        }
+        Collections.sort(sites, new Comparator<CallSite>() {
+            public int compare(CallSite a, CallSite b) {
+                return a.call.getIndex() - b.call.getIndex();
+            }
+        });
 
-                // Control flow:
-                case Label:
-                    // nothing
-                    break;
+        long hits = 0, misses = 0;
+        out.println("call site                       state         hits     misses  classes");
+        for (CallSite site : sites) {
+            String state;
+            if (site.megamorphic) state = "megamorphic";
+            else if (site.size > 1) state = "polymorphic";
+            else state = "monomorphic";
 
-                case Goto:
-                    bi = labels.get((String) special).intValue();
-                    break;
+            StringBuilder classes = new StringBuilder();
+            for (int i = 0; i < site.size; i++) {
+                if (i > 0) classes.append(",");
+                classes.append(site.classes[i].cl.getASTNode().getName());
+            }
+            if (site.megamorphic) classes.append(",...");
 
-                case Branch:
-                case NBranch:
-                {
-                    boolean condition = ((Boolean) results.get(left)).booleanValue();
-                    if (op == SSAStatement.Op.NBranch) condition = !condition;
-                    if (condition) {
-                        // branch
-                        bi = labels.get((String) special).intValue();
-                    }
-                    break;
-                }
+            out.println(String.format("%-30s  %-11s %10d %10d  %s",
+                site.call.getIndex() + ": " + site.method, state, site.hits, site.misses, classes));
+            hits += site.hits;
+            misses += site.misses;
+        }
+        out.println(String.format("%-30s  %-11s %10d %10d", "total", "", hits, misses));
+    }
 
-                // Calls:
-                case Call:
-                {
-                    SSACall call = (SSACall) special;
-                    List<SSAStatement> args = call.getArgs();
-                    StackFrame cframe = new StackFrame((IntObject) results.get(left), args.size());
-                    SSAMethod cm = cframe.thiz.methods.get(call.getMethod());
-                    List<Parameter> params = cm.getMethod().getParameters();
-
-                    // match up our arguments to their parameters
-                    if (args.size() != params.size())
-                        throw new Error("Call with wrong number of arguments");
-
-                    Iterator<SSAStatement> argI = args.iterator();
-
-                    int pi = 0;
-                    while (argI.hasNext()) {
-                        Object arg = results.get(argI.next());
-                        cframe.params[pi++] = arg;
-                    }
+    // the index of this statement's field in obj, cached per statement
+    private static int fieldIndex(PreparedMethod pm, int bi, IntObject obj) {
+        if (pm.fieldClass[bi] != obj.cls) {
+            pm.fieldIdx[bi] = obj.cls.fieldIndex((String) pm.body[bi].getSpecial());
+            pm.fieldClass[bi] = obj.cls;
+        }
+        return pm.fieldIdx[bi];
+    }
 
-                    // and run it
-                    result = execute(cm, cframe);
-                    break;
-                }
+    // call cpm from frame, putting its return value in register dst
+    private void invoke(PreparedMethod cpm, IntObject thiz, StackFrame frame, int[] args, int dst) {
+        StackFrame cframe = new StackFrame(thiz, cpm);
+        passArgs(cpm, cframe, frame, args);
 
-                case Print:
-                    System.out.println(results.get(left));
-                    break;
+        // and run it, compiled if it's hot
+        if (cpm.compiled == null && runThreshold > 0 &&
+            ++cpm.invocations + cpm.backEdges >= runThreshold)
+            compile(cpm);
+        if (profile != null) profile.enter(cpm.method);
+        int ret = (cpm.compiled != null && runThreshold > 0) ? run(cpm.compiled, cframe) : execute(cpm, cframe);
+        if (profile != null) profile.exit();
+        if (ret >= 0)
+            frame.move(dst, cframe, ret);
+        else
+            frame.put(dst, null);
+    }
 
-                case Return:
-                    return results.get(left);
+    // whether registers l and r of a frame hold equal values
+    private static boolean equal(StackFrame frame, int left, int right) {
+        byte lk = frame.kind[left];
+        if (lk != REF && lk == frame.kind[right]) {
+            // both unboxed and of the same type
+            return frame.prims[left] == frame.prims[right];
+        }
 
+        Object l = frame.get(left);
+        Object r = frame.get(right);
+        if (l instanceof Integer) {
+            return (r instanceof Integer) && l.equals(r);
+        } else if (r instanceof Integer) {
+            return false;
+        } else {
+            return (l == r);
+        }
+    }
 
-                // Member access:
-                case Member:
-                {
-                    Object target = results.get(left);
-                    String field = (String) special;
-                    if (field.equals("length") && target instanceof int[]) {
-                        result = ((int[]) target).length;
-                    } else {
-                        IntObject obj = (IntObject) target;
-                        result = obj.fields.get(field);
-                    }
-                    break;
-                }
+    // store the arguments in frame's registers args as cpm's parameters in cframe
+    private static void passArgs(PreparedMethod cpm, StackFrame cframe, StackFrame frame, int[] args) {
+        for (int pi = 0; pi < args.length && pi < cpm.paramSlot.length; pi++) {
+            if (cpm.paramSlot[pi] >= 0)
+                cframe.move(cpm.paramSlot[pi], frame, args[pi]);
+        }
+    }
 
-                case Index:
-                {
-                    int[] arr = (int[]) results.get(left);
-                    int idx = ((Integer) results.get(right));
-                    result = arr[idx];
-                    break;
-                }
+    // return from the top frame of the explicit stack to its caller
+    private StackFrame popFrame(int ret) {
+        if (profile != null) profile.exit();
+        StackFrame callee = frames.pop();
+        StackFrame caller = frames.top();
+        if (ret >= 0)
+            caller.move(caller.dst, callee, ret);
+        else
+            caller.put(caller.dst, null);
+        callee.release();
+        return caller;
+    }
 
-                // Assignment:
-                case VarAssg:
-                    result = results.get(left);
-                    break;
+    /* run a method, returning the register of its frame holding the return
+     * value (or -1). On the explicit stack this runs every call the method
+     * makes too, and returns when the method's own frame does. */
+    private int execute(PreparedMethod pm, StackFrame frame) {
+        return execute(pm, frame, 0, (frames == null) ? 0 : frames.depth);
+    }
 
-                case MemberAssg:
-                {
-                    IntObject obj = (IntObject) results.get(left);
-                    result = results.get(right);
-                    obj.fields.put((String) special, result);
-                    break;
-                }
+    /* run from statement start, until the frame at depth base returns. When
+     * stepping, this can also stop at the end of a step, returning
+     * SUSPENDED with the statement to carry on after in the top frame's pc. */
+    private int execute(PreparedMethod pm, StackFrame frame, int start, int base) {
+        SSAStatement[] body = pm.body;
+        int[] slot = pm.slot;
+        int[] leftSlot = pm.leftSlot;
+        int[] rightSlot = pm.rightSlot;
 
-                case IndexAssg:
-                {
-                    int[] arr = (int[]) results.get(left);
-                    int idx = ((Integer) results.get((SSAStatement) special)).intValue();
-                    result = results.get(right);
-                    arr[idx] = ((Integer) result).intValue();
-                    break;
+        long[] opCounts = (profile == null) ? null : profile.opCounts;
+
+        // kept in a local while running, and in the field across calls and on the way out
+        long fuel = this.fuel;
+        try {
+            for (int bi = start; ; bi++) {
+                if (bi >= body.length) {
+                    // falling off the end returns nothing
+                    if (frames == null || frames.depth == base)
+                        return -1;
+                    frame = popFrame(-1);
+                    pm = frame.pm;
+                    body = pm.body; slot = pm.slot; leftSlot = pm.leftSlot; rightSlot = pm.rightSlot;
+                    bi = frame.pc;
+                    continue;
                 }
 
-                // Unary operator:
-                case Not:
-                {
-                    Object l = results.get(left);
-                    if (l == Boolean.FALSE)
-                        result = Boolean.TRUE;
-                    else
-                        result = Boolean.FALSE;
-                    break;
+                if (--fuel < 0) {
+                    fuel = 0;
+                    outOfFuel();
+                    frame.pc = bi - 1;
+                    return SUSPENDED;
                 }
 
-                // int-valued operators
-                case Lt:
-                case Le:
-                case Gt:
-                case Ge:
-                case Plus:
-                case Minus:
-                case Mul:
-                case Div:
-                case Mod:
-                {
-                    int l = ((Integer) results.get(left)).intValue();
-                    int r = ((Integer) results.get(right)).intValue();
-                    switch (op) {
-                        case Lt: result = Boolean.valueOf(l < r); break;
-                        case Le: result = Boolean.valueOf(l <= r); break;
-                        case Gt: result = Boolean.valueOf(l > r); break;
-                        case Ge: result = Boolean.valueOf(l >= r); break;
-                        case Plus: result = Integer.valueOf(l + r); break;
-                        case Minus: result = Integer.valueOf(l - r); break;
-                        case Mul: result = Integer.valueOf(l * r); break;
-                        case Div: result = Integer.valueOf(l / r); break;
-                        case Mod: result = Integer.valueOf(l % r); break;
+                SSAStatement s = body[bi];
+
+                SSAStatement.Op op = s.getOp();
+                if (opCounts != null) opCounts[op.ordinal()]++;
+                int dst = slot[bi];
+                int left = leftSlot[bi];
+                int right = rightSlot[bi];
+                Object special = s.getSpecial();
+
+                switch (op) {
+                    // Meta:
+                    case Unify:
+                    case Alias:
+                        frame.move(dst, frame, left);
+                        break;
+
+                    // Data:
+                    case This:
+                        frame.put(dst, frame.thiz);
+                        break;
+
+                    case Parameter:
+                        // the caller already stored the argument in this register
+                        break;
+
+                    case Arg:
+                        frame.move(dst, frame, left);
+                        break;
+
+                    case Null:
+                    {
+                        Type ntype = (Type) special;
+                        if (ntype instanceof TypeInt) {
+                            frame.putInt(dst, 0);
+                        } else if (ntype instanceof TypeBoolean) {
+                            frame.putBoolean(dst, false);
+                        } else {
+                            frame.put(dst, null);
+                        }
+                        break;
                     }
-                    break;
-                }
 
-                // boolean-valued operators
-                case And:
-                case Or:
-                {
-                    boolean l = ((Boolean) results.get(left)).booleanValue();
-                    boolean r = ((Boolean) results.get(right)).booleanValue();
-                    switch (op) {
-                        case And: result = Boolean.valueOf(l && r); break;
-                        case Or: result = Boolean.valueOf(l || r); break;
+                    case Int:
+                    case Boolean:
+                        frame.put(dst, special);
+                        break;
+
+                    case NewObj:
+                    {
+                        ClassInfo ci = pm.newClass[bi];
+                        if (ci == null)
+                            ci = pm.newClass[bi] = classInfo((String) special);
+                        frame.put(dst, newObject(ci));
+                        break;
                     }
-                    break;
-                }
 
-                // equality operators
-                case Eq:
-                case Ne:
-                {
-                    Object l = results.get(left);
-                    Object r = results.get(right);
-
-                    // get the Eq value first
-                    if (l instanceof Integer) {
-                        if (r instanceof Integer) {
-                            result = Boolean.valueOf(l.equals(r));
+                    case NewIntArray:
+                        frame.put(dst, newIntArray(frame.getInt(left)));
+                        break;
+
+                    // Control flow:
+                    case Label:
+                        // nothing
+                        break;
+
+                    case Goto:
+                        if (pm.target[bi] < bi && runThreshold > 0 && pm.compiled == null) {
+                            // a loop back edge
+                            if (pm.invocations + ++pm.backEdges >= runThreshold)
+                                compile(pm);
+                        }
+                        bi = pm.target[bi];
+                        break;
+
+                    case Branch:
+                    case NBranch:
+                    {
+                        boolean condition = frame.getBoolean(left);
+                        if (op == SSAStatement.Op.NBranch) condition = !condition;
+                        if (condition) {
+                            // branch
+                            bi = pm.target[bi];
+                        }
+                        break;
+                    }
+
+                    // Calls:
+                    case Call:
+                    {
+                        int[] args = pm.argSlots[bi];
+                        IntObject thiz = (IntObject) frame.refs[left];
+                        PreparedMethod cpm = dispatch(pm.callSites[bi], thiz, args.length);
+                        if (frames == null) {
+                            // the callee counts down the same fuel
+                            this.fuel = fuel;
+                            try {
+                                invoke(cpm, thiz, frame, args, dst);
+                            } finally {
+                                fuel = this.fuel;
+                            }
+                            break;
+                        }
+
+                        // push a frame, and carry on in the callee
+                        StackFrame cframe = frames.push(thiz, cpm);
+                        passArgs(cpm, cframe, frame, args);
+                        if (profile != null) profile.enter(cpm.method);
+                        frame.pc = bi;
+                        frame.dst = dst;
+                        frame = cframe;
+                        pm = cpm;
+                        body = pm.body; slot = pm.slot; leftSlot = pm.leftSlot; rightSlot = pm.rightSlot;
+                        bi = -1;
+                        break;
+                    }
+
+                    case Print:
+                        if (frame.kind[left] == INT)
+                            out.println((int) frame.prims[left]);
+                        else
+                            out.println(frame.get(left));
+                        break;
+
+                    case Return:
+                        if (frames == null || frames.depth == base)
+                            return left;
+                        frame = popFrame(left);
+                        pm = frame.pm;
+                        body = pm.body; slot = pm.slot; leftSlot = pm.leftSlot; rightSlot = pm.rightSlot;
+                        bi = frame.pc;
+                        break;
+
+
+                    // Member access:
+                    case Member:
+                    {
+                        Object target = frame.refs[left];
+                        String field = (String) special;
+                        if (field.equals("length") && target instanceof int[]) {
+                            frame.putInt(dst, ((int[]) target).length);
                         } else {
-                            result = Boolean.FALSE;
+                            IntObject obj = (IntObject) target;
+                            frame.put(dst, obj.fields[fieldIndex(pm, bi, obj)]);
                         }
-                    } else if (r instanceof Integer) {
-                        result = Boolean.FALSE;
-                    } else {
-                        result = Boolean.valueOf(l == r);
+                        break;
+                    }
+
+                    case Index:
+                    {
+                        int[] arr = (int[]) frame.refs[left];
+                        frame.putInt(dst, arr[frame.getInt(right)]);
+                        break;
                     }
 
-                    // then swap for Ne
-                    if (op == SSAStatement.Op.Ne)
-                        result = Boolean.valueOf(result == Boolean.FALSE);
+                    // Assignment:
+                    case VarAssg:
+                        frame.move(dst, frame, left);
+                        break;
 
-                    break;
+                    case MemberAssg:
+                    {
+                        IntObject obj = (IntObject) frame.refs[left];
+                        obj.fields[fieldIndex(pm, bi, obj)] = frame.get(right);
+                        frame.move(dst, frame, right);
+                        break;
+                    }
+
+                    case IndexAssg:
+                    {
+                        int[] arr = (int[]) frame.refs[left];
+                        int idx = frame.getInt(pm.indexSlot[bi]);
+                        arr[idx] = frame.getInt(right);
+                        frame.move(dst, frame, right);
+                        break;
+                    }
+
+                    // Unary operator:
+                    case Not:
+                        frame.putBoolean(dst, !frame.getBoolean(left));
+                        break;
+
+                    // int-valued operators
+                    case Lt: frame.putBoolean(dst, frame.getInt(left) < frame.getInt(right)); break;
+                    case Le: frame.putBoolean(dst, frame.getInt(left) <= frame.getInt(right)); break;
+                    case Gt: frame.putBoolean(dst, frame.getInt(left) > frame.getInt(right)); break;
+                    case Ge: frame.putBoolean(dst, frame.getInt(left) >= frame.getInt(right)); break;
+                    case Plus: frame.putInt(dst, frame.getInt(left) + frame.getInt(right)); break;
+                    case Minus: frame.putInt(dst, frame.getInt(left) - frame.getInt(right)); break;
+                    case Mul: frame.putInt(dst, frame.getInt(left) * frame.getInt(right)); break;
+                    case Div: frame.putInt(dst, frame.getInt(left) / frame.getInt(right)); break;
+                    case Mod: frame.putInt(dst, frame.getInt(left) % frame.getInt(right)); break;
+
+                    // boolean-valued operators
+                    case And: frame.putBoolean(dst, frame.getBoolean(left) && frame.getBoolean(right)); break;
+                    case Or: frame.putBoolean(dst, frame.getBoolean(left) || frame.getBoolean(right)); break;
+
+                    // equality operators
+                    case Eq:
+                    case Ne:
+                    {
+                        // get the Eq value first
+                        boolean result = equal(frame, left, right);
+
+                        // then swap for Ne
+                        if (op == SSAStatement.Op.Ne)
+                            result = !result;
+
+                        frame.putBoolean(dst, result);
+                        break;
+                    }
+
+                    // fused operators (from SSAFusion)
+                    case BranchLt: if (frame.getInt(left) < frame.getInt(right)) bi = pm.target[bi]; break;
+                    case BranchLe: if (frame.getInt(left) <= frame.getInt(right)) bi = pm.target[bi]; break;
+                    case BranchGt: if (frame.getInt(left) > frame.getInt(right)) bi = pm.target[bi]; break;
+                    case BranchGe: if (frame.getInt(left) >= frame.getInt(right)) bi = pm.target[bi]; break;
+                    case PlusImm: frame.putInt(dst, frame.getInt(left) + ((Integer) special).intValue()); break;
+                    case MinusImm: frame.putInt(dst, frame.getInt(left) - ((Integer) special).intValue()); break;
+
+                    case MemberIndex:
+                    {
+                        IntObject obj = (IntObject) frame.refs[left];
+                        int[] arr = (int[]) obj.fields[fieldIndex(pm, bi, obj)];
+                        frame.putInt(dst, arr[frame.getInt(right)]);
+                        break;
+                    }
+
+                    default:
+                        throw new Error("Implement SSA interpreter for " + op);
                 }
+            }
+        } finally {
+            this.fuel = fuel;
+        }
+    }
 
-                default:
-                    throw new Error("Implement SSA interpreter for " + op);
+
+    /* The compiled tier: each statement becomes a Node bound to its
+     * registers, branch targets and call site, and a method runs as a loop
+     * of exec calls. exec returns the index of the next node to run, or a
+     * negative number once the method returns (see run). Labels and
+     * Parameters do nothing at run time, so they get no node. */
+    private static abstract class Node {
+        abstract int exec(StackFrame f);
+    }
+
+    // run compiled code, returning the register holding the return value (or -1)
+    private static int run(Node[] code, StackFrame frame) {
+        int pc = 0;
+        while (pc >= 0)
+            pc = code[pc].exec(frame);
+        return -2 - pc;
+    }
+
+    // compile a method's body into nodes
+    private void compile(PreparedMethod pm) {
+        SSAStatement[] body = pm.body;
+
+        // where each statement's node will be (or the next one's, if it has none)
+        int[] at = new int[body.length + 1];
+        int count = 0;
+        for (int bi = 0; bi < body.length; bi++) {
+            at[bi] = count;
+            SSAStatement.Op op = body[bi].getOp();
+            if (op != SSAStatement.Op.Label && op != SSAStatement.Op.Parameter)
+                count++;
+        }
+        at[body.length] = count;
+
+        Node[] code = new Node[count + 1];
+        for (int bi = 0; bi < body.length; bi++) {
+            Node n = compileStatement(pm, bi, at[bi + 1], at[pm.target[bi]]);
+            if (n != null) code[at[bi]] = n;
+        }
+
+        // falling off the end returns nothing
+        code[count] = new ReturnNode(-1);
+        pm.compiled = code;
+    }
+
+    private Node compileStatement(PreparedMethod pm, int bi, int next, int target) {
+        SSAStatement s = pm.body[bi];
+        int d = pm.slot[bi], l = pm.leftSlot[bi], r = pm.rightSlot[bi];
+        Object special = s.getSpecial();
+
+        switch (s.getOp()) {
+            // Meta:
+            case Unify:
+            case Alias:
+            case Arg:
+            case VarAssg:
+                if (pm.kind[d] == pm.kind[l])
+                    return (pm.kind[d] == REF) ? new RefMoveNode(next, d, l) : new PrimMoveNode(next, d, l);
+                return new MoveNode(next, d, l);
+
+            // Data:
+            case This: return new ThisNode(next, d);
+
+            case Null:
+            {
+                Type ntype = (Type) special;
+                Object v = null;
+                if (ntype instanceof TypeInt) v = Integer.valueOf(0);
+                else if (ntype instanceof TypeBoolean) v = Boolean.FALSE;
+                return new ConstNode(next, d, v);
             }
 
-            if (unifications.containsKey(s)) {
-                for (SSAStatement s2 : unifications.get(s))
-                    results.put(s2, result);
+            case Int:
+                if (pm.kind[d] == INT)
+                    return new PrimConstNode(next, d, ((Integer) special).intValue());
+                return new ConstNode(next, d, special);
+
+            case Boolean:
+                if (pm.kind[d] == BOOLEAN)
+                    return new PrimConstNode(next, d, ((Boolean) special).booleanValue() ? 1 : 0);
+                return new ConstNode(next, d, special);
+
+            case NewObj: return new NewObjNode(next, d, (String) special);
+            case NewIntArray: return new NewIntArrayNode(next, d, l);
+
+            // Control flow:
+            case Label:
+            case Parameter:
+                return null;
+
+            case Goto: return new GotoNode(target);
+            case Branch:
+            case NBranch:
+            {
+                int ifTrue = (s.getOp() == SSAStatement.Op.Branch) ? target : next;
+                int ifFalse = (s.getOp() == SSAStatement.Op.Branch) ? next : target;
+                if (pm.kind[l] == BOOLEAN)
+                    return new PrimBranchNode(next, l, ifTrue, ifFalse);
+                return new BranchNode(next, l, ifTrue, ifFalse);
+            }
+
+            // Calls:
+            case Call: return new CallNode(next, d, l, pm.callSites[bi], pm.argSlots[bi]);
+            case Print: return new PrintNode(next, l);
+            case Return: return new ReturnNode(l);
+
+            // Member access:
+            case Member: return new MemberNode(next, d, l, (String) special);
+            case Index: return new IndexNode(next, d, l, r);
+
+            // Assignment:
+            case MemberAssg: return new MemberAssgNode(next, d, l, r, (String) special);
+            case IndexAssg: return new IndexAssgNode(next, d, l, r, pm.indexSlot[bi]);
+
+            // Operators:
+            case Not: return new NotNode(next, d, l);
+
+            // Fused operators:
+            case BranchLt: return new BranchLtNode(next, l, r, target, next);
+            case BranchLe: return new BranchLeNode(next, l, r, target, next);
+            case BranchGt: return new BranchLtNode(next, r, l, target, next);
+            case BranchGe: return new BranchLeNode(next, r, l, target, next);
+            case MemberIndex: return new MemberIndexNode(next, d, l, r, (String) special);
+            case PlusImm:
+            case MinusImm:
+            {
+                int imm = ((Integer) special).intValue();
+                if (s.getOp() == SSAStatement.Op.MinusImm) imm = -imm;
+                if (pm.kind[d] == INT && pm.kind[l] == INT)
+                    return new PrimPlusImmNode(next, d, l, imm);
+                return new PlusImmNode(next, d, l, imm);
+            }
+
+            default:
+                break;
+        }
+
+        // with unboxed operands and result, operators work on prims directly
+        boolean intOperands = (l >= 0 && r >= 0 && pm.kind[l] == INT && pm.kind[r] == INT);
+        boolean prim = intOperands && pm.kind[d] == ((s.getOp() == SSAStatement.Op.Lt ||
+            s.getOp() == SSAStatement.Op.Le || s.getOp() == SSAStatement.Op.Gt ||
+            s.getOp() == SSAStatement.Op.Ge) ? BOOLEAN : INT);
+
+        switch (s.getOp()) {
+            case Lt: return prim ? new PrimLtNode(next, d, l, r) : new LtNode(next, d, l, r);
+            case Le: return prim ? new PrimLeNode(next, d, l, r) : new LeNode(next, d, l, r);
+            case Gt: return prim ? new PrimLtNode(next, d, r, l) : new GtNode(next, d, l, r);
+            case Ge: return prim ? new PrimLeNode(next, d, r, l) : new GeNode(next, d, l, r);
+            case Plus: return prim ? new PrimPlusNode(next, d, l, r) : new PlusNode(next, d, l, r);
+            case Minus: return prim ? new PrimMinusNode(next, d, l, r) : new MinusNode(next, d, l, r);
+            case Mul: return prim ? new PrimMulNode(next, d, l, r) : new MulNode(next, d, l, r);
+            case Div: return new DivNode(next, d, l, r);
+            case Mod: return new ModNode(next, d, l, r);
+            case And: return new AndNode(next, d, l, r);
+            case Or: return new OrNode(next, d, l, r);
+            case Eq: return new EqNode(next, d, l, r, false);
+            case Ne: return new EqNode(next, d, l, r, true);
+
+            default:
+                // only an error if it's ever run
+                return new FailNode(s.getOp());
+        }
+    }
+
+    // a node that writes register d from registers l and r, then goes on to next
+    private static abstract class OpNode extends Node {
+        final int next, d, l, r;
+        OpNode(int next, int d, int l, int r) {
+            this.next = next;
+            this.d = d;
+            this.l = l;
+            this.r = r;
+        }
+    }
+
+    private static class MoveNode extends OpNode {
+        MoveNode(int next, int d, int l) { super(next, d, l, -1); }
+        int exec(StackFrame f) { f.move(d, f, l); return next; }
+    }
+
+    private static class RefMoveNode extends OpNode {
+        RefMoveNode(int next, int d, int l) { super(next, d, l, -1); }
+        int exec(StackFrame f) { f.refs[d] = f.refs[l]; return next; }
+    }
+
+    private static class PrimMoveNode extends OpNode {
+        PrimMoveNode(int next, int d, int l) { super(next, d, l, -1); }
+        int exec(StackFrame f) { f.prims[d] = f.prims[l]; return next; }
+    }
+
+    private static class ThisNode extends OpNode {
+        ThisNode(int next, int d) { super(next, d, -1, -1); }
+        int exec(StackFrame f) { f.put(d, f.thiz); return next; }
+    }
+
+    private static class ConstNode extends OpNode {
+        final Object value;
+        ConstNode(int next, int d, Object value) { super(next, d, -1, -1); this.value = value; }
+        int exec(StackFrame f) { f.put(d, value); return next; }
+    }
+
+    private static class PrimConstNode extends OpNode {
+        final long value;
+        PrimConstNode(int next, int d, long value) { super(next, d, -1, -1); this.value = value; }
+        int exec(StackFrame f) { f.prims[d] = value; return next; }
+    }
+
+    private class NewObjNode extends OpNode {
+        final String name;
+        ClassInfo cls;
+        NewObjNode(int next, int d, String name) { super(next, d, -1, -1); this.name = name; }
+        int exec(StackFrame f) {
+            if (cls == null) cls = classInfo(name);
+            f.put(d, newObject(cls));
+            return next;
+        }
+    }
+
+    private class NewIntArrayNode extends OpNode {
+        NewIntArrayNode(int next, int d, int l) { super(next, d, l, -1); }
+        int exec(StackFrame f) { f.put(d, newIntArray(f.getInt(l))); return next; }
+    }
+
+    private static class GotoNode extends Node {
+        final int target;
+        GotoNode(int target) { this.target = target; }
+        int exec(StackFrame f) { return target; }
+    }
+
+    private static class BranchNode extends OpNode {
+        final int ifTrue, ifFalse;
+        BranchNode(int next, int l, int ifTrue, int ifFalse) {
+            super(next, -1, l, -1);
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+        int exec(StackFrame f) { return f.getBoolean(l) ? ifTrue : ifFalse; }
+    }
+
+    private static class PrimBranchNode extends BranchNode {
+        PrimBranchNode(int next, int l, int ifTrue, int ifFalse) { super(next, l, ifTrue, ifFalse); }
+        int exec(StackFrame f) { return (f.prims[l] != 0) ? ifTrue : ifFalse; }
+    }
+
+    private class CallNode extends OpNode {
+        final CallSite site;
+        final int[] args;
+        CallNode(int next, int d, int l, CallSite site, int[] args) {
+            super(next, d, l, -1);
+            this.site = site;
+            this.args = args;
+        }
+        int exec(StackFrame f) {
+            IntObject thiz = (IntObject) f.refs[l];
+            invoke(dispatch(site, thiz, args.length), thiz, f, args, d);
+            return next;
+        }
+    }
+
+    private class PrintNode extends OpNode {
+        PrintNode(int next, int l) { super(next, -1, l, -1); }
+        int exec(StackFrame f) {
+            if (f.kind[l] == INT)
+                out.println((int) f.prims[l]);
+            else
+                out.println(f.get(l));
+            return next;
+        }
+    }
+
+    private static class ReturnNode extends Node {
+        final int l;
+        ReturnNode(int l) { this.l = l; }
+        int exec(StackFrame f) { return -2 - l; }
+    }
+
+    private static class MemberNode extends OpNode {
+        final String field;
+        ClassInfo cls;
+        int idx;
+        MemberNode(int next, int d, int l, String field) { super(next, d, l, -1); this.field = field; }
+        int exec(StackFrame f) {
+            Object target = f.refs[l];
+            if (target instanceof int[] && field.equals("length")) {
+                f.putInt(d, ((int[]) target).length);
             } else {
-                results.put(s, result);
+                IntObject obj = (IntObject) target;
+                if (obj.cls != cls) {
+                    idx = obj.cls.fieldIndex(field);
+                    cls = obj.cls;
+                }
+                f.put(d, obj.fields[idx]);
+            }
+            return next;
+        }
+    }
+
+    private static class IndexNode extends OpNode {
+        IndexNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, ((int[]) f.refs[l])[f.getInt(r)]); return next; }
+    }
+
+    private static class MemberAssgNode extends OpNode {
+        final String field;
+        ClassInfo cls;
+        int idx;
+        MemberAssgNode(int next, int d, int l, int r, String field) { super(next, d, l, r); this.field = field; }
+        int exec(StackFrame f) {
+            IntObject obj = (IntObject) f.refs[l];
+            if (obj.cls != cls) {
+                idx = obj.cls.fieldIndex(field);
+                cls = obj.cls;
+            }
+            obj.fields[idx] = f.get(r);
+            f.move(d, f, r);
+            return next;
+        }
+    }
+
+    private static class IndexAssgNode extends OpNode {
+        final int index;
+        IndexAssgNode(int next, int d, int l, int r, int index) { super(next, d, l, r); this.index = index; }
+        int exec(StackFrame f) {
+            int[] arr = (int[]) f.refs[l];
+            arr[f.getInt(index)] = f.getInt(r);
+            f.move(d, f, r);
+            return next;
+        }
+    }
+
+    private static class NotNode extends OpNode {
+        NotNode(int next, int d, int l) { super(next, d, l, -1); }
+        int exec(StackFrame f) { f.putBoolean(d, !f.getBoolean(l)); return next; }
+    }
+
+    private static class LtNode extends OpNode {
+        LtNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getInt(l) < f.getInt(r)); return next; }
+    }
+
+    private static class LeNode extends OpNode {
+        LeNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getInt(l) <= f.getInt(r)); return next; }
+    }
+
+    private static class GtNode extends OpNode {
+        GtNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getInt(l) > f.getInt(r)); return next; }
+    }
+
+    private static class GeNode extends OpNode {
+        GeNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getInt(l) >= f.getInt(r)); return next; }
+    }
+
+    private static class PlusNode extends OpNode {
+        PlusNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) + f.getInt(r)); return next; }
+    }
+
+    private static class MinusNode extends OpNode {
+        MinusNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) - f.getInt(r)); return next; }
+    }
+
+    private static class MulNode extends OpNode {
+        MulNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) * f.getInt(r)); return next; }
+    }
+
+    // Gt and Ge are Lt and Le with their operands swapped
+    private static class PrimLtNode extends OpNode {
+        PrimLtNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.prims[d] = (f.prims[l] < f.prims[r]) ? 1 : 0; return next; }
+    }
+
+    private static class PrimLeNode extends OpNode {
+        PrimLeNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.prims[d] = (f.prims[l] <= f.prims[r]) ? 1 : 0; return next; }
+    }
+
+    private static class PrimPlusNode extends OpNode {
+        PrimPlusNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.prims[d] = (int) (f.prims[l] + f.prims[r]); return next; }
+    }
+
+    private static class PrimMinusNode extends OpNode {
+        PrimMinusNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.prims[d] = (int) (f.prims[l] - f.prims[r]); return next; }
+    }
+
+    private static class PrimMulNode extends OpNode {
+        PrimMulNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.prims[d] = (int) f.prims[l] * (int) f.prims[r]; return next; }
+    }
+
+    private static class DivNode extends OpNode {
+        DivNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) / f.getInt(r)); return next; }
+    }
+
+    private static class ModNode extends OpNode {
+        ModNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) % f.getInt(r)); return next; }
+    }
+
+    private static class AndNode extends OpNode {
+        AndNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getBoolean(l) && f.getBoolean(r)); return next; }
+    }
+
+    private static class OrNode extends OpNode {
+        OrNode(int next, int d, int l, int r) { super(next, d, l, r); }
+        int exec(StackFrame f) { f.putBoolean(d, f.getBoolean(l) || f.getBoolean(r)); return next; }
+    }
+
+    private static class EqNode extends OpNode {
+        final boolean negate;
+        EqNode(int next, int d, int l, int r, boolean negate) { super(next, d, l, r); this.negate = negate; }
+        int exec(StackFrame f) { f.putBoolean(d, equal(f, l, r) != negate); return next; }
+    }
+
+    // Gt and Ge branches are Lt and Le with their operands swapped
+    private static class BranchLtNode extends OpNode {
+        final int ifTrue, ifFalse;
+        BranchLtNode(int next, int l, int r, int ifTrue, int ifFalse) {
+            super(next, -1, l, r);
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+        int exec(StackFrame f) { return (f.getInt(l) < f.getInt(r)) ? ifTrue : ifFalse; }
+    }
+
+    private static class BranchLeNode extends OpNode {
+        final int ifTrue, ifFalse;
+        BranchLeNode(int next, int l, int r, int ifTrue, int ifFalse) {
+            super(next, -1, l, r);
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+        int exec(StackFrame f) { return (f.getInt(l) <= f.getInt(r)) ? ifTrue : ifFalse; }
+    }
+
+    // MinusImm is PlusImm of the negated constant
+    private static class PlusImmNode extends OpNode {
+        final int imm;
+        PlusImmNode(int next, int d, int l, int imm) { super(next, d, l, -1); this.imm = imm; }
+        int exec(StackFrame f) { f.putInt(d, f.getInt(l) + imm); return next; }
+    }
+
+    private static class PrimPlusImmNode extends OpNode {
+        final int imm;
+        PrimPlusImmNode(int next, int d, int l, int imm) { super(next, d, l, -1); this.imm = imm; }
+        int exec(StackFrame f) { f.prims[d] = (int) f.prims[l] + imm; return next; }
+    }
+
+    private static class MemberIndexNode extends OpNode {
+        final String field;
+        ClassInfo cls;
+        int idx;
+        MemberIndexNode(int next, int d, int l, int r, String field) { super(next, d, l, r); this.field = field; }
+        int exec(StackFrame f) {
+            IntObject obj = (IntObject) f.refs[l];
+            if (obj.cls != cls) {
+                idx = obj.cls.fieldIndex(field);
+                cls = obj.cls;
             }
+            f.putInt(d, ((int[]) obj.fields[idx])[f.getInt(r)]);
+            return next;
         }
+    }
 
-        return null;
+    private static class FailNode extends Node {
+        final SSAStatement.Op op;
+        FailNode(SSAStatement.Op op) { this.op = op; }
+        int exec(StackFrame f) { throw new Error("Implement SSA interpreter for " + op); }
     }
 }
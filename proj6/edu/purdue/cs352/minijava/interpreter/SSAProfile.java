@@ -0,0 +1,210 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+import java.io.*;
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Execution profile for SSAInterpreter: how many times each op was run,
+ * time spent in each method, and how many times each method called each
+ * other one. The interpreter calls enter and exit around every method
+ * activation, and counts ops straight into opCounts. */
+public class SSAProfile {
+    final long[] opCounts = new long[SSAStatement.Op.values().length];
+
+    private static class MethodStats {
+        final String name;
+        long calls, inclusive, exclusive;
+
+        // activations of this method currently running, so recursion isn't counted twice
+        int active;
+
+        // calls made from this method, by callee
+        final Map<MethodStats, long[]> callees = new LinkedHashMap<MethodStats, long[]>();
+
+        MethodStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Activation {
+        MethodStats method;
+        long start, children;
+    }
+
+    private final Map<SSAMethod, MethodStats> methods = new IdentityHashMap<SSAMethod, MethodStats>();
+    private final Map<SSAMethod, String> names = new IdentityHashMap<SSAMethod, String>();
+    private Activation[] stack = new Activation[16];
+    private int depth;
+
+    public SSAProfile(SSAProgram prog) {
+        names.put(prog.getMain(), "main");
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                names.put(m, cl.getASTNode().getName() + "." + m.getMethod().getName());
+        }
+    }
+
+    private MethodStats stats(SSAMethod m) {
+        MethodStats ms = methods.get(m);
+        if (ms == null) {
+            String name = names.get(m);
+            ms = new MethodStats(name == null ? m.getMethod().getName() : name);
+            methods.put(m, ms);
+        }
+        return ms;
+    }
+
+    // an activation of m starts, called from the current one (if any)
+    public void enter(SSAMethod m) {
+        MethodStats ms = stats(m);
+        ms.calls++;
+        ms.active++;
+        if (depth > 0) {
+            MethodStats caller = stack[depth - 1].method;
+            long[] count = caller.callees.get(ms);
+            if (count == null) caller.callees.put(ms, count = new long[1]);
+            count[0]++;
+        }
+
+        if (depth == stack.length)
+            stack = Arrays.copyOf(stack, depth * 2);
+        Activation a = stack[depth];
+        if (a == null) a = stack[depth] = new Activation();
+        depth++;
+        a.method = ms;
+        a.children = 0;
+        a.start = System.nanoTime();
+    }
+
+    // the current activation returns
+    public void exit() {
+        long now = System.nanoTime();
+        Activation a = stack[--depth];
+        long time = now - a.start;
+        MethodStats ms = a.method;
+        ms.exclusive += time - a.children;
+        if (--ms.active == 0)
+            ms.inclusive += time;
+        if (depth > 0)
+            stack[depth - 1].children += time;
+    }
+
+    // close any activations left open by an error, so the report adds up
+    public void unwind() {
+        while (depth > 0)
+            exit();
+    }
+
+    private List<MethodStats> methodsByExclusive() {
+        List<MethodStats> ret = new ArrayList<MethodStats>(methods.values());
+        Collections.sort(ret, new Comparator<MethodStats>() {
+            public int compare(MethodStats a, MethodStats b) {
+                return Long.compare(b.exclusive, a.exclusive);
+            }
+        });
+        return ret;
+    }
+
+    private List<SSAStatement.Op> opsByCount() {
+        List<SSAStatement.Op> ret = new ArrayList<SSAStatement.Op>();
+        for (SSAStatement.Op op : SSAStatement.Op.values()) {
+            if (opCounts[op.ordinal()] > 0)
+                ret.add(op);
+        }
+        Collections.sort(ret, new Comparator<SSAStatement.Op>() {
+            public int compare(SSAStatement.Op a, SSAStatement.Op b) {
+                return Long.compare(opCounts[b.ordinal()], opCounts[a.ordinal()]);
+            }
+        });
+        return ret;
+    }
+
+    // every call edge, most frequent first, as {caller, callee, count}
+    private List<Object[]> edgesByCount() {
+        List<Object[]> ret = new ArrayList<Object[]>();
+        for (MethodStats caller : methods.values()) {
+            for (Map.Entry<MethodStats, long[]> e : caller.callees.entrySet())
+                ret.add(new Object[]{caller, e.getKey(), e.getValue()});
+        }
+        Collections.sort(ret, new Comparator<Object[]>() {
+            public int compare(Object[] a, Object[] b) {
+                return Long.compare(((long[]) b[2])[0], ((long[]) a[2])[0]);
+            }
+        });
+        return ret;
+    }
+
+    public void printReport(PrintStream out) {
+        long total = 0;
+        for (long c : opCounts) total += c;
+
+        out.println("op                    count      %");
+        for (SSAStatement.Op op : opsByCount()) {
+            long c = opCounts[op.ordinal()];
+            out.println(String.format("%-12s %14d %6.2f", op, c, 100.0 * c / total));
+        }
+        out.println(String.format("%-12s %14d", "total", total));
+        out.println();
+
+        out.println("method                             calls  inclusive ms  exclusive ms");
+        for (MethodStats ms : methodsByExclusive()) {
+            out.println(String.format("%-30s %9d %13.3f %13.3f",
+                ms.name, ms.calls, ms.inclusive / 1e6, ms.exclusive / 1e6));
+        }
+        out.println();
+
+        out.println("caller                         callee                             calls");
+        for (Object[] e : edgesByCount()) {
+            out.println(String.format("%-30s %-30s %9d",
+                ((MethodStats) e[0]).name, ((MethodStats) e[1]).name, ((long[]) e[2])[0]));
+        }
+    }
+
+    public void writeJSON(Writer out) throws IOException {
+        PrintWriter pw = new PrintWriter(out);
+        pw.println("{");
+
+        pw.println("  \"ops\": {");
+        List<SSAStatement.Op> ops = opsByCount();
+        for (int i = 0; i < ops.size(); i++) {
+            pw.print("    " + quote(ops.get(i).toString()) + ": " + opCounts[ops.get(i).ordinal()]);
+            pw.println(i < ops.size() - 1 ? "," : "");
+        }
+        pw.println("  },");
+
+        pw.println("  \"methods\": [");
+        List<MethodStats> ms = methodsByExclusive();
+        for (int i = 0; i < ms.size(); i++) {
+            MethodStats m = ms.get(i);
+            pw.print("    {\"name\": " + quote(m.name) + ", \"calls\": " + m.calls +
+                ", \"inclusiveNanos\": " + m.inclusive + ", \"exclusiveNanos\": " + m.exclusive + "}");
+            pw.println(i < ms.size() - 1 ? "," : "");
+        }
+        pw.println("  ],");
+
+        pw.println("  \"edges\": [");
+        List<Object[]> edges = edgesByCount();
+        for (int i = 0; i < edges.size(); i++) {
+            Object[] e = edges.get(i);
+            pw.print("    {\"caller\": " + quote(((MethodStats) e[0]).name) +
+                ", \"callee\": " + quote(((MethodStats) e[1]).name) +
+                ", \"calls\": " + ((long[]) e[2])[0] + "}");
+            pw.println(i < edges.size() - 1 ? "," : "");
+        }
+        pw.println("  ]");
+
+        pw.println("}");
+        pw.flush();
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') sb.append('\\');
+            sb.append(c);
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
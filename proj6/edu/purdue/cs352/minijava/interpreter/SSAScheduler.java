@@ -0,0 +1,235 @@
+package edu.purdue.cs352.minijava.interpreter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.parser.*;
+import edu.purdue.cs352.minijava.ssa.*;
+import edu.purdue.cs352.minijava.SSACompiler;
+import edu.purdue.cs352.minijava.TypeChecker;
+
+/* Runs many programs side by side, each with its own SSAInterpreter,
+ * budgets and output. A fixed pool of worker threads (one per core by
+ * default) takes turns running each program for a slice of statements with
+ * SSAInterpreter.step, putting it back on the run queue if it hasn't
+ * finished, so thousands of programs share a few threads and a program that
+ * never ends only ever holds one of them for a slice. Programs that use up
+ * their budgets are stopped by the interpreter itself, at the same
+ * statement every time. */
+public class SSAScheduler {
+    public static final long DEFAULT_SLICE = 100000;
+
+    // one program, and once it's done, how it went
+    public static class Job {
+        public enum Status { WAITING, OK, INSTRUCTION_LIMIT, OBJECT_LIMIT, HEAP_LIMIT, STACK_OVERFLOW, ERROR }
+
+        public final String name;
+        final SSAInterpreter interp;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        volatile Status status = Status.WAITING;
+        String error;
+        long nanos, slices;
+
+        Job(String name, SSAInterpreter interp) {
+            this.name = name;
+            this.interp = interp;
+            interp.setOutput(new BufferedOutputSink(output));
+        }
+
+        public Status getStatus() { return status; }
+        public String getError() { return error; }
+        public long getInstructions() { return interp.getInstructionCount(); }
+        public HeapAccount getHeapAccount() { return interp.getHeapAccount(); }
+        public long getNanos() { return nanos; }
+        public long getSlices() { return slices; }
+
+        // everything the program printed
+        public String getOutput() {
+            synchronized (output) {
+                return output.toString();
+            }
+        }
+    }
+
+    private final int threads;
+    private final long slice;
+    private final List<Job> jobs = new ArrayList<Job>();
+
+    public SSAScheduler(int threads, long slice) {
+        this.threads = threads;
+        this.slice = slice;
+    }
+
+    public SSAScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_SLICE);
+    }
+
+    // add a program to be run (budgets of 0 mean no limit)
+    public Job submit(String name, SSAProgram prog, long instructionBudget, long objectBudget, long heapBudget) {
+        SSAInterpreter interp = new SSAInterpreter(prog);
+        interp.setInstructionBudget(instructionBudget);
+        interp.setHeapAccount(new HeapAccount(objectBudget, heapBudget, true));
+        Job job = new Job(name, interp);
+        jobs.add(job);
+        return job;
+    }
+
+    public List<Job> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    // run every submitted program to completion (or to its limits)
+    public void run() throws InterruptedException {
+        final BlockingQueue<Job> runQueue = new LinkedBlockingQueue<Job>();
+        final AtomicInteger running = new AtomicInteger();
+        for (Job job : jobs) {
+            if (job.status == Job.Status.WAITING) {
+                runQueue.add(job);
+                running.incrementAndGet();
+            }
+        }
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread("mj-worker-" + i) {
+                public void run() {
+                    try {
+                        while (running.get() > 0) {
+                            Job job = runQueue.poll(10, TimeUnit.MILLISECONDS);
+                            if (job == null)
+                                continue;
+                            if (runSlice(job))
+                                running.decrementAndGet();
+                            else
+                                runQueue.add(job);
+                        }
+                    } catch (InterruptedException ex) {
+                        // just stop
+                    }
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        for (Thread worker : workers)
+            worker.join();
+    }
+
+    // give a job one slice, returning whether it has finished
+    private boolean runSlice(Job job) {
+        long start = System.nanoTime();
+        boolean done = true;
+        try {
+            synchronized (job.output) {
+                done = job.interp.step(slice);
+            }
+            if (done) job.status = Job.Status.OK;
+
+        } catch (LimitExceededError ex) {
+            switch (ex.getResource()) {
+                case INSTRUCTIONS: job.status = Job.Status.INSTRUCTION_LIMIT; break;
+                case OBJECTS: job.status = Job.Status.OBJECT_LIMIT; break;
+                default: job.status = Job.Status.HEAP_LIMIT; break;
+            }
+            job.error = ex.getMessage();
+
+        } catch (StackOverflowError ex) {
+            job.status = Job.Status.STACK_OVERFLOW;
+            job.error = ex.getMessage();
+
+        } catch (RuntimeException | Error ex) {
+            // anything else is the program's own fault
+            job.status = Job.Status.ERROR;
+            job.error = ex.toString();
+
+        } finally {
+            job.nanos += System.nanoTime() - start;
+            job.slices++;
+        }
+        return done;
+    }
+
+
+    public static void usage() {
+        System.out.println("Use: mjsandbox [-t] [-threads=<N>] [-slice=<N>] [-fuel=<N>] [-objects=<N>]\n" +
+            "                [-heap=<MB>] <input files...>");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        List<String> files = new ArrayList<String>();
+        boolean typeCheck = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long slice = DEFAULT_SLICE;
+        long fuel = 0, objects = 0, heap = 0;
+
+        try {
+            for (String arg : args) {
+                if (arg.equals("-t")) {
+                    typeCheck = true;
+                } else if (arg.startsWith("-threads=")) {
+                    threads = Integer.parseInt(arg.substring(9));
+                } else if (arg.startsWith("-slice=")) {
+                    slice = Long.parseLong(arg.substring(7));
+                } else if (arg.startsWith("-fuel=")) {
+                    fuel = Long.parseLong(arg.substring(6));
+                } else if (arg.startsWith("-objects=")) {
+                    objects = Long.parseLong(arg.substring(9));
+                } else if (arg.startsWith("-heap=")) {
+                    heap = Long.parseLong(arg.substring(6)) << 20;
+                } else if (arg.startsWith("-")) {
+                    usage();
+                    return;
+                } else {
+                    files.add(arg);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            usage();
+            return;
+        }
+        if (files.isEmpty() || threads < 1 || slice < 1) {
+            usage();
+            return;
+        }
+
+        SSAScheduler sched = new SSAScheduler(threads, slice);
+        for (String fname : files) {
+            SSAProgram prog;
+            try {
+                ParserAST parser = new ParserAST(new FileInputStream(fname));
+                prog = SSACompiler.compile(parser.Program());
+            } catch (FileNotFoundException ex) {
+                System.out.println("== " + fname + ": not found");
+                continue;
+            } catch (ParseException ex) {
+                System.out.println("== " + fname + ": " + ex.getMessage());
+                continue;
+            }
+
+            if (typeCheck) {
+                TypeChecker tc = new TypeChecker(prog);
+                tc.typeCheck();
+            }
+
+            sched.submit(fname, prog, fuel, objects, heap);
+        }
+
+        sched.run();
+
+        for (Job job : sched.getJobs()) {
+            System.out.println("== " + job.name + ": " + job.getStatus() +
+                " (" + job.getInstructions() + " instructions, " +
+                job.getSlices() + " slices, " +
+                String.format("%.3f", job.getNanos() / 1e6) + " ms; " +
+                job.getHeapAccount() + ")");
+            if (job.getError() != null)
+                System.out.println(job.getError());
+            System.out.print(job.getOutput());
+        }
+    }
+}
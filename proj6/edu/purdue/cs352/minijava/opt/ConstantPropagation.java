@@ -0,0 +1,427 @@
+package edu.purdue.cs352.minijava.opt;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Sparse conditional constant propagation (Wegman and Zadeck), over a
+ * program in Phi form (see SSAPhiForm).
+ *
+ * Every value starts out unknown, and blocks start out unreachable. Values
+ * are only computed in blocks that have been reached, and a branch only
+ * reaches the side(s) its condition allows, so a constant that's only
+ * defeated on a path that's never taken is still found. Then:
+ *
+ *  - statements with a constant value become Int or Boolean,
+ *  - a branch on a constant becomes a Goto, or goes away,
+ *  - blocks that were never reached are removed, along with their Phi
+ *    inputs.
+ *
+ * Div and Mod are only folded if they can't trap, so dividing by zero still
+ * fails at run time, and so does MIN_VALUE / -1 where the machine traps on
+ * it. Operands of folded statements are left for DeadCodeElimination. */
+public class ConstantPropagation {
+    // what was done, so frontends can report it
+    public static class Stats {
+        public int folded, branches, blocks;
+
+        public void add(Stats other) {
+            folded += other.folded;
+            branches += other.branches;
+            blocks += other.blocks;
+        }
+
+        @Override public String toString() {
+            return folded + " statements folded, " +
+                branches + " branches resolved, " +
+                blocks + " unreachable blocks removed";
+        }
+    }
+
+    // the lattice: unknown (not yet seen), a constant (Integer or Boolean), or not constant
+    private static final Object UNKNOWN = new Object(), VARYING = new Object();
+
+    SSAControlFlowGraph cfg;
+    Map<SSAStatement, Object> values = new HashMap<SSAStatement, Object>();
+    Map<SSAStatement, List<SSAStatement>> users = new HashMap<SSAStatement, List<SSAStatement>>();
+    Map<SSAStatement, SSABlock> blockOf = new HashMap<SSAStatement, SSABlock>();
+
+    // reached blocks and edges, by block number
+    boolean[] reached;
+    boolean[][] edges;
+
+    Deque<SSABlock> blockWork = new ArrayDeque<SSABlock>();
+    Deque<SSAStatement> valueWork = new ArrayDeque<SSAStatement>();
+
+    private ConstantPropagation() {}
+
+    public static Stats propagate(SSAProgram prog) {
+        Stats stats = new Stats();
+        new ConstantPropagation().propagate(prog.getMain(), stats);
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                new ConstantPropagation().propagate(m, stats);
+        }
+        return stats;
+    }
+
+    private void propagate(SSAMethod m, Stats stats) {
+        cfg = m.getControlFlowGraph();
+        List<SSABlock> blocks = cfg.getBlocks();
+        if (blocks.isEmpty()) return;
+
+        reached = new boolean[blocks.size()];
+        edges = new boolean[blocks.size()][];
+        for (SSABlock b : blocks) {
+            edges[b.getNumber()] = new boolean[b.getSuccessors().length];
+            for (SSAStatement s : b.getStatements()) {
+                blockOf.put(s, b);
+                for (SSAStatement operand : operands(s))
+                    usersOf(operand).add(s);
+            }
+        }
+
+        reach(cfg.getEntry());
+        boolean stuck = true;
+        while (stuck) {
+            solve();
+
+            // a branch on a value that never became known (it's undefined) could go either way
+            stuck = false;
+            for (SSABlock b : blocks) {
+                boolean[] out = edges[b.getNumber()];
+                if (!reached[b.getNumber()] || out.length == 0 || out[0] || (out.length > 1 && out[1]))
+                    continue;
+                for (int si = 0; si < out.length; si++)
+                    reachEdge(b, si);
+                stuck = true;
+            }
+        }
+
+        rewrite(m, stats);
+    }
+
+    private void solve() {
+        while (!blockWork.isEmpty() || !valueWork.isEmpty()) {
+            while (!blockWork.isEmpty()) {
+                for (SSAStatement s : blockWork.pop().getStatements())
+                    visit(s);
+            }
+            while (!valueWork.isEmpty()) {
+                for (SSAStatement user : usersOf(valueWork.pop())) {
+                    if (reached[blockOf.get(user).getNumber()])
+                        visit(user);
+                }
+            }
+        }
+    }
+
+    private static List<SSAStatement> operands(SSAStatement s) {
+        List<SSAStatement> operands = new ArrayList<SSAStatement>();
+        if (s.getLeft() != null) operands.add(s.getLeft());
+        if (s.getRight() != null) operands.add(s.getRight());
+        if (s.getSpecial() instanceof SSAStatement) operands.add((SSAStatement) s.getSpecial());
+        if (s.getSpecial() instanceof SSAPhi) {
+            for (SSAStatement arg : ((SSAPhi) s.getSpecial()).getArgs()) {
+                if (arg != null) operands.add(arg);
+            }
+        }
+        return operands;
+    }
+
+    private List<SSAStatement> usersOf(SSAStatement s) {
+        List<SSAStatement> list = users.get(s);
+        if (list == null) users.put(s, list = new ArrayList<SSAStatement>());
+        return list;
+    }
+
+    private Object value(SSAStatement s) {
+        Object v = values.get(s);
+        return (v == null) ? UNKNOWN : v;
+    }
+
+    private void reach(SSABlock b) {
+        if (reached[b.getNumber()]) return;
+        reached[b.getNumber()] = true;
+        blockWork.push(b);
+    }
+
+    private void reachEdge(SSABlock from, int succ) {
+        if (edges[from.getNumber()][succ]) return;
+        edges[from.getNumber()][succ] = true;
+        SSABlock to = from.getSuccessors()[succ];
+        if (reached[to.getNumber()]) {
+            // a new way in, so its Phis may change
+            for (SSAStatement s : to.getStatements()) {
+                if (s.getOp() == SSAStatement.Op.Phi) visit(s);
+            }
+        } else {
+            reach(to);
+        }
+    }
+
+    // is there a reached edge from pred to b?
+    private boolean reached(SSABlock pred, SSABlock b) {
+        SSABlock[] succs = pred.getSuccessors();
+        for (int si = 0; si < succs.length; si++) {
+            if (succs[si] == b && edges[pred.getNumber()][si]) return true;
+        }
+        return false;
+    }
+
+    private void visit(SSAStatement s) {
+        SSABlock b = blockOf.get(s);
+        if (s == last(b))
+            branch(s, b);
+
+        Object v = evaluate(s, b), old = value(s);
+        if (old == VARYING || v == UNKNOWN || v.equals(old))
+            return;
+        // values only ever move down the lattice, so a second constant means it varies
+        if (old != UNKNOWN) v = VARYING;
+        values.put(s, v);
+        valueWork.push(s);
+    }
+
+    private static SSAStatement last(SSABlock b) {
+        List<SSAStatement> statements = b.getStatements();
+        return statements.get(statements.size() - 1);
+    }
+
+    // follow the edges out of b that its last statement s can take
+    private void branch(SSAStatement s, SSABlock b) {
+        SSABlock[] succs = b.getSuccessors();
+        if (succs.length == 0) return;
+
+        Boolean taken = null;
+        switch (s.getOp()) {
+            case Branch:
+            case NBranch:
+            {
+                Object cond = value(s.getLeft());
+                if (cond == UNKNOWN) return;
+                if (cond instanceof Boolean)
+                    taken = ((Boolean) cond).booleanValue() == (s.getOp() == SSAStatement.Op.Branch);
+                break;
+            }
+
+            case BranchLt:
+            case BranchLe:
+            case BranchGt:
+            case BranchGe:
+            {
+                Object l = value(s.getLeft()), r = value(s.getRight());
+                if (l == UNKNOWN || r == UNKNOWN) return;
+                if (l instanceof Integer && r instanceof Integer)
+                    taken = (Boolean) compare(fusedCompare(s.getOp()), (Integer) l, (Integer) r);
+                break;
+            }
+
+            default:
+                // a Goto, or falling through (a Return has no successors)
+                reachEdge(b, 0);
+                return;
+        }
+
+        // the target is the first successor, and falling through the second (unless they're the same)
+        if (taken == null || succs.length == 1) {
+            for (int si = 0; si < succs.length; si++)
+                reachEdge(b, si);
+        } else if (taken) {
+            reachEdge(b, 0);
+        } else {
+            reachEdge(b, 1);
+        }
+    }
+
+    private static SSAStatement.Op fusedCompare(SSAStatement.Op op) {
+        switch (op) {
+            case BranchLt: return SSAStatement.Op.Lt;
+            case BranchLe: return SSAStatement.Op.Le;
+            case BranchGt: return SSAStatement.Op.Gt;
+            default: return SSAStatement.Op.Ge;
+        }
+    }
+
+    private Object evaluate(SSAStatement s, SSABlock b) {
+        Object special = s.getSpecial();
+        switch (s.getOp()) {
+            case Int:
+            case Boolean:
+                return special;
+
+            case Null:
+                if (special instanceof TypeInt) return Integer.valueOf(0);
+                if (special instanceof TypeBoolean) return Boolean.FALSE;
+                return VARYING;
+
+            case VarAssg:
+                return value(s.getLeft());
+
+            case Phi:
+            {
+                Object v = UNKNOWN;
+                List<SSAStatement> args = ((SSAPhi) special).getArgs();
+                SSABlock[] preds = b.getPredecessors();
+                for (int ai = 0; ai < args.size(); ai++) {
+                    if (args.get(ai) == null || !reached(preds[ai], b)) continue;
+                    v = meet(v, value(args.get(ai)));
+                }
+                return v;
+            }
+
+            case Not:
+            {
+                Object v = value(s.getLeft());
+                if (v instanceof Boolean) return Boolean.valueOf(!((Boolean) v));
+                return v;
+            }
+
+            case PlusImm:
+            case MinusImm:
+            {
+                Object v = value(s.getLeft());
+                if (!(v instanceof Integer)) return v;
+                int imm = ((Integer) special).intValue();
+                return (s.getOp() == SSAStatement.Op.PlusImm) ? (Integer) v + imm : (Integer) v - imm;
+            }
+
+            case And:
+            case Or:
+            {
+                // false && x and true || x don't depend on x
+                Object l = value(s.getLeft()), r = value(s.getRight());
+                Boolean decides = Boolean.valueOf(s.getOp() == SSAStatement.Op.Or);
+                if (decides.equals(l) || decides.equals(r)) return decides;
+                if (l == UNKNOWN || r == UNKNOWN) return UNKNOWN;
+                if (l instanceof Boolean && r instanceof Boolean) return r;
+                return VARYING;
+            }
+
+            case Lt: case Le: case Gt: case Ge: case Eq: case Ne:
+            case Plus: case Minus: case Mul: case Div: case Mod:
+            {
+                Object l = value(s.getLeft()), r = value(s.getRight());
+                if (l == UNKNOWN || r == UNKNOWN) return UNKNOWN;
+                if (l instanceof Integer && r instanceof Integer)
+                    return compute(s.getOp(), (Integer) l, (Integer) r);
+                if (l instanceof Boolean && r instanceof Boolean && (s.getOp() == SSAStatement.Op.Eq || s.getOp() == SSAStatement.Op.Ne))
+                    return Boolean.valueOf(l.equals(r) == (s.getOp() == SSAStatement.Op.Eq));
+                return VARYING;
+            }
+
+            default:
+                return VARYING;
+        }
+    }
+
+    private static Object meet(Object a, Object b) {
+        if (a == UNKNOWN) return b;
+        if (b == UNKNOWN) return a;
+        if (a == VARYING || b == VARYING || !a.equals(b)) return VARYING;
+        return a;
+    }
+
+    private static Object compute(SSAStatement.Op op, int l, int r) {
+        switch (op) {
+            case Plus: return l + r;
+            case Minus: return l - r;
+            case Mul: return l * r;
+            case Div:
+                if (r == 0 || (l == Integer.MIN_VALUE && r == -1)) return VARYING;
+                return l / r;
+            case Mod:
+                if (r == 0 || (l == Integer.MIN_VALUE && r == -1)) return VARYING;
+                return l % r;
+            default: return compare(op, l, r);
+        }
+    }
+
+    private static Object compare(SSAStatement.Op op, int l, int r) {
+        switch (op) {
+            case Lt: return l < r;
+            case Le: return l <= r;
+            case Gt: return l > r;
+            case Ge: return l >= r;
+            case Eq: return l == r;
+            case Ne: return l != r;
+            default: throw new Error("Not a comparison: " + op);
+        }
+    }
+
+    // can a statement with a constant value be replaced by the constant?
+    private static boolean foldable(SSAStatement.Op op) {
+        switch (op) {
+            case Null: case VarAssg: case Phi: case Not: case PlusImm: case MinusImm:
+            case And: case Or: case Lt: case Le: case Gt: case Ge: case Eq: case Ne:
+            case Plus: case Minus: case Mul: case Div: case Mod:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private void rewrite(SSAMethod m, Stats stats) {
+        // branches that can't be taken, or can't fall through
+        Set<SSAStatement> removed = new HashSet<SSAStatement>();
+        boolean edgesRemoved = false;
+
+        for (SSABlock b : cfg.getBlocks()) {
+            if (!reached[b.getNumber()]) {
+                stats.blocks++;
+                edgesRemoved = true;
+                continue;
+            }
+
+            for (SSAStatement s : b.getStatements()) {
+                Object v = value(s);
+                if ((v instanceof Integer || v instanceof Boolean) && foldable(s.getOp())) {
+                    s.setOp((v instanceof Integer) ? SSAStatement.Op.Int : SSAStatement.Op.Boolean);
+                    s.setLeft(null);
+                    s.setRight(null);
+                    s.setSpecial(v);
+                    stats.folded++;
+                }
+            }
+
+            SSAStatement last = last(b);
+            SSABlock[] succs = b.getSuccessors();
+            if (succs.length == 2 && last.getOp() != SSAStatement.Op.Goto) {
+                boolean jumps = edges[b.getNumber()][0], fallsThrough = edges[b.getNumber()][1];
+                if (jumps != fallsThrough) {
+                    if (jumps) {
+                        last.setOp(SSAStatement.Op.Goto);
+                        last.setLeft(null);
+                        last.setRight(null);
+                    } else {
+                        removed.add(last);
+                    }
+                    stats.branches++;
+                    edgesRemoved = true;
+                }
+            }
+        }
+        if (!edgesRemoved)
+            return;
+
+        // drop what can't be reached, and the Phi inputs that came from it
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>();
+        for (SSABlock b : cfg.getBlocks()) {
+            if (!reached[b.getNumber()]) continue;
+            for (SSAStatement s : b.getStatements()) {
+                if (removed.contains(s)) continue;
+                if (s.getOp() == SSAStatement.Op.Phi) {
+                    List<SSAStatement> args = ((SSAPhi) s.getSpecial()).getArgs();
+                    SSABlock[] preds = b.getPredecessors();
+                    for (int ai = args.size() - 1; ai >= 0; ai--) {
+                        if (!reached(preds[ai], b)) args.remove(ai);
+                    }
+                }
+                newBody.add(s);
+            }
+        }
+        m.setBody(newBody);
+    }
+}
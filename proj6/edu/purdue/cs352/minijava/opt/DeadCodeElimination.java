@@ -0,0 +1,183 @@
+package edu.purdue.cs352.minijava.opt;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Mark and sweep removal of statements whose values are never used.
+ *
+ * Statements that do something besides compute a value are always kept:
+ * calls, prints, member and index assignments, returns, control flow,
+ * parameters and stack traffic. So are computations that can fail, since
+ * removing them would remove the failure: Div and Mod unless the divisor is
+ * a constant other than 0 and -1, NewIntArray unless the size is a constant
+ * that isn't negative, Index, and Member of anything but this. Everything
+ * used by a kept statement is kept, and everything else is removed.
+ *
+ * Works on the Phi form (see SSAPhiForm) or on SSACompiler's Unify form.
+ * In the Unify form, using any statement of a unified group reads the
+ * group's location, so the whole group (Unify and Alias statements
+ * included) is kept or removed together. */
+public class DeadCodeElimination {
+    // what was removed, so frontends can report it
+    public static class Stats {
+        public Map<SSAStatement.Op, Integer> removed =
+            new EnumMap<SSAStatement.Op, Integer>(SSAStatement.Op.class);
+
+        public int total() {
+            int total = 0;
+            for (int count : removed.values())
+                total += count;
+            return total;
+        }
+
+        public void add(Stats other) {
+            for (Map.Entry<SSAStatement.Op, Integer> entry : other.removed.entrySet())
+                count(entry.getKey(), entry.getValue());
+        }
+
+        void count(SSAStatement.Op op, int n) {
+            Integer count = removed.get(op);
+            removed.put(op, (count == null) ? n : count + n);
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(total());
+            sb.append(" dead statements removed");
+            String sep = " (";
+            for (Map.Entry<SSAStatement.Op, Integer> entry : removed.entrySet()) {
+                sb.append(sep);
+                sb.append(entry.getValue());
+                sb.append(" ");
+                sb.append(entry.getKey());
+                sep = ", ";
+            }
+            if (!removed.isEmpty()) sb.append(")");
+            return sb.toString();
+        }
+    }
+
+    private DeadCodeElimination() {}
+
+    public static Stats eliminate(SSAProgram prog) {
+        Stats stats = new Stats();
+        eliminate(prog.getMain(), stats);
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                eliminate(m, stats);
+        }
+        return stats;
+    }
+
+    public static Stats eliminate(SSAMethod m) {
+        Stats stats = new Stats();
+        eliminate(m, stats);
+        return stats;
+    }
+
+    // must this statement be kept even if its value isn't used?
+    private static boolean critical(SSAStatement s) {
+        switch (s.getOp()) {
+            case Unify:
+            case Alias:
+            case This:
+            case Null:
+            case Int:
+            case Boolean:
+            case NewObj:
+            case VarAssg:
+            case Not:
+            case Lt: case Le: case Eq: case Ne: case Gt: case Ge:
+            case And: case Or:
+            case Plus: case Minus: case Mul:
+            case PlusImm: case MinusImm:
+            case Phi:
+                return false;
+
+            case Div:
+            case Mod:
+            {
+                Object divisor = constant(s.getRight());
+                return !(divisor instanceof Integer) || (Integer) divisor == 0 || (Integer) divisor == -1;
+            }
+
+            case NewIntArray:
+            {
+                Object size = constant(s.getLeft());
+                return !(size instanceof Integer) || (Integer) size < 0;
+            }
+
+            case Member:
+                return s.getLeft().getOp() != SSAStatement.Op.This;
+
+            default:
+                return true;
+        }
+    }
+
+    private static Object constant(SSAStatement s) {
+        if (s.getOp() == SSAStatement.Op.Int || s.getOp() == SSAStatement.Op.Boolean)
+            return s.getSpecial();
+        return null;
+    }
+
+    private static void eliminate(SSAMethod m, Stats stats) {
+        SSAStatement[] body = m.getBody().toArray(new SSAStatement[0]);
+        Map<SSAStatement, Integer> position = new HashMap<SSAStatement, Integer>();
+        for (int si = 0; si < body.length; si++)
+            position.put(body[si], si);
+
+        // the members of each unified group, if there are any
+        int[] groups = SSAUnification.groups(body);
+        List<List<Integer>> members = new ArrayList<List<Integer>>();
+        for (int gi = SSAUnification.count(groups); gi > 0; gi--)
+            members.add(new ArrayList<Integer>());
+        for (int si = 0; si < body.length; si++)
+            members.get(groups[si]).add(si);
+
+        boolean[] live = new boolean[body.length];
+        Deque<Integer> work = new ArrayDeque<Integer>();
+        for (int si = 0; si < body.length; si++) {
+            if (critical(body[si])) mark(si, live, work, members, groups);
+        }
+        while (!work.isEmpty()) {
+            SSAStatement s = body[work.pop()];
+            List<SSAStatement> operands = new ArrayList<SSAStatement>();
+            operands.add(s.getLeft());
+            operands.add(s.getRight());
+            Object special = s.getSpecial();
+            if (special instanceof SSAStatement)
+                operands.add((SSAStatement) special);
+            else if (special instanceof SSACall)
+                operands.addAll(((SSACall) special).getArgs());
+            else if (special instanceof SSAPhi)
+                operands.addAll(((SSAPhi) special).getArgs());
+            for (SSAStatement operand : operands) {
+                if (operand == null) continue;
+                Integer pos = position.get(operand);
+                if (pos == null)
+                    throw new Error("Operand " + operand + " of " + s + " is not in the method");
+                mark(pos, live, work, members, groups);
+            }
+        }
+
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>(body.length);
+        for (int si = 0; si < body.length; si++) {
+            if (live[si])
+                newBody.add(body[si]);
+            else
+                stats.count(body[si].getOp(), 1);
+        }
+        if (newBody.size() < body.length)
+            m.setBody(newBody);
+    }
+
+    private static void mark(int si, boolean[] live, Deque<Integer> work, List<List<Integer>> members, int[] groups) {
+        if (live[si]) return;
+        for (int member : members.get(groups[si])) {
+            live[member] = true;
+            work.push(member);
+        }
+    }
+}
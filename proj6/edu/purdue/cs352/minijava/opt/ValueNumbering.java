@@ -0,0 +1,280 @@
+package edu.purdue.cs352.minijava.opt;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ssa.*;
+
+/* Dominator-based global value numbering, over a program in Phi form (see
+ * SSAPhiForm), to remove computations that were already done.
+ *
+ * Each statement gets a value number, and a pure computation is looked up
+ * by its op and the value numbers of its operands in a table that holds
+ * what the dominating blocks computed. If it's there, every use of it
+ * uses the earlier statement instead, and it's removed. Commutative
+ * operators and mirrored comparisons (a > b is b < a) are looked up the
+ * same way around. A VarAssg has the number of its value, unless it
+ * changes the value's type, so i - 1 assigned to two variables is still
+ * one value. Constants and this are numbered by what they are, but never
+ * replaced, since keeping them live across blocks would only cost
+ * registers.
+ *
+ * Member and Index loads are also looked up by the state of the memory
+ * they read: the memory of each field name, and that of all arrays. A
+ * MemberAssg changes the memory of its field, an IndexAssg that of the
+ * arrays, and a Call all of it. A block with a single predecessor starts
+ * with the memory its predecessor ended with; any other block (a merge or
+ * a loop header) starts with memory that's unknown, so loads aren't
+ * reused across paths that could have stored.
+ *
+ * Reusing a Div, Mod, Member or Index that can fail is safe, since the one
+ * that dominates it would have failed first. Statements that only fed the
+ * removed ones are left for DeadCodeElimination. */
+public class ValueNumbering {
+    // what was removed, so frontends can report it
+    public static class Stats {
+        public int expressions, loads;
+
+        public void add(Stats other) {
+            expressions += other.expressions;
+            loads += other.loads;
+        }
+
+        @Override public String toString() {
+            return expressions + " redundant expressions and " +
+                loads + " redundant loads removed";
+        }
+    }
+
+    // the state of memory in a block, as numbers that change when it's stored to
+    private static class Memory {
+        int all, arrays;
+        Map<String, Integer> fields = new HashMap<String, Integer>();
+
+        Memory copy() {
+            Memory m = new Memory();
+            m.all = all;
+            m.arrays = arrays;
+            m.fields.putAll(fields);
+            return m;
+        }
+
+        int field(String name) {
+            Integer n = fields.get(name);
+            return (n == null) ? all : n;
+        }
+    }
+
+    Map<SSAStatement, Integer> numbers = new HashMap<SSAStatement, Integer>();
+    Map<List<Object>, SSAStatement> available = new HashMap<List<Object>, SSAStatement>();
+    Map<SSAStatement, SSAStatement> replacements = new HashMap<SSAStatement, SSAStatement>();
+    int nextNumber = 0;
+
+    private ValueNumbering() {}
+
+    public static Stats number(SSAProgram prog) {
+        Stats stats = new Stats();
+        new ValueNumbering().number(prog.getMain(), stats);
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                new ValueNumbering().number(m, stats);
+        }
+        return stats;
+    }
+
+    private void number(SSAMethod m, Stats stats) {
+        SSAControlFlowGraph cfg = m.getControlFlowGraph();
+        if (cfg.getReversePostorder().isEmpty()) return;
+
+        // walk the dominator tree, without recursing, taking back what each block added
+        Memory[] exits = new Memory[cfg.getBlocks().size()];
+        Deque<SSABlock> stack = new ArrayDeque<SSABlock>();
+        Deque<Integer> nextChild = new ArrayDeque<Integer>();
+        Deque<List<List<Object>>> added = new ArrayDeque<List<List<Object>>>();
+        SSABlock entry = cfg.getEntry();
+        stack.push(entry);
+        nextChild.push(0);
+        added.push(visit(entry, exits, stats));
+        while (!stack.isEmpty()) {
+            SSABlock b = stack.peek();
+            int ci = nextChild.pop();
+            if (ci < b.getDominatorChildren().size()) {
+                nextChild.push(ci + 1);
+                SSABlock child = b.getDominatorChildren().get(ci);
+                stack.push(child);
+                nextChild.push(0);
+                added.push(visit(child, exits, stats));
+            } else {
+                stack.pop();
+                for (List<Object> key : added.pop())
+                    available.remove(key);
+            }
+        }
+
+        if (replacements.isEmpty()) return;
+
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>();
+        for (SSAStatement s : m.getBody()) {
+            if (replacements.containsKey(s)) continue;
+            s.setLeft(replace(s.getLeft()));
+            s.setRight(replace(s.getRight()));
+            Object special = s.getSpecial();
+            if (special instanceof SSAStatement)
+                s.setSpecial(replace((SSAStatement) special));
+            else if (special instanceof SSACall)
+                replaceAll(((SSACall) special).getArgs());
+            else if (special instanceof SSAPhi)
+                replaceAll(((SSAPhi) special).getArgs());
+            newBody.add(s);
+        }
+        m.setBody(newBody);
+    }
+
+    private SSAStatement replace(SSAStatement s) {
+        SSAStatement to = (s == null) ? null : replacements.get(s);
+        return (to == null) ? s : to;
+    }
+
+    private void replaceAll(List<SSAStatement> list) {
+        for (int i = 0; i < list.size(); i++)
+            list.set(i, replace(list.get(i)));
+    }
+
+    // number a block's statements, returning the keys it made available
+    private List<List<Object>> visit(SSABlock b, Memory[] exits, Stats stats) {
+        SSABlock[] preds = b.getPredecessors();
+        Memory memory = (preds.length == 1 && exits[preds[0].getNumber()] != null) ?
+            exits[preds[0].getNumber()].copy() : fresh();
+        List<List<Object>> added = new ArrayList<List<Object>>();
+
+        for (SSAStatement s : b.getStatements()) {
+            switch (s.getOp()) {
+                case Call:
+                    memory = fresh();
+                    break;
+
+                case MemberAssg:
+                    memory.fields.put((String) s.getSpecial(), nextNumber++);
+                    break;
+
+                case IndexAssg:
+                    memory.arrays = nextNumber++;
+                    break;
+
+                case VarAssg:
+                    if (s.getType() != null && s.getType() == s.getLeft().getType())
+                        numbers.put(s, numberOf(s.getLeft()));
+                    break;
+
+                default:
+                    break;
+            }
+
+            List<Object> key = key(s, memory);
+            if (key == null) continue;
+            SSAStatement leader = available.get(key);
+            if (leader == null) {
+                available.put(key, s);
+                added.add(key);
+                numbers.put(s, numberOf(s));
+            } else if (replaceable(s.getOp())) {
+                replacements.put(s, leader);
+                numbers.put(s, numberOf(leader));
+                if (s.getOp() == SSAStatement.Op.Member || s.getOp() == SSAStatement.Op.Index)
+                    stats.loads++;
+                else
+                    stats.expressions++;
+            } else {
+                numbers.put(s, numberOf(leader));
+            }
+        }
+
+        exits[b.getNumber()] = memory;
+        return added;
+    }
+
+    private Memory fresh() {
+        Memory m = new Memory();
+        m.all = nextNumber++;
+        m.arrays = nextNumber++;
+        return m;
+    }
+
+    private int numberOf(SSAStatement s) {
+        Integer n = numbers.get(s);
+        if (n == null) {
+            n = nextNumber++;
+            numbers.put(s, n);
+        }
+        return n;
+    }
+
+    // may this statement be replaced by an earlier one with the same key?
+    private static boolean replaceable(SSAStatement.Op op) {
+        switch (op) {
+            case This:
+            case Int:
+            case Boolean:
+                return false;
+
+            default:
+                return true;
+        }
+    }
+
+    // what identifies this statement's value, or null if it's only equal to itself
+    private List<Object> key(SSAStatement s, Memory memory) {
+        SSAStatement.Op op = s.getOp();
+        switch (op) {
+            case This:
+                return Arrays.<Object>asList(op);
+
+            case Int:
+            case Boolean:
+                return Arrays.<Object>asList(op, s.getSpecial());
+
+            case Not:
+                return Arrays.<Object>asList(op, numberOf(s.getLeft()));
+
+            case PlusImm:
+            case MinusImm:
+                return Arrays.<Object>asList(op, numberOf(s.getLeft()), s.getSpecial());
+
+            case Plus:
+            case Mul:
+            case Eq:
+            case Ne:
+            case And:
+            case Or:
+            {
+                // commutative, so put the operands in order
+                int l = numberOf(s.getLeft()), r = numberOf(s.getRight());
+                return Arrays.<Object>asList(op, Math.min(l, r), Math.max(l, r));
+            }
+
+            case Gt:
+                return Arrays.<Object>asList(SSAStatement.Op.Lt, numberOf(s.getRight()), numberOf(s.getLeft()));
+
+            case Ge:
+                return Arrays.<Object>asList(SSAStatement.Op.Le, numberOf(s.getRight()), numberOf(s.getLeft()));
+
+            case Lt:
+            case Le:
+            case Minus:
+            case Div:
+            case Mod:
+                return Arrays.<Object>asList(op, numberOf(s.getLeft()), numberOf(s.getRight()));
+
+            case Member:
+            {
+                String name = (String) s.getSpecial();
+                return Arrays.<Object>asList(op, numberOf(s.getLeft()), name, memory.field(name));
+            }
+
+            case Index:
+                return Arrays.<Object>asList(op, numberOf(s.getLeft()), numberOf(s.getRight()), memory.arrays);
+
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+/* A basic block: a run of a method's body that's only entered at its first
+ * statement and only left after its last. See SSAControlFlowGraph. */
+public class SSABlock {
+    // position in the body's block order
+    int number;
+
+    // position in reverse postorder, or -1 if the block can't be reached
+    int rpo = -1;
+
+    // the statements, as body[start] to body[end - 1]
+    int start, end;
+    List<SSAStatement> statements;
+
+    // the label the block starts with, if any
+    String label;
+
+    SSABlock[] preds, succs;
+
+    // the immediate dominator (null for the entry and unreachable blocks) and the blocks it immediately dominates
+    SSABlock idom;
+    List<SSABlock> domChildren = new ArrayList<SSABlock>();
+
+    // pre- and postorder numbers in the dominator tree, for constant-time dominance checks
+    int domPre = -1, domPost = -1;
+
+    SSABlock(int number, int start, int end, List<SSAStatement> statements) {
+        this.number = number;
+        this.start = start;
+        this.end = end;
+        this.statements = statements;
+    }
+
+    public int getNumber() { return number; }
+    public int getReversePostorder() { return rpo; }
+    public boolean isReachable() { return rpo >= 0; }
+    public int getStart() { return start; }
+    public int getEnd() { return end; }
+    public List<SSAStatement> getStatements() { return statements; }
+    public String getLabel() { return label; }
+    public SSABlock[] getPredecessors() { return preds; }
+    public SSABlock[] getSuccessors() { return succs; }
+    public SSABlock getImmediateDominator() { return idom; }
+    public List<SSABlock> getDominatorChildren() { return domChildren; }
+
+    // the statement that ends the block, or null if it just falls through
+    public SSAStatement getTerminator() {
+        if (statements.isEmpty()) return null;
+        SSAStatement last = statements.get(statements.size() - 1);
+        return SSAControlFlowGraph.isTerminator(last.getOp()) ? last : null;
+    }
+
+    // does this block dominate the other? (every block dominates itself)
+    public boolean dominates(SSABlock other) {
+        if (domPre < 0 || other.domPre < 0) return false;
+        return domPre <= other.domPre && other.domPost <= domPost;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("B");
+        sb.append(number);
+        if (label != null) {
+            sb.append(" (");
+            sb.append(label);
+            sb.append(")");
+        }
+        return sb.toString();
+    }
+}
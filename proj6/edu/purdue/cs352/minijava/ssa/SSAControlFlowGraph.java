@@ -0,0 +1,305 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+/* The basic blocks of a method body, with their predecessors and
+ * successors, a reverse postorder and a dominator tree, so that analyses
+ * don't each have to rediscover them from the labels and branches.
+ *
+ * A block starts at the beginning of the body, at each Label, and after
+ * each Goto, branch or Return. A conditional branch whose target is also
+ * its fall through has that block as a successor only once.
+ *
+ * Dominators and dominance frontiers are computed with the algorithms of
+ * Cooper, Harvey and Kennedy ("A Simple, Fast Dominance Algorithm"), over
+ * the reachable blocks only.
+ *
+ * Get one with SSAMethod.getControlFlowGraph(), which builds it when it's
+ * first asked for and again whenever the body has changed. */
+public class SSAControlFlowGraph {
+    // the blocks in body order, and the reachable ones in reverse postorder
+    List<SSABlock> blocks = new ArrayList<SSABlock>();
+    List<SSABlock> rpo = new ArrayList<SSABlock>();
+
+    Map<String, SSABlock> labels = new HashMap<String, SSABlock>();
+
+    // the block of each statement, by body position
+    SSABlock[] blockAt;
+
+    // the dominance frontier of each block, by block number, made when first asked for
+    List<List<SSABlock>> frontiers;
+
+    // what the graph was built from, to tell whether the body has changed
+    List<SSAStatement> body;
+    SSAStatement[] statements;
+    SSAStatement.Op[] ops;
+    Object[] targets;
+
+    public SSAControlFlowGraph(List<SSAStatement> body) {
+        this.body = body;
+        statements = body.toArray(new SSAStatement[body.size()]);
+        ops = new SSAStatement.Op[statements.length];
+        targets = new Object[statements.length];
+        for (int si = 0; si < statements.length; si++) {
+            ops[si] = statements[si].op;
+            if (isBranch(ops[si]) || ops[si] == SSAStatement.Op.Label)
+                targets[si] = statements[si].special;
+        }
+
+        makeBlocks();
+        linkBlocks();
+        orderBlocks();
+        findDominators();
+    }
+
+    public List<SSABlock> getBlocks() { return blocks; }
+    public List<SSABlock> getReversePostorder() { return rpo; }
+    public SSABlock getEntry() { return blocks.isEmpty() ? null : blocks.get(0); }
+
+    // the block a label starts
+    public SSABlock getBlock(String label) {
+        SSABlock b = labels.get(label);
+        if (b == null)
+            throw new Error("Undefined label " + label);
+        return b;
+    }
+
+    // the block holding the statement at this position in the body
+    public SSABlock getBlockAt(int position) {
+        return blockAt[position];
+    }
+
+    // the blocks where this block's dominance ends, i.e. where its definitions need Phis
+    public List<SSABlock> getDominanceFrontier(SSABlock b) {
+        if (frontiers == null) findFrontiers();
+        return frontiers.get(b.number);
+    }
+
+    // does this op jump to the label in its special?
+    public static boolean isBranch(SSAStatement.Op op) {
+        switch (op) {
+            case Goto:
+            case Branch:
+            case NBranch:
+            case BranchLt:
+            case BranchLe:
+            case BranchGt:
+            case BranchGe:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    // does this op end a block?
+    public static boolean isTerminator(SSAStatement.Op op) {
+        return isBranch(op) || op == SSAStatement.Op.Return;
+    }
+
+    // is this still a graph of this body?
+    boolean isCurrent(List<SSAStatement> body) {
+        if (body != this.body || body.size() != statements.length)
+            return false;
+        int si = 0;
+        for (SSAStatement s : body) {
+            if (s != statements[si] || s.op != ops[si])
+                return false;
+            if (targets[si] != null && !targets[si].equals(s.special))
+                return false;
+            si++;
+        }
+        return true;
+    }
+
+    private void makeBlocks() {
+        blockAt = new SSABlock[statements.length];
+        List<SSAStatement> all = Collections.unmodifiableList(Arrays.asList(statements));
+        int start = 0;
+        for (int si = 0; si < statements.length; si++) {
+            // a block ends before a label, and after a jump or return
+            boolean endsBefore = si > start && ops[si] == SSAStatement.Op.Label;
+            if (endsBefore) {
+                addBlock(all, start, si);
+                start = si;
+            }
+            if (isTerminator(ops[si])) {
+                addBlock(all, start, si + 1);
+                start = si + 1;
+            }
+        }
+        if (start < statements.length)
+            addBlock(all, start, statements.length);
+    }
+
+    private void addBlock(List<SSAStatement> all, int start, int end) {
+        SSABlock b = new SSABlock(blocks.size(), start, end, all.subList(start, end));
+        if (ops[start] == SSAStatement.Op.Label) {
+            b.label = (String) statements[start].special;
+            if (labels.put(b.label, b) != null)
+                throw new Error("Duplicate label " + b.label);
+        }
+        for (int si = start; si < end; si++)
+            blockAt[si] = b;
+        blocks.add(b);
+    }
+
+    private void linkBlocks() {
+        List<List<SSABlock>> preds = new ArrayList<List<SSABlock>>();
+        for (int bi = 0; bi < blocks.size(); bi++)
+            preds.add(new ArrayList<SSABlock>());
+
+        for (SSABlock b : blocks) {
+            List<SSABlock> succs = new ArrayList<SSABlock>(2);
+            SSAStatement.Op op = ops[b.end - 1];
+            SSABlock next = (b.number + 1 < blocks.size()) ? blocks.get(b.number + 1) : null;
+
+            if (isBranch(op))
+                succs.add(getBlock((String) targets[b.end - 1]));
+            if (op != SSAStatement.Op.Goto && op != SSAStatement.Op.Return &&
+                next != null && !succs.contains(next))
+                succs.add(next);
+
+            b.succs = succs.toArray(new SSABlock[succs.size()]);
+            for (SSABlock succ : succs)
+                preds.get(succ.number).add(b);
+        }
+
+        for (SSABlock b : blocks)
+            b.preds = preds.get(b.number).toArray(new SSABlock[0]);
+    }
+
+    // number the reachable blocks in reverse postorder, without recursing
+    private void orderBlocks() {
+        if (blocks.isEmpty()) return;
+
+        List<SSABlock> post = new ArrayList<SSABlock>();
+        boolean[] visited = new boolean[blocks.size()];
+        Deque<SSABlock> stack = new ArrayDeque<SSABlock>();
+        Deque<Integer> nextSucc = new ArrayDeque<Integer>();
+        stack.push(getEntry());
+        nextSucc.push(0);
+        visited[0] = true;
+        while (!stack.isEmpty()) {
+            SSABlock b = stack.peek();
+            int si = nextSucc.pop();
+            if (si < b.succs.length) {
+                nextSucc.push(si + 1);
+                SSABlock succ = b.succs[si];
+                if (!visited[succ.number]) {
+                    visited[succ.number] = true;
+                    stack.push(succ);
+                    nextSucc.push(0);
+                }
+            } else {
+                stack.pop();
+                post.add(b);
+            }
+        }
+
+        for (int pi = post.size() - 1; pi >= 0; pi--) {
+            SSABlock b = post.get(pi);
+            b.rpo = rpo.size();
+            rpo.add(b);
+        }
+    }
+
+    private void findDominators() {
+        if (rpo.isEmpty()) return;
+
+        // idom by reverse postorder number, with the entry as its own for now
+        int[] idom = new int[rpo.size()];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int ri = 1; ri < rpo.size(); ri++) {
+                int newIdom = -1;
+                for (SSABlock pred : rpo.get(ri).preds) {
+                    if (pred.rpo < 0 || idom[pred.rpo] < 0) continue;
+                    newIdom = (newIdom < 0) ? pred.rpo : intersect(idom, pred.rpo, newIdom);
+                }
+                if (idom[ri] != newIdom) {
+                    idom[ri] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        for (int ri = 1; ri < rpo.size(); ri++) {
+            SSABlock b = rpo.get(ri);
+            b.idom = rpo.get(idom[ri]);
+            b.idom.domChildren.add(b);
+        }
+
+        // then number the tree, without recursing
+        int counter = 0;
+        Deque<SSABlock> stack = new ArrayDeque<SSABlock>();
+        Deque<Integer> nextChild = new ArrayDeque<Integer>();
+        SSABlock entry = rpo.get(0);
+        entry.domPre = counter++;
+        stack.push(entry);
+        nextChild.push(0);
+        while (!stack.isEmpty()) {
+            SSABlock b = stack.peek();
+            int ci = nextChild.pop();
+            if (ci < b.domChildren.size()) {
+                nextChild.push(ci + 1);
+                SSABlock child = b.domChildren.get(ci);
+                child.domPre = counter++;
+                stack.push(child);
+                nextChild.push(0);
+            } else {
+                stack.pop();
+                b.domPost = counter++;
+            }
+        }
+    }
+
+    private void findFrontiers() {
+        frontiers = new ArrayList<List<SSABlock>>();
+        for (int bi = 0; bi < blocks.size(); bi++)
+            frontiers.add(new ArrayList<SSABlock>());
+
+        for (SSABlock b : rpo) {
+            if (b.preds.length < 2) continue;
+            for (SSABlock pred : b.preds) {
+                if (!pred.isReachable()) continue;
+                for (SSABlock runner = pred; runner != null && runner != b.idom; runner = runner.idom) {
+                    List<SSABlock> frontier = frontiers.get(runner.number);
+                    if (!frontier.contains(b)) frontier.add(b);
+                }
+            }
+        }
+    }
+
+    private static int intersect(int[] idom, int a, int b) {
+        while (a != b) {
+            while (a > b) a = idom[a];
+            while (b > a) b = idom[b];
+        }
+        return a;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (SSABlock b : blocks) {
+            sb.append(b);
+            sb.append(": ");
+            sb.append(b.start);
+            sb.append("-");
+            sb.append(b.end - 1);
+            sb.append(" preds ");
+            sb.append(Arrays.toString(b.preds));
+            sb.append(" succs ");
+            sb.append(Arrays.toString(b.succs));
+            sb.append(" idom ");
+            sb.append(b.idom);
+            if (!b.isReachable())
+                sb.append(" unreachable");
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
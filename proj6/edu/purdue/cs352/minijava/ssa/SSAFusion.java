@@ -0,0 +1,202 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+/* An optional pass that replaces common sequences of statements with single
+ * fused statements, so that an interpreter dispatches once instead of two
+ * or three times:
+ *
+ *  - Lt/Le/Gt/Ge followed by a Branch or NBranch on it becomes
+ *    BranchLt/BranchLe/BranchGt/BranchGe (negated for NBranch),
+ *  - Plus or Minus with an Int operand becomes PlusImm or MinusImm,
+ *  - Index of a Member becomes MemberIndex.
+ *
+ * A statement is only folded into another if that is its only use. The
+ * consuming statement is rewritten in place, so references to it stay
+ * valid. Run it after the type checker, which doesn't know the fused ops. */
+public class SSAFusion {
+    // what was fused, so frontends can report it
+    public static class Stats {
+        public int compareBranch, immediate, memberIndex;
+
+        // every fusion removes one statement, and so one dispatch
+        public int total() {
+            return compareBranch + immediate + memberIndex;
+        }
+
+        public void add(Stats other) {
+            compareBranch += other.compareBranch;
+            immediate += other.immediate;
+            memberIndex += other.memberIndex;
+        }
+
+        @Override public String toString() {
+            return total() + " statements fused (" +
+                compareBranch + " compare+branch, " +
+                immediate + " immediate operands, " +
+                memberIndex + " member+index)";
+        }
+    }
+
+    private SSAFusion() {}
+
+    public static Stats fuse(SSAProgram prog) {
+        Stats stats = fuse(prog.getMain());
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                stats.add(fuse(m));
+        }
+        return stats;
+    }
+
+    public static Stats fuse(SSAMethod m) {
+        Stats stats = new Stats();
+        List<SSAStatement> body = m.getBody();
+        Map<SSAStatement, Integer> uses = countUses(body);
+        Set<SSAStatement> removed = new HashSet<SSAStatement>();
+
+        for (int bi = 0; bi < body.size(); bi++) {
+            SSAStatement s = body.get(bi);
+
+            switch (s.getOp()) {
+                case Branch:
+                case NBranch:
+                {
+                    // the comparison has to be right before the branch
+                    SSAStatement cond = s.getLeft();
+                    if (bi == 0 || body.get(bi - 1) != cond || uses(uses, cond) != 1)
+                        break;
+                    SSAStatement.Op op = branchOp(cond.getOp(), s.getOp() == SSAStatement.Op.NBranch);
+                    if (op == null)
+                        break;
+                    s.op = op;
+                    s.left = cond.getLeft();
+                    s.right = cond.getRight();
+                    removed.add(cond);
+                    stats.compareBranch++;
+                    break;
+                }
+
+                case Plus:
+                case Minus:
+                {
+                    SSAStatement other;
+                    if (isConstant(s.getRight(), uses)) {
+                        other = s.getLeft();
+                    } else if (s.getOp() == SSAStatement.Op.Plus && isConstant(s.getLeft(), uses)) {
+                        other = s.getRight();
+                    } else {
+                        break;
+                    }
+                    SSAStatement k = (other == s.getLeft()) ? s.getRight() : s.getLeft();
+                    s.op = (s.getOp() == SSAStatement.Op.Plus) ? SSAStatement.Op.PlusImm : SSAStatement.Op.MinusImm;
+                    s.left = other;
+                    s.right = null;
+                    s.special = k.getSpecial();
+                    removed.add(k);
+                    stats.immediate++;
+                    break;
+                }
+
+                case Index:
+                {
+                    SSAStatement member = s.getLeft();
+                    if (member.getOp() != SSAStatement.Op.Member || uses(uses, member) != 1)
+                        break;
+
+                    /* the Member is now evaluated at the Index, so nothing in
+                     * between may change fields, trap or leave the block */
+                    int mi = body.indexOf(member);
+                    if (mi < 0 || mi > bi)
+                        break;
+                    boolean movable = true;
+                    for (int i = mi + 1; i < bi && movable; i++)
+                        movable = canMoveAcross(body.get(i));
+                    if (!movable)
+                        break;
+
+                    s.op = SSAStatement.Op.MemberIndex;
+                    s.left = member.getLeft();
+                    s.special = member.getSpecial();
+                    removed.add(member);
+                    stats.memberIndex++;
+                    break;
+                }
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            List<SSAStatement> nbody = new ArrayList<SSAStatement>();
+            for (SSAStatement s : body) {
+                if (!removed.contains(s))
+                    nbody.add(s);
+            }
+            m.setBody(nbody);
+        }
+
+        return stats;
+    }
+
+    // the fused branch for a comparison, jumping if it's true (or false, if negated)
+    private static SSAStatement.Op branchOp(SSAStatement.Op cmp, boolean negate) {
+        switch (cmp) {
+            case Lt: return negate ? SSAStatement.Op.BranchGe : SSAStatement.Op.BranchLt;
+            case Le: return negate ? SSAStatement.Op.BranchGt : SSAStatement.Op.BranchLe;
+            case Gt: return negate ? SSAStatement.Op.BranchLe : SSAStatement.Op.BranchGt;
+            case Ge: return negate ? SSAStatement.Op.BranchLt : SSAStatement.Op.BranchGe;
+            default: return null;
+        }
+    }
+
+    private static boolean isConstant(SSAStatement s, Map<SSAStatement, Integer> uses) {
+        return s != null && s.getOp() == SSAStatement.Op.Int && uses(uses, s) == 1;
+    }
+
+    // statements with no side effects that can't throw
+    private static boolean canMoveAcross(SSAStatement s) {
+        switch (s.getOp()) {
+            case This:
+            case Null:
+            case Int:
+            case Boolean:
+            case Arg:
+            case VarAssg:
+            case Not:
+            case Lt: case Le: case Eq: case Ne: case Gt: case Ge:
+            case And: case Or:
+            case Plus: case Minus: case Mul:
+            case PlusImm: case MinusImm:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private static int uses(Map<SSAStatement, Integer> uses, SSAStatement s) {
+        Integer count = uses.get(s);
+        return (count == null) ? 0 : count.intValue();
+    }
+
+    // how many times each statement is used as an operand
+    private static Map<SSAStatement, Integer> countUses(List<SSAStatement> body) {
+        Map<SSAStatement, Integer> uses = new HashMap<SSAStatement, Integer>();
+        for (SSAStatement s : body) {
+            use(uses, s.getLeft());
+            use(uses, s.getRight());
+            Object special = s.getSpecial();
+            if (special instanceof SSAStatement) {
+                use(uses, (SSAStatement) special);
+            } else if (special instanceof SSACall) {
+                for (SSAStatement arg : ((SSACall) special).getArgs())
+                    use(uses, arg);
+            }
+        }
+        return uses;
+    }
+
+    private static void use(Map<SSAStatement, Integer> uses, SSAStatement s) {
+        if (s != null)
+            uses.put(s, Integer.valueOf(uses(uses, s) + 1));
+    }
+}
@@ -13,6 +13,9 @@ public class SSAMethod {
     StaticType retType;
     List<StaticType> paramTypes;
 
+    // built when first asked for, see getControlFlowGraph
+    SSAControlFlowGraph cfg;
+
     public SSAMethod(Main main, MethodDecl method, List<SSAStatement> body) {
         this.main = main;
         this.method = method;
@@ -30,7 +33,25 @@ public class SSAMethod {
     public Main getMain() { return main; }
     public MethodDecl getMethod() { return method; }
     public List<SSAStatement> getBody() { return body; }
-    public void setBody(List<SSAStatement> to) { body = to; }
+    public void setBody(List<SSAStatement> to) {
+        body = to;
+        cfg = null;
+    }
+
+    // the body's blocks, rebuilt if the body has changed since they were last asked for
+    public SSAControlFlowGraph getControlFlowGraph() {
+        if (cfg == null || !cfg.isCurrent(body))
+            cfg = new SSAControlFlowGraph(body);
+        return cfg;
+    }
+
+    // number the body's statements in order from index, returning the next index to use
+    public int renumber(int index) {
+        for (SSAStatement s : body)
+            s.index = index++;
+        return index;
+    }
+
     public void setRetType(StaticType retType) { this.retType = retType; }
     public StaticType getRetType() { return retType; }
     public void setParamTypes(List<StaticType> paramTypes) { this.paramTypes = paramTypes; }
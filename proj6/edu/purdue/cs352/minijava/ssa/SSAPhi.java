@@ -0,0 +1,41 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+/* used as the special of a Phi to hold the variable it merges and its
+ * inputs, one per predecessor block in SSAControlFlowGraph order (null if
+ * the variable isn't defined along that edge) */
+public class SSAPhi {
+    String var;
+    List<SSAStatement> args;
+
+    public SSAPhi(String var, List<SSAStatement> args) {
+        this.var = var;
+        this.args = args;
+    }
+
+    public String getVar() { return var; }
+    public List<SSAStatement> getArgs() { return args; }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(var);
+        sb.append("(");
+
+        boolean first = true;
+        for (SSAStatement arg : args) {
+            if (first)
+                first = false;
+            else
+                sb.append(", ");
+            if (arg == null)
+                sb.append("-");
+            else
+                sb.append(arg.getIndex());
+        }
+        sb.append(")");
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,622 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+import edu.purdue.cs352.minijava.types.StaticType;
+
+/* Converts between SSACompiler's Unify form and a form with explicit Phi
+ * statements, in which every value has exactly one definition.
+ *
+ * SSACompiler merges the values a variable has on different paths by
+ * unifying them after an if or while, which means they're all one
+ * location: a reference to any of them reads whatever the location holds.
+ * build() treats each group of unified statements as a variable, places
+ * Phis at the iterated dominance frontiers of its definitions (Cytron et
+ * al.), points every reference at the definition that reaches it, and
+ * removes the Unify and Alias statements. Phis that are never used, or that
+ * only ever see one value, are removed again. Unreachable blocks are
+ * dropped, and critical edges are split first, so that each Phi input can
+ * be copied at the end of its predecessor.
+ *
+ * lower() goes back to the Unify form, which is what the register
+ * allocator, the backends and the interpreters understand: each input is
+ * copied with a VarAssg at the end of its predecessor, and the copies are
+ * unified with the Phi. An input that's already a VarAssg in that
+ * predecessor, used by nothing else, is unified as it is instead, as long
+ * as the Phi's old value isn't needed after it; that's how SSACompiler's
+ * own assignments come back without extra moves. A Phi that's itself an
+ * input to a Phi of its block would be overwritten by those copies while
+ * it's still needed, so it instead gets a copy of its own (Sreedhar et
+ * al.'s method I).
+ *
+ * Run build() after the type checker, which doesn't know Phi. Both
+ * renumber the program's statements (see SSAProgram.renumber). */
+public class SSAPhiForm {
+    // what was done, so frontends can report it
+    public static class Stats {
+        public int placed, removed, unifies, splitEdges, copies;
+
+        public void add(Stats other) {
+            placed += other.placed;
+            removed += other.removed;
+            unifies += other.unifies;
+            splitEdges += other.splitEdges;
+            copies += other.copies;
+        }
+
+        @Override public String toString() {
+            return (placed - removed) + " phis (" +
+                placed + " placed, " +
+                removed + " removed), " +
+                unifies + " unifications replaced, " +
+                splitEdges + " critical edges split, " +
+                copies + " copies when lowered";
+        }
+    }
+
+    private SSAPhiForm() {}
+
+    public static Stats build(SSAProgram prog) {
+        Stats stats = new Stats();
+        new SSAPhiForm().build(prog.getMain(), "main", stats);
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                new SSAPhiForm().build(m, cl.getASTNode().getName() + "." + m.getMethod().getName(), stats);
+        }
+        prog.renumber();
+        return stats;
+    }
+
+    public static Stats lower(SSAProgram prog) {
+        Stats stats = new Stats();
+        lower(prog.getMain(), stats);
+        for (SSAClass cl : prog.getClassesOrdered()) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                lower(m, stats);
+        }
+        prog.renumber();
+        return stats;
+    }
+
+    /**************************************************************************
+     * Building
+     *************************************************************************/
+
+    // the method being built, with statements' indices set to their position in it
+    List<SSAStatement> body;
+    SSAControlFlowGraph cfg;
+
+    // the unification group of each statement, and whether each group is a variable
+    int[] group;
+    boolean[] variable;
+
+    // the name and type of each variable, if we can tell
+    String[] varName;
+    StaticType[] varType;
+
+    // the Phis at the start of each block, by block number, and the group of each
+    List<List<SSAStatement>> phis;
+    Map<SSAStatement, Integer> phiGroup = new HashMap<SSAStatement, Integer>();
+
+    // labels already in the method, for making new ones
+    Set<String> labels = new HashSet<String>();
+    String method;
+
+    private void build(SSAMethod m, String method, Stats stats) {
+        this.method = method;
+        body = new ArrayList<SSAStatement>(m.getBody());
+        if (body.isEmpty()) return;
+        for (SSAStatement s : body) {
+            if (s.op == SSAStatement.Op.Label) labels.add((String) s.special);
+        }
+
+        splitEdges(stats);
+        cfg = new SSAControlFlowGraph(body);
+        for (int si = 0; si < body.size(); si++)
+            body.get(si).index = si;
+
+        findVariables();
+        placePhis(stats);
+        rename();
+        removePhis(stats);
+
+        // then put it back together, without unifications or unreachable code
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>(body.size());
+        for (SSABlock b : cfg.getBlocks()) {
+            if (!b.isReachable()) continue;
+            int si = b.start;
+            if (body.get(si).op == SSAStatement.Op.Label)
+                newBody.add(body.get(si++));
+            newBody.addAll(phis.get(b.number));
+            for (; si < b.end; si++) {
+                SSAStatement s = body.get(si);
+                if (s.op == SSAStatement.Op.Unify || s.op == SSAStatement.Op.Alias)
+                    stats.unifies++;
+                else
+                    newBody.add(s);
+            }
+        }
+        m.setBody(newBody);
+    }
+
+    private String newLabel(String kind, String part) {
+        for (int n = 0; ; n++) {
+            String label = kind + "_" + method + "_" + n + "_" + part;
+            if (labels.add(label)) return label;
+        }
+    }
+
+    /* Make sure the entry block has no predecessors (it has no Phi inputs
+     * for coming in from outside) and that no edge leaves a block with
+     * several successors for a block with several predecessors */
+    private void splitEdges(Stats stats) {
+        SSAControlFlowGraph cfg = new SSAControlFlowGraph(body);
+
+        // statements to add after each position, and at the end
+        Map<Integer, List<SSAStatement>> after = new HashMap<Integer, List<SSAStatement>>();
+        List<SSAStatement> tail = new ArrayList<SSAStatement>();
+
+        for (SSABlock b : cfg.getReversePostorder()) {
+            if (reachablePreds(b) < 2 && !(b == cfg.getEntry() && b.preds.length > 0))
+                continue;
+            for (SSABlock pred : b.preds) {
+                if (!pred.isReachable() || pred.succs.length < 2) continue;
+
+                // a new block that just jumps to b, after pred if pred falls into b, or at the end
+                String label = newLabel("lsplit", "edge");
+                List<SSAStatement> split = new ArrayList<SSAStatement>();
+                split.add(new SSAStatement(null, SSAStatement.Op.Label, label));
+                split.add(new SSAStatement(null, SSAStatement.Op.Goto, b.label));
+                SSAStatement last = body.get(pred.end - 1);
+                if (SSAControlFlowGraph.isBranch(last.op) && b.label.equals(last.special)) {
+                    last.special = label;
+                    tail.addAll(split);
+                } else {
+                    after.put(pred.end - 1, split);
+                }
+                stats.splitEdges++;
+            }
+        }
+
+        boolean newEntry = cfg.getEntry().preds.length > 0;
+        if (after.isEmpty() && tail.isEmpty() && !newEntry)
+            return;
+
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>(body.size() + tail.size() + 4);
+        if (newEntry)
+            newBody.add(new SSAStatement(null, SSAStatement.Op.Label, newLabel("lentry", "start")));
+        for (int si = 0; si < body.size(); si++) {
+            newBody.add(body.get(si));
+            if (after.containsKey(si))
+                newBody.addAll(after.get(si));
+        }
+        if (!tail.isEmpty()) {
+            // don't fall into the new blocks from the end of the method
+            SSAStatement last = newBody.get(newBody.size() - 1);
+            String end = null;
+            if (last.op != SSAStatement.Op.Goto && last.op != SSAStatement.Op.Return) {
+                end = newLabel("lsplit", "end");
+                newBody.add(new SSAStatement(null, SSAStatement.Op.Goto, end));
+            }
+            newBody.addAll(tail);
+            if (end != null)
+                newBody.add(new SSAStatement(null, SSAStatement.Op.Label, end));
+        }
+        body = newBody;
+    }
+
+    private static int reachablePreds(SSABlock b) {
+        int count = 0;
+        for (SSABlock pred : b.preds) {
+            if (pred.isReachable()) count++;
+        }
+        return count;
+    }
+
+    // group the unified statements; a group of more than one is a variable
+    private void findVariables() {
+        int size = body.size();
+        int[] parent = new int[size];
+        for (int si = 0; si < size; si++)
+            parent[si] = si;
+        for (SSAStatement s : body) {
+            if (s.op == SSAStatement.Op.Unify || s.op == SSAStatement.Op.Alias) {
+                union(parent, s.index, s.left.index);
+                if (s.right != null)
+                    union(parent, s.index, s.right.index);
+            }
+        }
+
+        group = new int[size];
+        int[] members = new int[size];
+        for (int si = 0; si < size; si++) {
+            group[si] = find(parent, si);
+            members[group[si]]++;
+        }
+        variable = new boolean[size];
+        for (int si = 0; si < size; si++)
+            variable[si] = members[si] > 1;
+
+        varName = new String[size];
+        varType = new StaticType[size];
+        for (SSAStatement s : body) {
+            int g = group[s.index];
+            if (!variable[g] || !defines(s)) continue;
+            if (varName[g] == null && s.op == SSAStatement.Op.VarAssg) varName[g] = (String) s.special;
+            if (varType[g] == null) varType[g] = s.type;
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) parent[b] = a;
+    }
+
+    // is this statement a definition of its variable, rather than a reference to it?
+    private static boolean defines(SSAStatement s) {
+        return s.op != SSAStatement.Op.Unify && s.op != SSAStatement.Op.Alias;
+    }
+
+    private void placePhis(Stats stats) {
+        int blockCount = cfg.getBlocks().size();
+        phis = new ArrayList<List<SSAStatement>>();
+        for (int bi = 0; bi < blockCount; bi++)
+            phis.add(new ArrayList<SSAStatement>());
+
+        // the reachable blocks defining each variable
+        Map<Integer, List<SSABlock>> defBlocks = new TreeMap<Integer, List<SSABlock>>();
+        for (SSAStatement s : body) {
+            int g = group[s.index];
+            SSABlock b = cfg.getBlockAt(s.index);
+            if (!variable[g] || !defines(s) || !b.isReachable()) continue;
+            List<SSABlock> blocks = defBlocks.get(g);
+            if (blocks == null) defBlocks.put(g, blocks = new ArrayList<SSABlock>());
+            if (!blocks.contains(b)) blocks.add(b);
+        }
+
+        // the last group each block was given a Phi for, or queued for
+        int[] hasPhi = new int[blockCount], queued = new int[blockCount];
+        Arrays.fill(hasPhi, -1);
+        Arrays.fill(queued, -1);
+        for (Map.Entry<Integer, List<SSABlock>> entry : defBlocks.entrySet()) {
+            int g = entry.getKey();
+            Deque<SSABlock> work = new ArrayDeque<SSABlock>(entry.getValue());
+            for (SSABlock b : work)
+                queued[b.number] = g;
+
+            while (!work.isEmpty()) {
+                SSABlock b = work.pop();
+                for (SSABlock df : cfg.getDominanceFrontier(b)) {
+                    if (hasPhi[df.number] == g) continue;
+                    hasPhi[df.number] = g;
+                    phis.get(df.number).add(newPhi(df, g));
+                    stats.placed++;
+                    if (queued[df.number] != g) {
+                        queued[df.number] = g;
+                        work.push(df);
+                    }
+                }
+            }
+        }
+    }
+
+    private SSAStatement newPhi(SSABlock b, int g) {
+        List<SSAStatement> args = new ArrayList<SSAStatement>();
+        for (int pi = reachablePreds(b); pi > 0; pi--)
+            args.add(null);
+        String var = (varName[g] == null) ? "tmp" : varName[g];
+        SSAStatement phi = new SSAStatement(body.get(b.start).ast, SSAStatement.Op.Phi, new SSAPhi(var, args));
+        phi.type = varType[g];
+        phiGroup.put(phi, g);
+        return phi;
+    }
+
+    // point every reference to a variable at the definition that reaches it, walking the dominator tree
+    private void rename() {
+        SSAStatement[] current = new SSAStatement[body.size()];
+
+        // to undo a block's definitions once we're done with the blocks it dominates
+        List<Integer> undoGroups = new ArrayList<Integer>();
+        List<SSAStatement> undoDefs = new ArrayList<SSAStatement>();
+
+        Deque<SSABlock> stack = new ArrayDeque<SSABlock>();
+        Deque<Integer> marks = new ArrayDeque<Integer>();
+        stack.push(cfg.getEntry());
+        marks.push(-1);
+        while (!stack.isEmpty()) {
+            SSABlock b = stack.pop();
+            int mark = marks.pop();
+            if (mark >= 0) {
+                // leaving b
+                while (undoGroups.size() > mark) {
+                    int last = undoGroups.size() - 1;
+                    current[undoGroups.remove(last)] = undoDefs.remove(last);
+                }
+                continue;
+            }
+
+            stack.push(b);
+            marks.push(undoGroups.size());
+
+            for (SSAStatement phi : phis.get(b.number)) {
+                int g = phiGroup.get(phi);
+                undoGroups.add(g);
+                undoDefs.add(current[g]);
+                current[g] = phi;
+            }
+
+            for (int si = b.start; si < b.end; si++) {
+                SSAStatement s = body.get(si);
+                if (!defines(s)) continue;
+                s.left = reaching(s.left, current, s);
+                s.right = reaching(s.right, current, s);
+                if (s.special instanceof SSAStatement)
+                    s.special = reaching((SSAStatement) s.special, current, s);
+                else if (s.special instanceof SSACall) {
+                    List<SSAStatement> args = ((SSACall) s.special).getArgs();
+                    for (int ai = 0; ai < args.size(); ai++)
+                        args.set(ai, reaching(args.get(ai), current, s));
+                }
+
+                int g = group[si];
+                if (variable[g]) {
+                    undoGroups.add(g);
+                    undoDefs.add(current[g]);
+                    current[g] = s;
+                }
+            }
+
+            for (SSABlock succ : b.succs) {
+                int pi = 0;
+                for (SSABlock pred : succ.preds) {
+                    if (pred == b) break;
+                    if (pred.isReachable()) pi++;
+                }
+                for (SSAStatement phi : phis.get(succ.number))
+                    ((SSAPhi) phi.special).args.set(pi, current[phiGroup.get(phi)]);
+            }
+
+            List<SSABlock> children = b.getDominatorChildren();
+            for (int ci = children.size() - 1; ci >= 0; ci--) {
+                stack.push(children.get(ci));
+                marks.push(-1);
+            }
+        }
+    }
+
+    private SSAStatement reaching(SSAStatement operand, SSAStatement[] current, SSAStatement user) {
+        if (operand == null || !variable[group[operand.index]])
+            return operand;
+        SSAStatement def = current[group[operand.index]];
+        if (def == null)
+            throw new Error("Variable " + operand + " is used by " + user + " before it's defined");
+        return def;
+    }
+
+    /* Remove Phis that only see one value besides themselves (replacing them
+     * with it), then Phis that nothing but other dead Phis use */
+    private void removePhis(Stats stats) {
+        Map<SSAStatement, SSAStatement> replaced = new HashMap<SSAStatement, SSAStatement>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (List<SSAStatement> blockPhis : phis) {
+                for (SSAStatement phi : blockPhis) {
+                    if (replaced.containsKey(phi)) continue;
+                    SSAStatement only = null;
+                    boolean trivial = true;
+                    for (SSAStatement arg : ((SSAPhi) phi.special).args) {
+                        arg = replacement(arg, replaced);
+                        if (arg == null || arg == phi || arg == only) continue;
+                        if (only != null) {
+                            trivial = false;
+                            break;
+                        }
+                        only = arg;
+                    }
+                    if (trivial && only != null) {
+                        replaced.put(phi, only);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        // point everything past the replaced Phis, and find the live ones
+        Set<SSAStatement> live = new HashSet<SSAStatement>();
+        Deque<SSAStatement> work = new ArrayDeque<SSAStatement>();
+        for (SSAStatement s : body) {
+            if (!defines(s) || !cfg.getBlockAt(s.index).isReachable()) continue;
+            s.left = use(replacement(s.left, replaced), live, work);
+            s.right = use(replacement(s.right, replaced), live, work);
+            if (s.special instanceof SSAStatement)
+                s.special = use(replacement((SSAStatement) s.special, replaced), live, work);
+        }
+        for (List<SSAStatement> blockPhis : phis) {
+            for (SSAStatement phi : blockPhis) {
+                List<SSAStatement> args = ((SSAPhi) phi.special).args;
+                for (int ai = 0; ai < args.size(); ai++)
+                    args.set(ai, replacement(args.get(ai), replaced));
+            }
+        }
+        while (!work.isEmpty()) {
+            for (SSAStatement arg : ((SSAPhi) work.pop().special).args)
+                use(arg, live, work);
+        }
+
+        for (List<SSAStatement> blockPhis : phis) {
+            for (Iterator<SSAStatement> pi = blockPhis.iterator(); pi.hasNext(); ) {
+                if (!live.contains(pi.next())) {
+                    pi.remove();
+                    stats.removed++;
+                }
+            }
+        }
+    }
+
+    private static SSAStatement replacement(SSAStatement s, Map<SSAStatement, SSAStatement> replaced) {
+        while (s != null && replaced.containsKey(s))
+            s = replaced.get(s);
+        return s;
+    }
+
+    private static SSAStatement use(SSAStatement s, Set<SSAStatement> live, Deque<SSAStatement> work) {
+        if (s != null && s.op == SSAStatement.Op.Phi && live.add(s))
+            work.push(s);
+        return s;
+    }
+
+    /**************************************************************************
+     * Lowering
+     *************************************************************************/
+
+    private static Map<SSAStatement, Integer> countUses(List<SSAStatement> body) {
+        Map<SSAStatement, Integer> uses = new HashMap<SSAStatement, Integer>();
+        for (SSAStatement s : body) {
+            List<SSAStatement> operands = new ArrayList<SSAStatement>();
+            operands.add(s.left);
+            operands.add(s.right);
+            if (s.special instanceof SSAStatement)
+                operands.add((SSAStatement) s.special);
+            else if (s.special instanceof SSACall)
+                operands.addAll(((SSACall) s.special).getArgs());
+            else if (s.special instanceof SSAPhi)
+                operands.addAll(((SSAPhi) s.special).args);
+            for (SSAStatement operand : operands) {
+                if (operand == null) continue;
+                Integer count = uses.get(operand);
+                uses.put(operand, (count == null) ? 1 : count + 1);
+            }
+        }
+        return uses;
+    }
+
+    /* Can this input share its Phi's location without a copy? It has to be
+     * a VarAssg in the predecessor that only the Phi uses, and the Phi's
+     * previous value mustn't be used after it in that block. */
+    private static boolean canUnify(SSAStatement arg, SSAStatement phi, SSABlock pred, Map<SSAStatement, Integer> uses) {
+        if (arg.op != SSAStatement.Op.VarAssg || uses.get(arg) != 1)
+            return false;
+        List<SSAStatement> statements = pred.getStatements();
+        int si = statements.indexOf(arg);
+        if (si < 0)
+            return false;
+        for (si++; si < statements.size(); si++) {
+            SSAStatement s = statements.get(si);
+            if (s.left == phi || s.right == phi || s.special == phi)
+                return false;
+            if (s.special instanceof SSACall && ((SSACall) s.special).getArgs().contains(phi))
+                return false;
+        }
+        return true;
+    }
+
+    private static void lower(SSAMethod m, Stats stats) {
+        SSAControlFlowGraph cfg = m.getControlFlowGraph();
+
+        // copies to add at the end of each block, by block number, and what replaces each Phi
+        List<List<SSAStatement>> copies = new ArrayList<List<SSAStatement>>();
+        for (int bi = 0; bi < cfg.getBlocks().size(); bi++)
+            copies.add(new ArrayList<SSAStatement>());
+        Map<SSAStatement, List<SSAStatement>> lowered = new HashMap<SSAStatement, List<SSAStatement>>();
+        Map<SSAStatement, Integer> uses = countUses(m.getBody());
+
+        for (SSABlock b : cfg.getBlocks()) {
+            List<SSAStatement> blockPhis = new ArrayList<SSAStatement>();
+            for (SSAStatement s : b.getStatements()) {
+                if (s.op == SSAStatement.Op.Phi) blockPhis.add(s);
+            }
+            if (blockPhis.isEmpty()) continue;
+
+            // Phis that are inputs to Phis here
+            Set<SSAStatement> inputs = new HashSet<SSAStatement>();
+            for (SSAStatement phi : blockPhis)
+                inputs.addAll(((SSAPhi) phi.special).args);
+
+            for (SSAStatement phi : blockPhis) {
+                SSAPhi special = (SSAPhi) phi.special;
+                if (special.args.size() != b.preds.length)
+                    throw new Error("Phi " + phi + " has " + special.args.size() +
+                        " inputs, but its block has " + b.preds.length + " predecessors");
+
+                List<SSAStatement> phiCopies = new ArrayList<SSAStatement>();
+                for (int pi = 0; pi < b.preds.length; pi++) {
+                    SSAStatement arg = special.args.get(pi);
+                    if (arg == null) continue;
+                    if (b.preds[pi].succs.length > 1)
+                        throw new Error("Phi " + phi + " is on a critical edge from " + b.preds[pi]);
+                    if (!inputs.contains(phi) && canUnify(arg, phi, b.preds[pi], uses)) {
+                        phiCopies.add(arg);
+                        continue;
+                    }
+                    SSAStatement copy = new SSAStatement(phi.ast, SSAStatement.Op.VarAssg, arg, null, special.var);
+                    copy.type = phi.type;
+                    copies.get(b.preds[pi].number).add(copy);
+                    phiCopies.add(copy);
+                    stats.copies++;
+                }
+                if (phiCopies.isEmpty())
+                    throw new Error("Phi " + phi + " has no inputs");
+
+                // unify the copies into the Phi, or into a location of their own that the Phi copies
+                List<SSAStatement> replacement = new ArrayList<SSAStatement>();
+                SSAStatement into = phi;
+                if (inputs.contains(phi)) {
+                    into = new SSAStatement(phi.ast, SSAStatement.Op.Alias);
+                    into.type = phi.type;
+                }
+                SSAStatement unified = phiCopies.get(0);
+                for (int ci = 1; ci < phiCopies.size() - 1; ci++) {
+                    unified = new SSAStatement(phi.ast, SSAStatement.Op.Unify, unified, phiCopies.get(ci));
+                    unified.type = phi.type;
+                    replacement.add(unified);
+                }
+                if (phiCopies.size() == 1) {
+                    into.op = SSAStatement.Op.Alias;
+                    into.left = unified;
+                } else {
+                    into.op = SSAStatement.Op.Unify;
+                    into.left = unified;
+                    into.right = phiCopies.get(phiCopies.size() - 1);
+                }
+                into.special = null;
+                if (into != phi) {
+                    replacement.add(into);
+                    phi.op = SSAStatement.Op.VarAssg;
+                    phi.left = into;
+                    phi.special = special.var;
+                }
+                replacement.add(phi);
+                lowered.put(phi, replacement);
+            }
+        }
+        if (lowered.isEmpty()) return;
+
+        List<SSAStatement> newBody = new ArrayList<SSAStatement>();
+        for (SSABlock b : cfg.getBlocks()) {
+            List<SSAStatement> statements = b.getStatements();
+            int end = statements.size();
+            if (b.getTerminator() != null) end--;
+            for (int si = 0; si < end; si++) {
+                SSAStatement s = statements.get(si);
+                if (lowered.containsKey(s))
+                    newBody.addAll(lowered.get(s));
+                else
+                    newBody.add(s);
+            }
+            newBody.addAll(copies.get(b.number));
+            if (end < statements.size())
+                newBody.add(statements.get(end));
+        }
+        m.setBody(newBody);
+    }
+}
@@ -26,6 +26,17 @@ public class SSAProgram {
     }
     public List<SSAClass> getClassesOrdered() { return classesOrdered; }
 
+    /* Statement indices come from a global counter, so they depend on what
+     * was compiled before. This numbers them from 0 in program order (main,
+     * then each class's methods in order, each body in order). */
+    public void renumber() {
+        int index = main.renumber(0);
+        for (SSAClass cl : classesOrdered) {
+            for (SSAMethod m : cl.getMethodsOrdered())
+                index = m.renumber(index);
+        }
+    }
+
     @Override public String toString() {
         StringBuilder sb = new StringBuilder();
 
@@ -0,0 +1,573 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import edu.purdue.cs352.minijava.ast.*;
+import edu.purdue.cs352.minijava.types.*;
+
+/* A compact binary form of an SSAProgram, so a compiled (and usually type
+ * checked) program can be saved and loaded again without the source.
+ *
+ * The file is the magic number and version, a table of strings, a table of
+ * static types, then the program. Strings and types are written once and
+ * referred to by their position in the tables, so each ObjectType is still
+ * a single object when loaded and identity comparisons keep working.
+ * Operands (left, right, IndexAssg's index, call arguments and Phi
+ * inputs) are written as positions in the method's body; forward references
+ * are allowed, since unifications and Phis can refer to statements later in
+ * a loop. Numbers are variable-length, so most fit in a byte.
+ *
+ * The AST isn't saved. A loaded program gets declaration-only AST nodes
+ * for its classes, fields and methods (names, declared types and
+ * parameters), which is everything the backends and interpreters use, and
+ * its statements have no AST node. */
+public class SSASerializer {
+    public static final int MAGIC = 0x4d4a5353; // "MJSS"
+    public static final int VERSION = 1;
+
+    // statement flags
+    private static final int HAS_LEFT = 1, HAS_RIGHT = 2, HAS_TYPE = 4, HAS_REGISTER = 8, PINNED = 16;
+
+    // special kinds
+    private static final int SPECIAL_NONE = 0, SPECIAL_INT = 1, SPECIAL_FALSE = 2, SPECIAL_TRUE = 3,
+        SPECIAL_STRING = 4, SPECIAL_CALL = 5, SPECIAL_STATEMENT = 6, SPECIAL_TYPE = 7, SPECIAL_PHI = 8;
+
+    // type kinds
+    private static final int TYPE_VOID = 0, TYPE_INT = 1, TYPE_BOOLEAN = 2, TYPE_OBJECT = 3;
+
+    private static final SSAStatement.Op[] ops = SSAStatement.Op.values();
+
+    private SSASerializer() {}
+
+    /**************************************************************************
+     * Writing
+     *************************************************************************/
+
+    private static class Writer {
+        final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        final Map<StaticType, Integer> types = new IdentityHashMap<StaticType, Integer>();
+        final List<StaticType> typesOrdered = new ArrayList<StaticType>();
+
+        // the program itself is written to here first, to gather the tables
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(body);
+
+        // statement indices are written as the difference from the last one
+        int lastIndex;
+
+        int string(String s) {
+            Integer idx = strings.get(s);
+            if (idx == null) {
+                idx = strings.size();
+                strings.put(s, idx);
+            }
+            return idx;
+        }
+
+        // supertypes are numbered first, so they can be made first
+        int type(StaticType t) {
+            Integer idx = types.get(t);
+            if (idx == null) {
+                if (t instanceof ObjectType && ((ObjectType) t).getSuperType() != null)
+                    type(((ObjectType) t).getSuperType());
+                idx = typesOrdered.size();
+                types.put(t, idx);
+                typesOrdered.add(t);
+            }
+            return idx;
+        }
+
+        // a nullable type, as 0 or its number plus one
+        void optType(StaticType t) throws IOException {
+            writeVarint(out, (t == null) ? 0 : type(t) + 1);
+        }
+
+        void astType(Type t) throws IOException {
+            writeVarint(out, string(t.getName()));
+        }
+
+        void program(SSAProgram prog) throws IOException {
+            method(prog.getMain());
+
+            List<SSAClass> classes = prog.getClassesOrdered();
+            writeVarint(out, classes.size());
+            for (SSAClass cl : classes) {
+                ClassDecl decl = cl.getASTNode();
+                writeVarint(out, string(decl.getName()));
+                writeVarint(out, (decl.getExtends() == null) ? 0 : string(decl.getExtends()) + 1);
+
+                writeVarint(out, cl.getFieldsOrdered().size());
+                for (SSAField f : cl.getFieldsOrdered()) {
+                    writeVarint(out, string(f.getName()));
+                    astType(f.getField().getType());
+                    optType(f.getType());
+                }
+
+                writeVarint(out, cl.getMethodsOrdered().size());
+                for (SSAMethod m : cl.getMethodsOrdered())
+                    method(m);
+            }
+        }
+
+        void method(SSAMethod m) throws IOException {
+            MethodDecl decl = m.getMethod();
+            if (decl != null) {
+                writeVarint(out, string(decl.getName()));
+                astType(decl.getType());
+                writeVarint(out, decl.getParameters().size());
+                for (Parameter p : decl.getParameters()) {
+                    writeVarint(out, string(p.getName()));
+                    astType(p.getType());
+                }
+            }
+
+            optType(m.getRetType());
+            List<StaticType> paramTypes = m.getParamTypes();
+            if (paramTypes == null) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, paramTypes.size() + 1);
+                for (StaticType t : paramTypes)
+                    optType(t);
+            }
+
+            // positions of the statements, for operands
+            List<SSAStatement> body = m.getBody();
+            Map<SSAStatement, Integer> positions = new IdentityHashMap<SSAStatement, Integer>();
+            for (SSAStatement s : body)
+                positions.put(s, positions.size());
+
+            writeVarint(out, body.size());
+            for (SSAStatement s : body)
+                statement(s, positions);
+        }
+
+        int position(SSAStatement s, Map<SSAStatement, Integer> positions) {
+            Integer pos = positions.get(s);
+            if (pos == null)
+                throw new Error("Operand " + s + " is not in the method being written");
+            return pos;
+        }
+
+        void statement(SSAStatement s, Map<SSAStatement, Integer> positions) throws IOException {
+            int flags = 0;
+            if (s.left != null) flags |= HAS_LEFT;
+            if (s.right != null) flags |= HAS_RIGHT;
+            if (s.type != null) flags |= HAS_TYPE;
+            if (s.register >= 0) flags |= HAS_REGISTER;
+            if (s.registerPinned) flags |= PINNED;
+
+            out.writeByte(s.op.ordinal());
+            out.writeByte(flags);
+            writeVarint(out, zigzag(s.index - lastIndex));
+            lastIndex = s.index;
+            if (s.left != null) writeVarint(out, position(s.left, positions));
+            if (s.right != null) writeVarint(out, position(s.right, positions));
+            if (s.type != null) writeVarint(out, type(s.type));
+            if (s.register >= 0) writeVarint(out, s.register);
+
+            Object special = s.special;
+            if (special == null) {
+                out.writeByte(SPECIAL_NONE);
+
+            } else if (special instanceof Integer) {
+                out.writeByte(SPECIAL_INT);
+                writeVarint(out, zigzag((Integer) special));
+
+            } else if (special instanceof Boolean) {
+                out.writeByte(((Boolean) special) ? SPECIAL_TRUE : SPECIAL_FALSE);
+
+            } else if (special instanceof String) {
+                out.writeByte(SPECIAL_STRING);
+                writeVarint(out, string((String) special));
+
+            } else if (special instanceof SSACall) {
+                SSACall call = (SSACall) special;
+                out.writeByte(SPECIAL_CALL);
+                writeVarint(out, string(call.getMethod()));
+                writeVarint(out, call.getArgs().size());
+                for (SSAStatement arg : call.getArgs())
+                    writeVarint(out, position(arg, positions));
+
+            } else if (special instanceof SSAPhi) {
+                // inputs are positions + 1, with 0 for an undefined input
+                SSAPhi phi = (SSAPhi) special;
+                out.writeByte(SPECIAL_PHI);
+                writeVarint(out, string(phi.getVar()));
+                writeVarint(out, phi.getArgs().size());
+                for (SSAStatement arg : phi.getArgs())
+                    writeVarint(out, (arg == null) ? 0 : position(arg, positions) + 1);
+
+            } else if (special instanceof SSAStatement) {
+                out.writeByte(SPECIAL_STATEMENT);
+                writeVarint(out, position((SSAStatement) special, positions));
+
+            } else if (special instanceof Type) {
+                out.writeByte(SPECIAL_TYPE);
+                astType((Type) special);
+
+            } else {
+                throw new Error("Can't write special " + special + " of " + s);
+
+            }
+        }
+
+        void finish(OutputStream to) throws IOException {
+            DataOutputStream dout = new DataOutputStream(to);
+            dout.writeInt(MAGIC);
+            dout.writeInt(VERSION);
+
+            // types first, as they add their names to the strings
+            ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+            DataOutputStream tout = new DataOutputStream(typeBytes);
+            writeVarint(tout, typesOrdered.size());
+            for (StaticType t : typesOrdered) {
+                if (t instanceof VoidType) {
+                    tout.writeByte(TYPE_VOID);
+                } else if (t instanceof PrimitiveType.IntType) {
+                    tout.writeByte(TYPE_INT);
+                } else if (t instanceof PrimitiveType.BooleanType) {
+                    tout.writeByte(TYPE_BOOLEAN);
+                } else if (t instanceof ObjectType) {
+                    ObjectType ot = (ObjectType) t;
+                    tout.writeByte(TYPE_OBJECT);
+                    writeVarint(tout, string(ot.getName()));
+                    writeVarint(tout, (ot.getSuperType() == null) ? 0 : types.get(ot.getSuperType()) + 1);
+                } else {
+                    throw new Error("Can't write type " + t);
+                }
+            }
+            tout.flush();
+
+            writeVarint(dout, strings.size());
+            for (String s : strings.keySet()) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                writeVarint(dout, utf8.length);
+                dout.write(utf8);
+            }
+            typeBytes.writeTo(dout);
+            out.flush();
+            body.writeTo(dout);
+            dout.flush();
+        }
+    }
+
+    public static void write(SSAProgram prog, OutputStream to) throws IOException {
+        Writer w = new Writer();
+        w.program(prog);
+        w.finish(to);
+    }
+
+    public static byte[] toBytes(SSAProgram prog) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(prog, bytes);
+        } catch (IOException ex) {
+            // not from a ByteArrayOutputStream
+            throw new Error(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**************************************************************************
+     * Reading
+     *************************************************************************/
+
+    private static class Reader {
+        final byte[] buf;
+        int pos;
+        String[] strings;
+        StaticType[] types;
+        int lastIndex;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int u8() throws IOException {
+            if (pos >= buf.length)
+                throw new EOFException("Serialized SSA program ends early");
+            return buf[pos++] & 0xff;
+        }
+
+        int int32() throws IOException {
+            return (u8() << 24) | (u8() << 16) | (u8() << 8) | u8();
+        }
+
+        // variable-length numbers, seven bits a byte, low bits first
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = u8();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Bad number");
+        }
+
+        String utf8() throws IOException {
+            int len = count();
+            if (len > buf.length - pos)
+                throw new EOFException("Serialized SSA program ends early");
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        int count() throws IOException {
+            int n = varint();
+            if (n < 0 || n > (1 << 24))
+                throw new IOException("Bad count " + n);
+            return n;
+        }
+
+        String string() throws IOException {
+            return string(varint());
+        }
+
+        String string(int idx) throws IOException {
+            if (idx < 0 || idx >= strings.length)
+                throw new IOException("Bad string " + idx);
+            return strings[idx];
+        }
+
+        StaticType type(int idx) throws IOException {
+            if (idx < 0 || idx >= types.length || types[idx] == null)
+                throw new IOException("Bad type " + idx);
+            return types[idx];
+        }
+
+        StaticType optType() throws IOException {
+            int idx = varint();
+            return (idx == 0) ? null : type(idx - 1);
+        }
+
+        Type astType() throws IOException {
+            String name = string();
+            if (name.equals("int")) return new TypeInt(null);
+            if (name.equals("boolean")) return new TypeBoolean(null);
+            if (name.equals("int[]")) return new TypeIntArray(null);
+            return new Type(null, name);
+        }
+
+        SSAProgram program() throws IOException {
+            if (int32() != MAGIC)
+                throw new IOException("Not a serialized SSA program");
+            int version = int32();
+            if (version != VERSION)
+                throw new IOException("Unsupported SSA format version " + version);
+
+            strings = new String[count()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = utf8();
+
+            types = new StaticType[count()];
+            for (int i = 0; i < types.length; i++) {
+                int kind = u8();
+                switch (kind) {
+                    case TYPE_VOID: types[i] = new VoidType(); break;
+                    case TYPE_INT: types[i] = new PrimitiveType.IntType(); break;
+                    case TYPE_BOOLEAN: types[i] = new PrimitiveType.BooleanType(); break;
+                    case TYPE_OBJECT:
+                    {
+                        String name = string();
+                        int sup = varint();
+                        if (sup > i || (sup > 0 && !(types[sup - 1] instanceof ObjectType)))
+                            throw new IOException("Bad supertype of " + name);
+                        types[i] = new ObjectType(name, (sup == 0) ? null : (ObjectType) types[sup - 1]);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Bad type kind " + kind);
+                }
+            }
+
+            SSAMethod main = method(null);
+
+            int classCount = count();
+            List<SSAClass> classes = new ArrayList<SSAClass>(classCount);
+            for (int ci = 0; ci < classCount; ci++) {
+                String name = string();
+                int ext = varint();
+                String eggstends = (ext == 0) ? null : string(ext - 1);
+
+                int fieldCount = count();
+                List<VarDecl> fields = new ArrayList<VarDecl>(fieldCount);
+                StaticType[] fieldTypes = new StaticType[fieldCount];
+                for (int fi = 0; fi < fieldCount; fi++) {
+                    String fname = string();
+                    fields.add(new VarDecl(null, astType(), fname));
+                    fieldTypes[fi] = optType();
+                }
+
+                int methodCount = count();
+                List<MethodDecl> decls = new ArrayList<MethodDecl>(methodCount);
+                List<SSAMethod> methods = new ArrayList<SSAMethod>(methodCount);
+                for (int mi = 0; mi < methodCount; mi++) {
+                    SSAMethod m = method(decls);
+                    methods.add(m);
+                }
+
+                SSAClass cl = new SSAClass(new ClassDecl(null, name, eggstends, fields, decls), methods);
+                for (int fi = 0; fi < fieldCount; fi++)
+                    cl.getFieldsOrdered().get(fi).setType(fieldTypes[fi]);
+                classes.add(cl);
+            }
+
+            return new SSAProgram(main, classes);
+        }
+
+        // a method, or main if decls is null
+        SSAMethod method(List<MethodDecl> decls) throws IOException {
+            MethodDecl decl = null;
+            if (decls != null) {
+                String name = string();
+                Type retType = astType();
+                int paramCount = count();
+                List<Parameter> params = new ArrayList<Parameter>(paramCount);
+                for (int i = 0; i < paramCount; i++) {
+                    String pname = string();
+                    params.add(new Parameter(null, astType(), pname));
+                }
+                decl = new MethodDecl(null, retType, name, params,
+                    new ArrayList<VarDecl>(), new ArrayList<Statement>(), null);
+                decls.add(decl);
+            }
+
+            StaticType retType = optType();
+            List<StaticType> paramTypes = null;
+            int paramTypeCount = varint();
+            if (paramTypeCount > 0) {
+                paramTypes = new ArrayList<StaticType>(paramTypeCount - 1);
+                for (int i = 0; i < paramTypeCount - 1; i++)
+                    paramTypes.add(optType());
+            }
+
+            // operands are resolved once the whole body is read
+            int size = count();
+            SSAStatement[] body = new SSAStatement[size];
+            int[] lefts = new int[size], rights = new int[size];
+            int[][] specials = new int[size][];
+            for (int i = 0; i < size; i++)
+                body[i] = statement(i, lefts, rights, specials);
+
+            for (int i = 0; i < size; i++) {
+                SSAStatement s = body[i];
+                if (lefts[i] >= 0) s.left = operand(body, lefts[i]);
+                if (rights[i] >= 0) s.right = operand(body, rights[i]);
+                if (specials[i] != null) {
+                    if (s.special instanceof SSAPhi) {
+                        List<SSAStatement> args = new ArrayList<SSAStatement>(specials[i].length);
+                        for (int arg : specials[i])
+                            args.add((arg == 0) ? null : operand(body, arg - 1));
+                        ((SSAPhi) s.special).args = args;
+                    } else if (s.special instanceof String) {
+                        // a call: the method name, and argument positions
+                        List<SSAStatement> args = new ArrayList<SSAStatement>(specials[i].length);
+                        for (int arg : specials[i])
+                            args.add(operand(body, arg));
+                        s.special = new SSACall((String) s.special, args);
+                    } else {
+                        s.special = operand(body, specials[i][0]);
+                    }
+                }
+            }
+
+            SSAMethod m = (decl == null)
+                ? new SSAMethod(new Main(null, null), new ArrayList<SSAStatement>(Arrays.asList(body)))
+                : new SSAMethod(decl, new ArrayList<SSAStatement>(Arrays.asList(body)));
+            m.setRetType(retType);
+            m.setParamTypes(paramTypes);
+            return m;
+        }
+
+        SSAStatement operand(SSAStatement[] body, int pos) throws IOException {
+            if (pos < 0 || pos >= body.length)
+                throw new IOException("Bad operand " + pos);
+            return body[pos];
+        }
+
+        SSAStatement statement(int i, int[] lefts, int[] rights, int[][] specials) throws IOException {
+            int opIdx = u8();
+            if (opIdx >= ops.length)
+                throw new IOException("Bad op " + opIdx);
+            int flags = u8();
+
+            SSAStatement s = new SSAStatement(null, ops[opIdx]);
+            s.index = lastIndex += unzigzag(varint());
+            lefts[i] = ((flags & HAS_LEFT) != 0) ? varint() : -1;
+            rights[i] = ((flags & HAS_RIGHT) != 0) ? varint() : -1;
+            if ((flags & HAS_TYPE) != 0) s.type = type(varint());
+            if ((flags & HAS_REGISTER) != 0) s.register = varint();
+            s.registerPinned = (flags & PINNED) != 0;
+
+            int kind = u8();
+            switch (kind) {
+                case SPECIAL_NONE: break;
+                case SPECIAL_INT:
+                {
+                    s.special = unzigzag(varint());
+                    break;
+                }
+                case SPECIAL_FALSE: s.special = Boolean.FALSE; break;
+                case SPECIAL_TRUE: s.special = Boolean.TRUE; break;
+                case SPECIAL_STRING: s.special = string(); break;
+                case SPECIAL_CALL:
+                {
+                    s.special = string();
+                    int[] args = new int[count()];
+                    for (int ai = 0; ai < args.length; ai++)
+                        args[ai] = varint();
+                    specials[i] = args;
+                    break;
+                }
+                case SPECIAL_PHI:
+                {
+                    s.special = new SSAPhi(string(), null);
+                    int[] args = new int[count()];
+                    for (int ai = 0; ai < args.length; ai++)
+                        args[ai] = varint();
+                    specials[i] = args;
+                    break;
+                }
+                case SPECIAL_STATEMENT: specials[i] = new int[]{varint()}; break;
+                case SPECIAL_TYPE: s.special = astType(); break;
+                default:
+                    throw new IOException("Bad special kind " + kind);
+            }
+            return s;
+        }
+    }
+
+    public static SSAProgram read(InputStream from) throws IOException {
+        return fromBytes(from.readAllBytes());
+    }
+
+    public static SSAProgram fromBytes(byte[] bytes) throws IOException {
+        return new Reader(bytes).program();
+    }
+
+    /**************************************************************************
+     * Numbers: variable-length, seven bits a byte, low bits first, with
+     * signed ones zigzagged so small negatives are small too
+     *************************************************************************/
+
+    static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
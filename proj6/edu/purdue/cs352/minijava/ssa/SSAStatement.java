@@ -54,6 +54,14 @@ public class SSAStatement {
         And, Or,
         Plus, Minus,
         Mul, Div, Mod,
+
+        // Fused operations (see SSAFusion):
+        BranchLt, BranchLe, BranchGt, BranchGe, // left, right = operands, special:String=label, jumps if the comparison is true
+        PlusImm, MinusImm,  // left=operand, special:Integer=constant right operand
+        MemberIndex,        // left=target, right=index, special:String=member name, indexes an array member
+
+        // Merges (see SSAPhiForm):
+        Phi,        // special:SSAPhi=the value from each predecessor block
     }
 
     // since the indices are just for debugging, we don't care about thread safety here
@@ -113,6 +121,7 @@ public class SSAStatement {
     public int getIndex() { return index; }
     public ASTNode getASTNode() { return ast; }
     public Op getOp() { return op; }
+    public void setOp(Op to) { op = to; }
     public void setType(StaticType type) { this.type = type; }
     public StaticType getType() { return type; }
     public SSAStatement getLeft() { return left; }
@@ -0,0 +1,65 @@
+package edu.purdue.cs352.minijava.ssa;
+
+import java.util.*;
+
+/* Statements joined by Unify or Alias always hold the same value, so
+ * anything that stores values (registers, frame slots, JVM locals) has to
+ * give the whole group a single location. This numbers those groups. */
+public class SSAUnification {
+    private SSAUnification() {}
+
+    // get a dense group number for each statement in the body
+    public static int[] groups(SSAStatement[] body) {
+        Map<SSAStatement, Integer> index = new HashMap<SSAStatement, Integer>();
+        for (int bi = 0; bi < body.length; bi++)
+            index.put(body[bi], Integer.valueOf(bi));
+
+        // union-find over the body indices
+        int[] parent = new int[body.length];
+        for (int bi = 0; bi < body.length; bi++)
+            parent[bi] = bi;
+        for (int bi = 0; bi < body.length; bi++) {
+            SSAStatement s = body[bi];
+            SSAStatement.Op op = s.getOp();
+            if (op == SSAStatement.Op.Unify || op == SSAStatement.Op.Alias) {
+                union(parent, bi, index.get(s.getLeft()).intValue());
+                if (s.getRight() != null)
+                    union(parent, bi, index.get(s.getRight()).intValue());
+            }
+        }
+
+        // then number the roots
+        int[] rootGroup = new int[body.length];
+        Arrays.fill(rootGroup, -1);
+        int[] groups = new int[body.length];
+        int next = 0;
+        for (int bi = 0; bi < body.length; bi++) {
+            int root = find(parent, bi);
+            if (rootGroup[root] < 0) rootGroup[root] = next++;
+            groups[bi] = rootGroup[root];
+        }
+        return groups;
+    }
+
+    // the number of groups in a numbering from groups()
+    public static int count(int[] groups) {
+        int count = 0;
+        for (int g : groups)
+            if (g >= count) count = g + 1;
+        return count;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) parent[b] = a;
+    }
+}
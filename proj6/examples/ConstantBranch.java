@@ -0,0 +1,115 @@
+// Branches that constants decide, some only once the branches that can't
+// be taken are ignored (for ConstantPropagation). mjtest's opt engine
+// runs it as mjcompile-ssa -sccp -gvn -dce does.
+class ConstantBranch {
+    public static void main(String[] a) {
+        System.out.println(new Folder().run(4));
+    }
+}
+
+class Folder {
+    int seen;
+
+    public int run(int n) {
+        seen = 0;
+        System.out.println(this.straight());
+        System.out.println(this.loopConstant(n));
+        System.out.println(this.notConstant(n));
+        System.out.println(this.logic(n));
+        System.out.println(this.sideEffects());
+        System.out.println(seen);
+        return 0;
+    }
+
+    public int straight() {
+        int x;
+        int y;
+
+        x = 3;
+        if (x < 5)
+            y = x * 7;
+        else
+            y = x - 100;
+        if (y != 21)
+            y = 0;
+        return y;
+    }
+
+    // k is only ever assigned 1 on the paths that can be taken
+    public int loopConstant(int n) {
+        int k;
+        int i;
+        int sum;
+
+        k = 1;
+        i = 0;
+        sum = 0;
+        while (i < n) {
+            if (!(k == 1))
+                k = 2;
+            sum = sum + k;
+            i = i + 1;
+        }
+        return sum * 10 + k;
+    }
+
+    // the same shape, but k really does change
+    public int notConstant(int n) {
+        int k;
+        int i;
+        int sum;
+
+        k = 1;
+        i = 0;
+        sum = 0;
+        while (i < n) {
+            if (1 < i)
+                k = 2;
+            sum = sum + k;
+            i = i + 1;
+        }
+        return sum * 10 + k;
+    }
+
+    public int logic(int n) {
+        boolean t;
+        boolean f;
+        int r;
+
+        t = true;
+        f = !t;
+        r = 0;
+        if (t)
+            if (!f)
+                r = r + 1;
+        if (f)
+            if (n < 10)
+                r = r + 10;
+        if (3 <= 3)
+            if (4 >= 5)
+                r = r + 100;
+        if (2 > 1)
+            if (n == n)
+                r = r + 1000;
+        return r;
+    }
+
+    // calls aren't constant, even when their conditions are
+    public int sideEffects() {
+        int r;
+
+        r = 0;
+        if (0 < 1)
+            r = this.count(5);
+        else
+            r = this.count(6);
+        if (r == 5)
+            r = this.count(r + 2);
+        return r;
+    }
+
+    public int count(int by) {
+        seen = seen + by;
+        return seen;
+    }
+}
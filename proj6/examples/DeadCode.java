@@ -0,0 +1,102 @@
+// Values that are computed and never used, next to ones that look unused
+// but have effects that have to stay (for DeadCodeElimination). mjtest's
+// fuse and opt engines run it as mjinterp-ssa -dce and mjcompile-ssa -dce
+// do.
+class DeadCode {
+    public static void main(String[] a) {
+        System.out.println(new Deadwood().run(6));
+    }
+}
+
+class Deadwood {
+    int calls;
+    int[] cells;
+
+    public int run(int n) {
+        calls = 0;
+        cells = new int[4];
+        System.out.println(this.unused(n));
+        System.out.println(this.deadStores(n));
+        System.out.println(this.deadLoop(n));
+        System.out.println(this.keptCalls(n));
+        System.out.println(this.deadBranch(n));
+        System.out.println(calls);
+        System.out.println(cells[1] + cells[2]);
+        return 0;
+    }
+
+    public int unused(int n) {
+        int a;
+        int b;
+        int c;
+        boolean p;
+        Deadwood d;
+
+        a = n * n;
+        b = a + n;
+        c = b - a;
+        p = a < b;
+        d = new Deadwood();
+        return n + 1;
+    }
+
+    // only the last assignment before the return counts
+    public int deadStores(int n) {
+        int x;
+
+        x = n * 3;
+        x = n * 5;
+        x = x + 1;
+        x = n - 2;
+        return x;
+    }
+
+    // a counter and a sum that nothing reads after the loop
+    public int deadLoop(int n) {
+        int i;
+        int sum;
+        int other;
+
+        i = 0;
+        sum = 0;
+        other = 0;
+        while (i < n) {
+            sum = sum + i;
+            other = other + sum * 2;
+            i = i + 1;
+        }
+        return i;
+    }
+
+    // the results are thrown away, but the calls and stores happen
+    public int keptCalls(int n) {
+        int r;
+
+        r = this.bump();
+        r = this.bump();
+        cells[1] = n;
+        cells[2] = calls;
+        calls;
+        return 7;
+    }
+
+    // the dead side is never taken, and its work is never needed
+    public int deadBranch(int n) {
+        int r;
+        int w;
+
+        r = 1;
+        w = 0;
+        if (false) {
+            w = this.bump();
+            r = w * 100;
+        } else
+            w = n * n;
+        return r;
+    }
+
+    public int bump() {
+        calls = calls + 1;
+        return calls;
+    }
+}
@@ -0,0 +1,19 @@
+// Recurses far deeper than the Java stack allows an interpreter that
+// recurses with it: run it with mjinterp-ssa -stack. mjtest only runs it on
+// the stack engine (see DeepRecursion.mjtest).
+class DeepRecursion {
+    public static void main(String[] a) {
+        System.out.println(new Chain().depth(100000));
+    }
+}
+
+class Chain {
+    public int depth(int n) {
+        int d;
+        if (n < 1)
+            d = 0;
+        else
+            d = 1 + (this.depth(n - 1));
+        return d;
+    }
+}
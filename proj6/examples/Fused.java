@@ -0,0 +1,88 @@
+// Comparisons that branch, arithmetic with a constant on either side, and
+// arrays read out of fields, each both where it can be fused and where it
+// can't (for SSAFusion). mjtest's fuse engine runs it as
+// mjinterp-ssa -dce -fuse does.
+class Fused {
+    public static void main(String[] a) {
+        System.out.println(new Fuser().run(6));
+    }
+}
+
+class Fuser {
+    int[] data;
+
+    public int run(int n) {
+        data = new int[n];
+        System.out.println(this.branches(n, 4));
+        System.out.println(this.branches(4, n));
+        System.out.println(this.branches(n, n));
+        System.out.println(this.immediates(n));
+        System.out.println(this.fill(n));
+        System.out.println(this.reused(n, 4));
+        return data[n - 1];
+    }
+
+    public int branches(int a, int b) {
+        int r;
+
+        r = 0;
+        if (a < b) r = r + 1;
+        if (a <= b) r = r + 2;
+        if (a > b) r = r + 4;
+        if (a >= b) r = r + 8;
+        if (!(a < b)) r = r + 16;
+        if (!(a >= b)) r = r + 32;
+        while (a > b) {
+            a = a - 1;
+            r = r + 100;
+        }
+        return r;
+    }
+
+    // the constant on the right can be fused, but 10 - x isn't x - 10
+    public int immediates(int x) {
+        int a;
+        int b;
+        int c;
+        int d;
+
+        a = x + 3;
+        b = 3 + x;
+        c = x - 10;
+        d = 10 - x;
+        return a * 1000 + b * 100 + c * 10 + d;
+    }
+
+    public int fill(int n) {
+        int i;
+        int sum;
+
+        i = 0;
+        while (i < n) {
+            data[i] = i * 3;
+            i = i + 1;
+        }
+        sum = 0;
+        i = 0;
+        while (i < n) {
+            sum = sum + data[i];
+            i = i + 1;
+        }
+        return sum;
+    }
+
+    // a comparison and a field used more than once can't be folded away
+    public int reused(int a, int b) {
+        boolean less;
+        int[] d;
+        int r;
+
+        less = a < b;
+        r = 0;
+        if (less) r = r + 1;
+        if (!less) r = r + 10;
+        d = data;
+        r = r + d[1] + d[2] + d.length * 100;
+        return r;
+    }
+}
@@ -0,0 +1,78 @@
+// Methods that get hot partway through running, both from being called
+// many times and from looping many times in one call, so they're compiled
+// while their results are still being used (for mjinterp-ssa -tiered).
+class HotLoop {
+    public static void main(String[] a) {
+        System.out.println(new Hot().run());
+    }
+}
+
+class Hot {
+    int total;
+    int[] history;
+
+    public int run() {
+        int i;
+        int r;
+
+        total = 0;
+        history = new int[10];
+        i = 0;
+        r = 0;
+        while (i < 3000) {
+            r = r + this.step(i);
+            if (this.isRound(i))
+                System.out.println(r);
+            i = i + 1;
+        }
+        System.out.println(total);
+        System.out.println(this.spin(5000));
+        System.out.println(this.spin(5000));
+        return history[3] + history[9];
+    }
+
+    // called 3000 times
+    public int step(int i) {
+        int v;
+
+        v = i;
+        while (6 < v)
+            v = v - 7;
+        total = total + v;
+        history[v] = history[v] + 1;
+        return v;
+    }
+
+    public boolean isRound(int i) {
+        int j;
+        boolean round;
+
+        j = i;
+        while (999 < j)
+            j = j - 1000;
+        round = j == 999;
+        if (j == 0)
+            round = true;
+        return round;
+    }
+
+    // hot from its loop alone, on its first call
+    public int spin(int n) {
+        int i;
+        int a;
+        int b;
+
+        i = 0;
+        a = 1;
+        b = 0;
+        while (i < n) {
+            b = b + a;
+            if (b > 1000) {
+                a = a + 1;
+                b = b - 1000;
+            }
+            i = i + 1;
+        }
+        return a * 10000 + b;
+    }
+}
@@ -0,0 +1,34 @@
+// Allocates a 64MB array: with mjsandbox -heap=32 it's stopped at the
+// allocation, after the first line, which mjtest checks (see
+// HugeArray.mjtest).
+class HugeArray {
+    public static void main(String[] a) {
+        System.out.println(new Hog().fill(16000000));
+    }
+}
+
+class Hog {
+    public int fill(int n) {
+        int[] big;
+        int i;
+        int sum;
+
+        System.out.println(n);
+        big = new int[n];
+        i = 0;
+        while (i < n) {
+            big[i] = i;
+            i = i + 4096;
+        }
+
+        sum = 0;
+        i = 0;
+        while (i < n) {
+            if (big[i] == i)
+                sum = sum + 1;
+            i = i + 4096;
+        }
+        System.out.println(big.length);
+        return sum;
+    }
+}
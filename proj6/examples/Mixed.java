@@ -0,0 +1,153 @@
+// A little of everything a method can do, so that each kind of statement
+// is compiled to a closure at least once (for mjinterp-ssa -closure).
+class Mixed {
+    public static void main(String[] a) {
+        System.out.println(new Mixer().run(5));
+    }
+}
+
+class Cell {
+    int value;
+    boolean flag;
+    Cell next;
+
+    public int set(int v, boolean f, Cell n) {
+        value = v;
+        flag = f;
+        next = n;
+        return v;
+    }
+
+    public int getValue() {
+        return value;
+    }
+}
+
+class Mixer {
+    int counter;
+
+    public int run(int n) {
+        counter = 0;
+        System.out.println(this.arith(n, 3));
+        System.out.println(this.compare(n, 3));
+        System.out.println(this.bools(n));
+        System.out.println(this.arrays(n));
+        System.out.println(this.objects(n));
+        System.out.println(this.many(1, 2, 3, 4, 5, 6, 7, 8, true));
+        System.out.println(this.even(n * 3));
+        return counter;
+    }
+
+    public int arith(int a, int b) {
+        int r;
+
+        r = a + b;
+        r = r * (a - b);
+        r = r - (0 - a) * 2;
+        r = r * r - a * b;
+        return r;
+    }
+
+    public int compare(int a, int b) {
+        int r;
+
+        r = 0;
+        if (a < b) r = r + 1;
+        if (a <= b) r = r + 2;
+        if (a > b) r = r + 4;
+        if (a >= b) r = r + 8;
+        if (a == b) r = r + 16;
+        if (a != b) r = r + 32;
+        return r;
+    }
+
+    public int bools(int n) {
+        boolean p;
+        boolean q;
+        int r;
+
+        p = n < 10;
+        q = !p;
+        r = 0;
+        if (p) r = r + 1;
+        if (!q) r = r + 10;
+        if (q) r = r + 100;
+        if (this.tick()) r = r + 1000;
+        return r;
+    }
+
+    public boolean tick() {
+        counter = counter + 1;
+        return true;
+    }
+
+    public int arrays(int n) {
+        int[] xs;
+        int i;
+        int sum;
+
+        xs = new int[n + 2];
+        i = 0;
+        while (i < xs.length) {
+            xs[i] = i * i;
+            i = i + 1;
+        }
+        sum = 0;
+        i = xs.length - 1;
+        while (0 <= i) {
+            sum = sum * 2 + xs[i];
+            i = i - 1;
+        }
+        return sum;
+    }
+
+    public int objects(int n) {
+        Cell a;
+        Cell b;
+        Cell c;
+        int r;
+
+        a = new Cell();
+        b = new Cell();
+        r = a.set(n, true, b);
+        r = r + b.set(n * 2, false, a);
+        c = a.next;
+        r = r + c.getValue() * 10;
+        if (b.next.flag) r = r + 100;
+        if (c.next.flag) r = r + 1000;
+        r = r + c.next.set(42, false, c);
+        return r + a.value + b.next.next.value;
+    }
+
+    public int many(int a, int b, int c, int d, int e, int f, int g, int h, boolean last) {
+        int r;
+
+        r = a - b + c - d + e - f + g - h;
+        if (last)
+            r = r * 100;
+        return r + counter;
+    }
+
+    // mutual recursion through a helper object
+    public int even(int n) {
+        int r;
+
+        if (n == 0)
+            r = 1;
+        else
+            r = new Odd().odd(n - 1, this);
+        return r;
+    }
+}
+
+class Odd {
+    public int odd(int n, Mixer m) {
+        int r;
+
+        if (n == 0)
+            r = 0;
+        else
+            r = m.even(n - 1);
+        return r;
+    }
+}
@@ -0,0 +1,134 @@
+// Expressions and loads computed more than once, some of which may only be
+// reused if nothing stored in between (for ValueNumbering). mjtest's opt
+// engine runs it as mjcompile-ssa -sccp -gvn -dce does.
+class Redundant {
+    public static void main(String[] a) {
+        System.out.println(new Repeater().run(3, 4));
+    }
+}
+
+class Repeater {
+    int f;
+    int g;
+    int[] arr;
+
+    public int run(int x, int y) {
+        f = 10;
+        g = 20;
+        arr = new int[5];
+        arr[0] = 1;
+        arr[1] = 2;
+        System.out.println(this.expressions(x, y));
+        System.out.println(this.compares(x, y));
+        System.out.println(this.fields(x));
+        System.out.println(this.arrays(x));
+        System.out.println(this.afterCall(x));
+        System.out.println(this.merged(x, y));
+        System.out.println(this.loop(x));
+        return 0;
+    }
+
+    // the same values, written around the other way
+    public int expressions(int x, int y) {
+        int a;
+        int b;
+        int c;
+        int d;
+        int e;
+
+        a = x * y + 1;
+        b = y * x + 1;
+        c = x - y;
+        d = y - x;
+        e = x;
+        return a * 1000 + b * 100 + (c + d) * 10 + (e * y - x * y);
+    }
+
+    public int compares(int x, int y) {
+        int r;
+
+        r = 0;
+        if (x < y)
+            r = r + 1;
+        if (y > x)
+            r = r + 10;
+        if (x <= y)
+            r = r + 100;
+        if (!(y >= x))
+            r = r + 1000;
+        return r;
+    }
+
+    // f can be reused until it's stored to; g can't be lost by storing f
+    public int fields(int x) {
+        int a;
+        int b;
+        int c;
+        int d;
+
+        a = f + g;
+        b = f + g;
+        f = f + x;
+        c = f + g;
+        d = g;
+        return a * 1000 + b * 100 + c * 10 + d;
+    }
+
+    public int arrays(int x) {
+        int a;
+        int b;
+        int c;
+
+        a = arr[0] + arr[1];
+        b = arr[0] + arr[1];
+        arr[0] = x;
+        c = arr[0] + arr[1];
+        return a * 100 + b * 10 + c;
+    }
+
+    // a call may store to anything
+    public int afterCall(int x) {
+        int a;
+        int b;
+
+        a = f;
+        b = this.setF(x * 7);
+        b = f;
+        return a * 100 + b;
+    }
+
+    public int setF(int v) {
+        f = v;
+        return v;
+    }
+
+    // stored on one path only, so the load after the merge is needed
+    public int merged(int x, int y) {
+        int a;
+        int b;
+
+        a = g;
+        if (x < y)
+            g = 99;
+        else
+            a = a + 1;
+        b = g;
+        return a * 100 + b + (x * y) - (y * x);
+    }
+
+    // the loop stores to arr and f, so nothing before it may be reused in it
+    public int loop(int x) {
+        int i;
+        int sum;
+
+        i = 0;
+        sum = arr[1] + f;
+        while (i < x) {
+            sum = sum + arr[1] + f;
+            arr[1] = arr[1] + 1;
+            f = f + 2;
+            i = i + 1;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,29 @@
+// Runs for far longer than a sandboxed program should: with
+// mjsandbox -fuel=1000000 it's stopped partway through the first round,
+// which mjtest checks (see Runaway.mjtest).
+class Runaway {
+    public static void main(String[] a) {
+        System.out.println(new Spinner().spin(10, 1000000));
+    }
+}
+
+class Spinner {
+    public int spin(int rounds, int each) {
+        int i;
+        int j;
+        int total;
+
+        i = 0;
+        total = 0;
+        while (i < rounds) {
+            j = 0;
+            while (j < each) {
+                total = total + 1;
+                j = j + 1;
+            }
+            System.out.println(total);
+            i = i + 1;
+        }
+        return total;
+    }
+}
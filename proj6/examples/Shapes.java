@@ -0,0 +1,121 @@
+// One call site that sees one class, then two, then many, and methods
+// inherited without being overridden (for mjinterp-ssa -ic).
+class Shapes {
+    public static void main(String[] a) {
+        System.out.println(new Drawing().run());
+    }
+}
+
+class Shape {
+    int size;
+    Shape next;
+
+    public Shape init(int s, Shape n) {
+        size = s;
+        next = n;
+        return this;
+    }
+
+    public Shape getNext() {
+        return next;
+    }
+
+    public int area() {
+        return 0;
+    }
+
+    public int sides() {
+        return 0;
+    }
+}
+
+class Square extends Shape {
+    public int area() {
+        return size * size;
+    }
+
+    public int sides() {
+        return 4;
+    }
+}
+
+class Rect extends Square {
+    public int area() {
+        return size * (size + 1);
+    }
+}
+
+class Triangle extends Shape {
+    public int area() {
+        return size * (size + 2);
+    }
+
+    public int sides() {
+        return 3;
+    }
+}
+
+class Blob extends Shape {
+}
+
+class Drawing {
+    public int run() {
+        Shape list;
+
+        list = new Shape();
+        list = new Shape().init(0, list);
+        list = new Square().init(4, list);
+        list = new Square().init(3, list);
+        list = new Square().init(2, list);
+        System.out.println(this.total(list, 3));
+
+        list = new Shape();
+        list = new Rect().init(5, list);
+        list = new Square().init(4, list);
+        list = new Rect().init(3, list);
+        list = new Square().init(2, list);
+        System.out.println(this.total(list, 4));
+
+        list = new Shape();
+        list = new Square().init(6, list);
+        list = new Blob().init(5, list);
+        list = new Triangle().init(4, list);
+        list = new Rect().init(3, list);
+        list = new Square().init(2, list);
+        System.out.println(this.total(list, 5));
+
+        // and back to only squares, after the site has seen the rest
+        list = new Shape();
+        list = new Square().init(8, list);
+        list = new Square().init(7, list);
+        System.out.println(this.total(list, 2));
+        return this.repeat(list, 500);
+    }
+
+    public int total(Shape s, int n) {
+        int sum;
+        int i;
+
+        sum = 0;
+        i = 0;
+        while (i < n) {
+            sum = sum + s.area() * 10 + s.sides();
+            s = s.getNext();
+            i = i + 1;
+        }
+        return sum;
+    }
+
+    public int repeat(Shape s, int times) {
+        int sum;
+        int i;
+
+        sum = 0;
+        i = 0;
+        while (i < times) {
+            sum = sum + this.total(s, 2);
+            i = i + 1;
+        }
+        return sum;
+    }
+}
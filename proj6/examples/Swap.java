@@ -0,0 +1,122 @@
+// Loops whose variables are copied into each other, so that the Phis at
+// their heads read each other's values (the swap and lost copy problems
+// for SSAPhiForm.lower). mjtest's opt engine runs it in and out of Phi
+// form, as mjcompile-ssa -sccp -gvn -dce does.
+class Swap {
+    public static void main(String[] a) {
+        System.out.println(new Swapper().run(7));
+    }
+}
+
+class Swapper {
+    public int run(int n) {
+        System.out.println(this.swap(n));
+        System.out.println(this.lostCopy(n));
+        System.out.println(this.rotate(n));
+        System.out.println(this.fib(n + 10));
+        System.out.println(this.swapSome(n));
+        return 0;
+    }
+
+    // a and b trade places every time around
+    public int swap(int n) {
+        int a;
+        int b;
+        int t;
+        int i;
+
+        a = 1;
+        b = 100;
+        i = 0;
+        while (i < n) {
+            t = a;
+            a = b;
+            b = t;
+            i = i + 1;
+        }
+        return a * 1000 + b;
+    }
+
+    // y is x from before the last increment, used after the loop
+    public int lostCopy(int n) {
+        int x;
+        int y;
+        int i;
+
+        x = 5;
+        y = 0;
+        i = 0;
+        while (i < n) {
+            y = x;
+            x = x + 1;
+            i = i + 1;
+        }
+        return y * 1000 + x;
+    }
+
+    // three variables turning in a cycle
+    public int rotate(int n) {
+        int a;
+        int b;
+        int c;
+        int t;
+        int i;
+
+        a = 1;
+        b = 2;
+        c = 3;
+        i = 0;
+        while (i < n) {
+            t = a;
+            a = b;
+            b = c;
+            c = t;
+            i = i + 1;
+        }
+        return a * 100 + b * 10 + c;
+    }
+
+    public int fib(int n) {
+        int a;
+        int b;
+        int t;
+        int i;
+
+        a = 0;
+        b = 1;
+        i = 0;
+        while (i < n) {
+            t = a + b;
+            a = b;
+            b = t;
+            i = i + 1;
+        }
+        return a;
+    }
+
+    // swapping on only some trips, so the Phis merge a swap with no swap
+    public int swapSome(int n) {
+        int a;
+        int b;
+        int t;
+        int i;
+        int sum;
+
+        a = 3;
+        b = 4;
+        i = 0;
+        sum = 0;
+        while (i < n) {
+            if (i < 3) {
+                t = a;
+                a = b;
+                b = t;
+            } else {
+                a = a + 1;
+            }
+            sum = sum + a * b - b;
+            i = i + 1;
+        }
+        return sum;
+    }
+}
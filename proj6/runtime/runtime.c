@@ -6,6 +6,8 @@
 #include <stdlib.h>
 #include <string.h>
 #include <sys/types.h>
+#include <signal.h>
+#include <unistd.h>
 
 #ifdef USE_BOEHM_GC
 #define MJ_MALLOC GC_MALLOC
@@ -16,12 +18,44 @@
 /* entry point provided by the compiler */
 void mj_main();
 
+/* Print output is formatted straight into this buffer and written out when
+ * it fills, at exit, or when the program crashes */
+#define MJ_OUT_SIZE 65536
+static char mjOut[MJ_OUT_SIZE];
+static size_t mjOutLen;
+
+/* only uses write(), so it's safe in a signal handler */
+void minijavaFlush()
+{
+    size_t off = 0;
+    while (off < mjOutLen) {
+        ssize_t w = write(1, mjOut + off, mjOutLen - off);
+        if (w <= 0) break;
+        off += w;
+    }
+    mjOutLen = 0;
+}
+
+/* flush what was printed before the crash, then crash the usual way */
+static void minijavaCrash(int sig)
+{
+    minijavaFlush();
+    signal(sig, SIG_DFL);
+    raise(sig);
+}
+
 int main()
 {
 #ifdef USE_BOEHM_GC
     GC_INIT();
 #endif
+    atexit(minijavaFlush);
+    signal(SIGSEGV, minijavaCrash);
+    signal(SIGBUS, minijavaCrash);
+    signal(SIGFPE, minijavaCrash);
+    signal(SIGILL, minijavaCrash);
     mj_main();
+    minijavaFlush();
     return 0;
 }
 
@@ -57,5 +91,22 @@ void *minijavaNewArray(unsigned long szWords)
 
 long minijavaPrint(long value)
 {
-    printf("%ld\n", value);
+    char digits[24];
+    int n = 0;
+    unsigned long u = (value < 0) ? -(unsigned long) value : (unsigned long) value;
+
+    if (mjOutLen + sizeof(digits) > MJ_OUT_SIZE)
+        minijavaFlush();
+
+    /* digits come out backwards */
+    do {
+        digits[n++] = '0' + (u % 10);
+        u /= 10;
+    } while (u);
+    if (value < 0)
+        mjOut[mjOutLen++] = '-';
+    while (n > 0)
+        mjOut[mjOutLen++] = digits[--n];
+    mjOut[mjOutLen++] = '\n';
+    return value;
 }